@@ -1 +1,47 @@
-java com.mathhead200.math_game.MathGame
\ No newline at end of file
+#!/bin/sh
+# Usage: "Math Game.sh" [--cds-dump | --no-cds] [--startup-report]
+#
+#   --cds-dump        Creates the class data sharing archive (JDK 13+): starts the
+#                     game, exits once the first frame is shown, and archives every
+#                     class loaded. Later launches map the classes straight from the
+#                     archive instead of loading and verifying them one by one.
+#   --no-cds          Launches without the archive.
+#   --startup-report  Prints the time to the first frame.
+#
+# The game is compiled from the sources whenever any of them is newer than the
+# build (the .class files kept next to the sources are not rebuilt), and run from
+# a jar, since CDS only archives classes loaded from jars. The build goes in a
+# cache directory, one per copy of the game, because JDK 17 ignores the archived
+# classes of a class path with a space in it (as "Math Game" has.) Rebuilding
+# deletes the archive, which would no longer match.
+
+cd "$(dirname "$0")"
+BUILD="${XDG_CACHE_HOME:-$HOME/.cache}/math-game/$(pwd | cksum | cut -d ' ' -f 1)"
+JAR="$BUILD/math-game.jar"
+ARCHIVE="$BUILD/math-game.jsa"
+MAIN=com.mathhead200.math_game.MathGame
+MODE=
+OPTIONS=
+for arg in "$@"; do
+	case "$arg" in
+	--cds-dump|--no-cds) MODE="$arg" ;;
+	--startup-report) OPTIONS="-Dmathgame.startupReport=true" ;;
+	*) echo "usage: $0 [--cds-dump | --no-cds] [--startup-report]" >&2; exit 1 ;;
+	esac
+done
+
+if [ ! -f "$JAR" ] || [ -n "$(find com -name '*.java' -newer "$JAR")" ]; then
+	echo "building $JAR" >&2
+	rm -rf "$BUILD/classes" "$ARCHIVE"
+	mkdir -p "$BUILD/classes" || exit 1
+	javac -nowarn -encoding UTF-8 -classpath "$BUILD/classes" -d "$BUILD/classes" com/mathhead200/math_game/*.java || exit 1
+	jar cfe "$JAR" "$MAIN" -C "$BUILD/classes" . || exit 1
+fi
+
+if [ "$MODE" = "--cds-dump" ]; then
+	exec java -XX:ArchiveClassesAtExit="$ARCHIVE" -Dmathgame.exitAfterFirstFrame=true $OPTIONS -cp "$JAR" "$MAIN"
+elif [ "$MODE" != "--no-cds" ] && [ -f "$ARCHIVE" ]; then
+	exec java -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto $OPTIONS -cp "$JAR" "$MAIN"
+else
+	exec java $OPTIONS -cp "$JAR" "$MAIN"
+fi
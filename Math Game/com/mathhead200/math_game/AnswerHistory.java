@@ -0,0 +1,373 @@
+package com.mathhead200.math_game;
+
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Every answer given, kept in memory in columns of primitives: the problem
+ * (as its {@link MathProblem#key(int, char, int) key}), the guess, whether it
+ * was correct (a bit set), and how long it took. Each column is a directory of
+ * fixed size chunks, so appending never copies the rows already stored, and
+ * there is no object per answer.
+ *
+ * Aggregates are computed by scanning the columns, a chunk at a time, and
+ * grouping rows by a function of their key (e.g. by operator, by fact, or by
+ * operand range) into an open addressing table of primitive counters.
+ *
+ * One thread (i.e. the EDT) may append while any number of others query; a
+ * query sees every answer appended before it began.
+ */
+public class AnswerHistory {
+
+	public static final int CHUNK_BITS = 14;
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS; // rows
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	// the columns, as directories of chunks; replaced (not modified) when they grow
+	private long[][] keys = new long[16][];
+	private int[][] guesses = new int[16][];
+	private long[][] correct = new long[16][]; // a bit per row
+	private long[][] nanos = new long[16][];
+	// written after each row (and directory), so a reader which reads it first sees them
+	private volatile int size = 0;
+
+	/**
+	 * The count, errors and total time of some answers.
+	 */
+	public static class Aggregate {
+		public final long count;
+		public final long errors;
+		public final long totalNanos;
+
+		Aggregate(long count, long errors, long totalNanos) {
+			this.count = count;
+			this.errors = errors;
+			this.totalNanos = totalNanos;
+		}
+
+		public double getErrorRate() {
+			return count == 0 ? Double.NaN : (double) errors / count;
+		}
+
+		public double getMeanNanos() {
+			return count == 0 ? Double.NaN : (double) totalNanos / count;
+		}
+
+		public String toString() {
+			return String.format("%,d answers, %.1f%% incorrect, %.2f s on average",
+					count, 100 * getErrorRate(), getMeanNanos() / 1e9);
+		}
+	}
+
+	/**
+	 * {@link Aggregate}s by group, in an open addressing table. Each slot is
+	 * the group followed by its count, errors and total nanoseconds, so adding
+	 * a row touches a single cache line. A slot is empty if its count is 0.
+	 */
+	public static class Groups {
+		private long[] slots = new long[4 * 16];
+		private int size = 0;
+
+		void add(long group, long count, long errors, long nanos) {
+			int i = indexOf(group);
+			if( slots[i + 1] == 0 ) {
+				if( size + 1 > slots.length / 8 ) { // load factor <= 1/2
+					grow();
+					i = indexOf(group);
+				}
+				slots[i] = group;
+				size++;
+			}
+			slots[i + 1] += count;
+			slots[i + 2] += errors;
+			slots[i + 3] += nanos;
+		}
+
+		private void grow() {
+			long[] slots = this.slots;
+			this.slots = new long[slots.length * 2];
+			for( int i = 0; i < slots.length; i += 4 )
+				if( slots[i + 1] != 0 )
+					System.arraycopy(slots, i, this.slots, indexOf(slots[i]), 4);
+		}
+
+		private int indexOf(long group) {
+			int mask = slots.length - 4;
+			int i = (MathProblem.hash(group) << 2) & mask;
+			while( slots[i + 1] != 0 && slots[i] != group )
+				i = (i + 4) & mask;
+			return i;
+		}
+
+		/**
+		 * @return The number of groups.
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return Every group, in no particular order.
+		 */
+		public long[] groups() {
+			long[] groups = new long[size];
+			int n = 0;
+			for( int i = 0; i < slots.length; i += 4 )
+				if( slots[i + 1] != 0 )
+					groups[n++] = slots[i];
+			return groups;
+		}
+
+		/**
+		 * @return The groups of at least <code>minCount</code> answers, from the
+		 *         highest error rate to the lowest.
+		 */
+		public long[] byErrorRate(long minCount) {
+			// sort (error rate, group) pairs as doubles, highest first
+			long[] groups = groups();
+			double[] rates = new double[groups.length];
+			Integer[] order = new Integer[groups.length];
+			int n = 0;
+			for( int g = 0; g < groups.length; g++ ) {
+				int i = indexOf( groups[g] );
+				if( slots[i + 1] >= minCount ) {
+					rates[g] = (double) slots[i + 2] / slots[i + 1];
+					order[n++] = g;
+				}
+			}
+			Arrays.sort( order, 0, n, (a, b) -> Double.compare(rates[b], rates[a]) );
+			long[] sorted = new long[n];
+			for( int k = 0; k < n; k++ )
+				sorted[k] = groups[ order[k] ];
+			return sorted;
+		}
+
+		/**
+		 * @return The aggregate of the group, or <code>null</code> if it has no
+		 *         answers.
+		 */
+		public Aggregate get(long group) {
+			int i = indexOf(group);
+			return slots[i + 1] == 0 ? null : new Aggregate( slots[i + 1], slots[i + 2], slots[i + 3] );
+		}
+
+		public long getCount(long group) {
+			return slots[ indexOf(group) + 1 ];
+		}
+
+		public long getErrors(long group) {
+			return slots[ indexOf(group) + 2 ];
+		}
+
+		public long getTotalNanos(long group) {
+			return slots[ indexOf(group) + 3 ];
+		}
+	}
+
+	/**
+	 * Appends an answer.
+	 *
+	 * @param guess The guess, or {@link BinarySessionLog#NO_GUESS}.
+	 */
+	public void append(long key, int guess, boolean correct, long nanos) {
+		int row = size;
+		int chunk = row >>> CHUNK_BITS;
+		int i = row & CHUNK_MASK;
+		if( i == 0 )
+			addChunk(chunk);
+		keys[chunk][i] = key;
+		guesses[chunk][i] = guess;
+		if( correct )
+			this.correct[chunk][i >>> 6] |= 1L << i;
+		this.nanos[chunk][i] = nanos;
+		size = row + 1;
+	}
+
+	public void append(MathProblem problem, int guess, boolean correct, long nanos) {
+		append( problem.key(), guess, correct, nanos );
+	}
+
+	private void addChunk(int chunk) {
+		if( chunk == keys.length ) {
+			keys = Arrays.copyOf(keys, chunk * 2);
+			guesses = Arrays.copyOf(guesses, chunk * 2);
+			correct = Arrays.copyOf(correct, chunk * 2);
+			nanos = Arrays.copyOf(nanos, chunk * 2);
+		}
+		keys[chunk] = new long[CHUNK_SIZE];
+		guesses[chunk] = new int[CHUNK_SIZE];
+		correct[chunk] = new long[CHUNK_SIZE / 64];
+		nanos[chunk] = new long[CHUNK_SIZE];
+	}
+
+	/**
+	 * @return The number of answers.
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void checkRow(int row) {
+		if( row < 0 || row >= size )
+			throw new IndexOutOfBoundsException("row " + row + " of " + size);
+	}
+
+	public long getKey(int row) {
+		checkRow(row);
+		return keys[row >>> CHUNK_BITS][row & CHUNK_MASK];
+	}
+
+	public int getGuess(int row) {
+		checkRow(row);
+		return guesses[row >>> CHUNK_BITS][row & CHUNK_MASK];
+	}
+
+	public boolean isCorrect(int row) {
+		checkRow(row);
+		return (correct[row >>> CHUNK_BITS][(row & CHUNK_MASK) >>> 6] >>> row & 1) != 0;
+	}
+
+	public long getNanos(int row) {
+		checkRow(row);
+		return nanos[row >>> CHUNK_BITS][row & CHUNK_MASK];
+	}
+
+	/**
+	 * @return The aggregate of rows <code>[from, to)</code>.
+	 */
+	public Aggregate aggregate(int from, int to) {
+		checkRange(from, to);
+		long[][] nanos = this.nanos;
+		long[][] correct = this.correct;
+		long count = to - from;
+		long errors = 0;
+		long totalNanos = 0;
+		for( int row = from; row < to; ) {
+			int chunk = row >>> CHUNK_BITS;
+			int start = row & CHUNK_MASK;
+			int end = Math.min( CHUNK_SIZE, to - (chunk << CHUNK_BITS) );
+			long[] n = nanos[chunk];
+			long[] c = correct[chunk];
+			for( int i = start; i < end; i++ ) {
+				totalNanos += n[i];
+				errors += ~c[i >>> 6] >>> i & 1;
+			}
+			row += end - start;
+		}
+		return new Aggregate(count, errors, totalNanos);
+	}
+
+	public Aggregate aggregate() {
+		return aggregate(0, size);
+	}
+
+	/**
+	 * Aggregates rows <code>[from, to)</code> by group.
+	 *
+	 * @param group Maps a row's key to its group.
+	 */
+	public Groups groupBy(int from, int to, LongUnaryOperator group) {
+		return scan(from, to, BY_FUNCTION, 0, group);
+	}
+
+	public Groups groupBy(LongUnaryOperator group) {
+		return groupBy(0, size, group);
+	}
+
+	/**
+	 * @return The answers grouped by {@link MathProblem#operatorIndex(char)
+	 *         operator index}.
+	 */
+	public Groups byOperator() {
+		checkRange(0, size);
+		int size = this.size;
+		long[][] keys = this.keys;
+		long[][] nanos = this.nanos;
+		long[][] correct = this.correct;
+		// only 4 groups, so count straight into arrays
+		long[] counts = new long[4];
+		long[] errors = new long[4];
+		long[] totalNanos = new long[4];
+		for( int row = 0; row < size; ) {
+			int chunk = row >>> CHUNK_BITS;
+			int end = Math.min( CHUNK_SIZE, size - (chunk << CHUNK_BITS) );
+			long[] k = keys[chunk];
+			long[] n = nanos[chunk];
+			long[] c = correct[chunk];
+			for( int i = 0; i < end; i++ ) {
+				int o = (int) (k[i] >>> 62);
+				counts[o]++;
+				errors[o] += ~c[i >>> 6] >>> i & 1;
+				totalNanos[o] += n[i];
+			}
+			row += end;
+		}
+		Groups groups = new Groups();
+		for( int o = 0; o < 4; o++ )
+			if( counts[o] != 0 )
+				groups.add( o, counts[o], errors[o], totalNanos[o] );
+		return groups;
+	}
+
+	/**
+	 * @return The answers grouped by fact (i.e. by key.)
+	 */
+	public Groups byFact() {
+		return scan(0, size, BY_KEY, 0, null);
+	}
+
+	/**
+	 * @return The answers grouped by operator and operand ranges of the given
+	 *         width; each group is the key of the lowest problem in its range,
+	 *         e.g. "10 &times; 0" is [10, 20) &times; [0, 10) for a width of 10.
+	 */
+	public Groups byOperandRange(int width) {
+		if( width <= 0 )
+			throw new IllegalArgumentException("width must be positive: " + width);
+		return scan(0, size, BY_OPERAND_RANGE, width, null);
+	}
+
+	// how scan(...) groups rows; the built in groupings are switched on rather
+	// than passed as functions, so the scan loop does not make a (megamorphic)
+	// call per row
+	private static final int BY_KEY = 0;
+	private static final int BY_OPERAND_RANGE = 1;
+	private static final int BY_FUNCTION = 2;
+
+	private Groups scan(int from, int to, int grouping, int width, LongUnaryOperator function) {
+		checkRange(from, to);
+		long[][] keys = this.keys;
+		long[][] nanos = this.nanos;
+		long[][] correct = this.correct;
+		Groups groups = new Groups();
+		for( int row = from; row < to; ) {
+			int chunk = row >>> CHUNK_BITS;
+			int start = row & CHUNK_MASK;
+			int end = Math.min( CHUNK_SIZE, to - (chunk << CHUNK_BITS) );
+			long[] k = keys[chunk];
+			long[] n = nanos[chunk];
+			long[] c = correct[chunk];
+			for( int i = start; i < end; i++ ) {
+				long key = k[i];
+				long group;
+				if( grouping == BY_KEY ) {
+					group = key;
+				} else if( grouping == BY_OPERAND_RANGE ) {
+					group = key & 0xC000000000000000L
+					      | (Math.floorDiv(MathProblem.keyOperand1(key), width) * width & 0x7FFFFFFFL) << 31
+					      | (Math.floorDiv(MathProblem.keyOperand2(key), width) * width & 0x7FFFFFFFL);
+				} else {
+					group = function.applyAsLong(key);
+				}
+				groups.add( group, 1, ~c[i >>> 6] >>> i & 1, n[i] );
+			}
+			row += end - start;
+		}
+		return groups;
+	}
+
+	private void checkRange(int from, int to) {
+		if( from < 0 || from > to || to > size )
+			throw new IndexOutOfBoundsException("rows [" + from + ", " + to + ") of " + size);
+	}
+}
@@ -0,0 +1,335 @@
+package com.mathhead200.math_game;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compact binary log of answered problems, with fixed width records.
+ *
+ * <pre>
+ * header (16 bytes):  int magic ("MGSL"), short version, short record size, long reserved
+ * answer (32 bytes):  int operand1, int operand2, int guess, int problem number,
+ *                     long nanoseconds taken to answer, char operator, byte correct,
+ *                     byte kind (0), 4 bytes reserved
+ * game started:       int level, int difficulty, long seed, long start time (ms since
+ *                     the epoch), 2 bytes reserved, byte 0, byte kind (1), 4 bytes reserved
+ * game ended:         int correct count, int incorrect count, double progress (0 to 1),
+ *                     long duration (ms), 2 bytes reserved, byte completed, byte kind (2),
+ *                     4 bytes reserved
+ * </pre>
+ *
+ * All values are little-endian. A guess which was not a number is recorded as
+ * {@link #NO_GUESS}. Version 1 logs have only answers (their kind byte was
+ * reserved, so always 0), and are still read.
+ *
+ * The writer flushes at the end of each game, so a crash loses at most the
+ * answers of the game being played.
+ */
+public class BinarySessionLog {
+
+	public static final int MAGIC = 0x4C53474D; // "MGSL" in little-endian
+	public static final short VERSION = 2;
+	public static final int HEADER_SIZE = 16;
+	public static final int RECORD_SIZE = 32;
+	public static final int NO_GUESS = MathProblem.NO_GUESS;
+	// the kinds of record
+	public static final byte ANSWER = 0;
+	public static final byte STARTED = 1;
+	public static final byte ENDED = 2;
+
+	private static final int OPERAND1 = 0;
+	private static final int OPERAND2 = 4;
+	private static final int GUESS = 8;
+	private static final int PROBLEM_NUMBER = 12;
+	private static final int NANOS = 16;
+	private static final int OPERATOR = 24;
+	private static final int CORRECT = 26;
+	private static final int KIND = 27;
+	// game started and ended records
+	private static final int LEVEL = 0;
+	private static final int DIFFICULTY = 4;
+	private static final int SEED = 8;
+	private static final int CORRECT_COUNT = 0;
+	private static final int INCORRECT_COUNT = 4;
+	private static final int PROGRESS = 8;
+	private static final int MILLIS = 16;
+	private static final int COMPLETED = 26;
+
+	private BinarySessionLog() {
+	}
+
+	public static class Writer implements Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+		public Writer(Path path) throws IOException {
+			channel = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+			buffer.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putLong(0);
+		}
+
+		public void append(int problemNumber, int operand1, char operator, int operand2, int guess, boolean correct, long nanos) throws IOException {
+			if( buffer.remaining() < RECORD_SIZE )
+				flush();
+			int p = buffer.position();
+			buffer.putInt(p + OPERAND1, operand1)
+			      .putInt(p + OPERAND2, operand2)
+			      .putInt(p + GUESS, guess)
+			      .putInt(p + PROBLEM_NUMBER, problemNumber)
+			      .putLong(p + NANOS, nanos)
+			      .putChar(p + OPERATOR, operator)
+			      .put(p + CORRECT, (byte) (correct ? 1 : 0))
+			      .put(p + KIND, ANSWER)
+			      .putInt(p + KIND + 1, 0);
+			buffer.position(p + RECORD_SIZE);
+		}
+
+		public void append(int problemNumber, MathProblem problem, int guess, boolean correct, long nanos) throws IOException {
+			append(problemNumber, problem.operand1, problem.operator, problem.operand2, guess, correct, nanos);
+		}
+
+		/**
+		 * Records the start of a game, e.g. for the title line of the text log.
+		 *
+		 * @param startMillis When the game started, in ms since the epoch.
+		 */
+		public void started(Level level, Difficulty difficulty, long seed, long startMillis) throws IOException {
+			if( buffer.remaining() < RECORD_SIZE )
+				flush();
+			int p = buffer.position();
+			buffer.putInt(p + LEVEL, level.ordinal())
+			      .putInt(p + DIFFICULTY, difficulty.ordinal())
+			      .putLong(p + SEED, seed)
+			      .putLong(p + MILLIS, startMillis)
+			      .putShort(p + OPERATOR, (short) 0)
+			      .put(p + COMPLETED, (byte) 0)
+			      .put(p + KIND, STARTED)
+			      .putInt(p + KIND + 1, 0);
+			buffer.position(p + RECORD_SIZE);
+		}
+
+		/**
+		 * Records the end of a game (completed, or left incomplete), and
+		 * flushes the log.
+		 *
+		 * @param progress The points, as a fraction of the goal.
+		 */
+		public void ended(boolean completed, double progress, int correctCount, int incorrectCount, long durationMillis) throws IOException {
+			if( buffer.remaining() < RECORD_SIZE )
+				flush();
+			int p = buffer.position();
+			buffer.putInt(p + CORRECT_COUNT, correctCount)
+			      .putInt(p + INCORRECT_COUNT, incorrectCount)
+			      .putDouble(p + PROGRESS, progress)
+			      .putLong(p + MILLIS, durationMillis)
+			      .putShort(p + OPERATOR, (short) 0)
+			      .put(p + COMPLETED, (byte) (completed ? 1 : 0))
+			      .put(p + KIND, ENDED)
+			      .putInt(p + KIND + 1, 0);
+			buffer.position(p + RECORD_SIZE);
+			flush();
+		}
+
+		public void flush() throws IOException {
+			buffer.flip();
+			while( buffer.hasRemaining() )
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads records straight out of a memory mapped log file, without copying
+	 * or creating any objects per record.
+	 */
+	public static class Reader implements Closeable {
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private final int size;
+
+		public Reader(Path path) throws IOException {
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+			try {
+				long length = channel.size();
+				if( length < HEADER_SIZE )
+					throw new IOException("not a binary session log (too short): " + path);
+				if( length > Integer.MAX_VALUE )
+					throw new IOException("binary session log is too large to map: " + path);
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+				buffer.order(ByteOrder.LITTLE_ENDIAN);
+				if( buffer.getInt(0) != MAGIC )
+					throw new IOException("not a binary session log (bad magic number): " + path);
+				if( buffer.getShort(4) < 1 || buffer.getShort(4) > VERSION )
+					throw new IOException("unsupported binary session log version: " + buffer.getShort(4));
+				if( buffer.getShort(6) != RECORD_SIZE )
+					throw new IOException("unexpected record size: " + buffer.getShort(6));
+				size = (int) ((length - HEADER_SIZE) / RECORD_SIZE);
+			} catch(IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		/**
+		 * @return The number of records in the log.
+		 */
+		public int size() {
+			return size;
+		}
+
+		private int offset(int index) {
+			if( index < 0 || index >= size )
+				throw new IndexOutOfBoundsException("record " + index + " of " + size);
+			return HEADER_SIZE + index * RECORD_SIZE;
+		}
+
+		public int getOperand1(int index) {
+			return buffer.getInt( offset(index) + OPERAND1 );
+		}
+
+		public char getOperator(int index) {
+			return buffer.getChar( offset(index) + OPERATOR );
+		}
+
+		public int getOperand2(int index) {
+			return buffer.getInt( offset(index) + OPERAND2 );
+		}
+
+		public int getGuess(int index) {
+			return buffer.getInt( offset(index) + GUESS );
+		}
+
+		public boolean isCorrect(int index) {
+			return buffer.get( offset(index) + CORRECT ) != 0;
+		}
+
+		public long getNanos(int index) {
+			return buffer.getLong( offset(index) + NANOS );
+		}
+
+		public int getProblemNumber(int index) {
+			return buffer.getInt( offset(index) + PROBLEM_NUMBER );
+		}
+
+		/**
+		 * @return {@link #ANSWER}, {@link #STARTED} or {@link #ENDED}; only
+		 *         the getters for that kind of record apply.
+		 */
+		public byte getKind(int index) {
+			return buffer.get( offset(index) + KIND );
+		}
+
+		/**
+		 * @return The level of a game started record, or <code>null</code> if
+		 *         it is not one of this version's levels.
+		 */
+		public Level getLevel(int index) {
+			int level = buffer.getInt( offset(index) + LEVEL );
+			return level >= 0 && level < Level.values().length ? Level.values()[level] : null;
+		}
+
+		/**
+		 * @see #getLevel(int)
+		 */
+		public Difficulty getDifficulty(int index) {
+			int difficulty = buffer.getInt( offset(index) + DIFFICULTY );
+			return difficulty >= 0 && difficulty < Difficulty.values().length ? Difficulty.values()[difficulty] : null;
+		}
+
+		public long getSeed(int index) {
+			return buffer.getLong( offset(index) + SEED );
+		}
+
+		/**
+		 * @return When a game started (in ms since the epoch), or how long it
+		 *         lasted (in ms), for a game started or ended record.
+		 */
+		public long getMillis(int index) {
+			return buffer.getLong( offset(index) + MILLIS );
+		}
+
+		public boolean isCompleted(int index) {
+			return buffer.get( offset(index) + COMPLETED ) != 0;
+		}
+
+		/**
+		 * @return The points of a game ended record, as a fraction of the goal.
+		 */
+		public double getProgress(int index) {
+			return buffer.getDouble( offset(index) + PROGRESS );
+		}
+
+		public int getCorrectCount(int index) {
+			return buffer.getInt( offset(index) + CORRECT_COUNT );
+		}
+
+		public int getIncorrectCount(int index) {
+			return buffer.getInt( offset(index) + INCORRECT_COUNT );
+		}
+
+		/**
+		 * Renders the log in the same text format {@link MathGameGUI} saves,
+		 * including the title and end line of each game.
+		 */
+		public void writeText(Appendable out) throws IOException {
+			for( int i = 0; i < size; i++ ) {
+				byte kind = getKind(i);
+				if( kind == ANSWER ) {
+					int guess = getGuess(i);
+					out.append( MathGameGUI.formatLogLine(getProblemNumber(i), getOperand1(i), getOperator(i), getOperand2(i),
+							guess == NO_GUESS ? "?" : Integer.toString(guess), isCorrect(i)) );
+				} else if( kind == STARTED ) {
+					Level level = getLevel(i);
+					Difficulty difficulty = getDifficulty(i);
+					if( level != null && difficulty != null )
+						out.append( MathGameGUI.formatTitleLine(level.getTitle(difficulty), getMillis(i)) );
+				} else if( kind == ENDED ) {
+					out.append( isCompleted(i)
+							? MathGameGUI.formatCompletedLine(getCorrectCount(i), getIncorrectCount(i), getMillis(i))
+							: MathGameGUI.formatIncompleteLine(getProgress(i), getCorrectCount(i), getIncorrectCount(i), getMillis(i)) );
+				}
+			}
+		}
+
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Converts a binary session log to text.
+	 *
+	 * Usage: <code>java com.mathhead200.math_game.BinarySessionLog &lt;log&gt; [text file]</code>
+	 */
+	public static void main(String[] args) throws IOException {
+		if( args.length < 1 || args.length > 2 ) {
+			System.err.println("usage: java " + BinarySessionLog.class.getName() + " <log> [text file]");
+			System.exit(1);
+		}
+		try( Reader reader = new Reader(Paths.get(args[0]));
+		     java.io.Writer out = new BufferedWriter(args.length > 1
+		    		 ? Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)
+		    		 : new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) )
+		{
+			reader.writeText(out);
+		}
+	}
+}
@@ -3,31 +3,73 @@ package com.mathhead200.math_game;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
 import java.awt.Insets;
 import java.awt.Polygon;
 import java.awt.Rectangle;
+import java.awt.Transparency;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 import javax.swing.BorderFactory;
 import javax.swing.JComponent;
+import javax.swing.border.Border;
 
 
+/**
+ * Like all Swing components, a chalkboard must only be used on the EDT; so
+ * the guess is kept in a plain char buffer, without any locks, and checking
+ * it against the result compares chars, without creating any objects.
+ */
 @SuppressWarnings("serial")
 public abstract class Chalkboard extends JComponent implements KeyListener {
 	
+	public static final int TOP_ROW = 1;
+	public static final int BOTTOM_ROW = 2; // the operator and bottom operand
+	public static final int GUESS_ROW = 4;
+	public static final int CARET_ROW = 8;
+	
 	private int columns;
+	private int baseMaxLength; // as set by the constructor or setMaxLength(...); setProblem(...) may go over it
 	private int lineThickness;
 	private int padding;
 	private String topOperand = "";
 	private char operator = ' ';
 	private String bottomOperand = "";
-	private String result = null;
-	private StringBuilder guess = new StringBuilder();
+	private char[] result = new char[11]; // enough for any int
+	private int resultLength = -1; // or -1 for no result
+	private char[] guess;
+	private int guessLength = 0;
 	private int caretPosition = -1; // negative values turn caret typing off
 	
+	// render cache; rebuilt on resize, or after any change to the font, colors, border or layout
+	private GlyphAtlas glyphs = null;
+	private Image boardImage = null;
+	private int boardX;
+	private int boardY;
+	private int boardWidth;
+	private int boardHeight;
+	private int boardComponentWidth;
+	private int boardComponentHeight;
+	private Color caretColor = null;
+	private final Rectangle textRect = new Rectangle();
+	private final Insets paintInsets = new Insets(0, 0, 0, 0);
+	private final Polygon caret = new Polygon();
+	
+	private int updateDepth = 0;
+	private final Rectangle dirtyRegion = new Rectangle();
+	
+	private InputLatencyMonitor latencyMonitor = null;
+	
 	public Chalkboard(int maxLength, int lineThinkness, int padding) {
 		this.columns = maxLength + 1;
+		this.baseMaxLength = maxLength;
+		this.guess = new char[maxLength];
 		this.lineThickness = lineThinkness;
 		this.padding = padding;
 		
@@ -55,16 +97,21 @@ public abstract class Chalkboard extends JComponent implements KeyListener {
 	}
 
 	public void setMaxLength(int maxLength) {
-		int minLength = Math.min( topOperand.length(), bottomOperand.length() );
-		if( result != null )
-			minLength = Math.min( minLength, result.length() );
+		resize(maxLength);
+		baseMaxLength = maxLength;
+	}
+	
+	private void resize(int maxLength) {
+		int minLength = Math.max( Math.max(topOperand.length(), bottomOperand.length()), resultLength );
 		if( maxLength < minLength )
 			throw new IllegalArgumentException("maxLength can not be set lower then the length of any current operand or result: " + maxLength);
 		
-		if( (this.caretPosition += maxLength - getMaxLength()) < 0 )
+		// keep the caret over the same digit (and off, if it is off)
+		if( caretPosition >= 0 && (this.caretPosition += maxLength - getMaxLength()) < 0 )
 			this.caretPosition = 0;
 		
 		this.columns = maxLength + 1;
+		invalidateRenderCache();
 		repaint();
 	}
 	
@@ -74,6 +121,7 @@ public abstract class Chalkboard extends JComponent implements KeyListener {
 	
 	public void setLineThickness(int lineThickness) {
 		this.lineThickness = lineThickness > 0 ? lineThickness : 0;
+		invalidateRenderCache();
 		repaint();
 	}
 
@@ -87,6 +135,7 @@ public abstract class Chalkboard extends JComponent implements KeyListener {
 
 	public void setPadding(int padding) {
 		this.padding = padding > 0 ? padding : 0;
+		invalidateRenderCache();
 		repaint();
 	}
 
@@ -94,7 +143,7 @@ public abstract class Chalkboard extends JComponent implements KeyListener {
 		if( topOperand.length() > columns - 1 )
 			throw new IllegalArgumentException("operands can not be longer then the maxLength: " + topOperand);
 		this.topOperand = topOperand;
-		repaint();
+		repaintRows(TOP_ROW);
 	}
 
 	public char getOperator() {
@@ -103,7 +152,7 @@ public abstract class Chalkboard extends JComponent implements KeyListener {
 
 	public void setOperator(char operator) {
 		this.operator = operator;
-		repaint();
+		repaintRows(BOTTOM_ROW);
 	}
 
 	public String getBottomOperand() {
@@ -111,31 +160,157 @@ public abstract class Chalkboard extends JComponent implements KeyListener {
 	}
 
 	public void setBottomOperand(String bottomOperand) {
-		if( topOperand.length() > columns - 1 )
+		if( bottomOperand.length() > columns - 1 )
 			throw new IllegalArgumentException("operands can not be longer then the maxLength: " + bottomOperand);
 		this.bottomOperand = bottomOperand;
-		repaint();
+		repaintRows(BOTTOM_ROW);
 	}
 
 	public String getResult() {
-		return result;
+		return resultLength < 0 ? null : new String(result, 0, resultLength);
 	}
 
 	public void setResult(String result) {
-		if( topOperand.length() > columns - 1 )
+		if( result != null && result.length() > columns - 1 )
 			throw new IllegalArgumentException("result can not be longer then the maxLength: " + result);
-		this.result = result;
+		if( result == null ) {
+			resultLength = -1;
+			return;
+		}
+		if( result.length() > this.result.length )
+			this.result = new char[ result.length() ];
+		result.getChars(0, result.length(), this.result, 0);
+		resultLength = result.length();
+	}
+	
+	/**
+	 * The same as <code>setResult(Integer.toString(result))</code>, but
+	 * without creating the String.
+	 */
+	public void setResult(int result) {
+		int length = digits(result);
+		if( length > columns - 1 )
+			throw new IllegalArgumentException("result can not be longer then the maxLength: " + result);
+		long value = Math.abs( (long) result );
+		for( int i = length - 1; i >= 0; i-- ) {
+			this.result[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		if( result < 0 )
+			this.result[0] = '-';
+		resultLength = length;
+	}
+	
+	/**
+	 * @return The number of chars in <code>Integer.toString(value)</code>.
+	 */
+	private static int digits(int value) {
+		int length = value < 0 ? 2 : 1;
+		for( long v = Math.abs( (long) value ) / 10; v != 0; v /= 10 )
+			length++;
+		return length;
+	}
+	
+	/**
+	 * Shows a new problem (and clears the guess) as a single update. The
+	 * maxLength grows to fit the operands and result if they are too long, and
+	 * shrinks back once they fit again.
+	 * 
+	 * @param result May be <code>null</code>.
+	 */
+	public void setProblem(String topOperand, char operator, String bottomOperand, String result) {
+		int maxLength = beginProblem( topOperand, bottomOperand, result != null ? result.length() : 0 );
+		setResult(result);
+		endProblem(topOperand, operator, bottomOperand, maxLength);
+	}
+	
+	/**
+	 * The same as {@link #setProblem(String, char, String, String)}, but
+	 * without a String for the result.
+	 */
+	public void setProblem(String topOperand, char operator, String bottomOperand, int result) {
+		int maxLength = beginProblem( topOperand, bottomOperand, digits(result) );
+		setResult(result);
+		endProblem(topOperand, operator, bottomOperand, maxLength);
+	}
+	
+	/**
+	 * Starts the update of setProblem(...): clears the guess, and grows the
+	 * maxLength before the longer operands and result are set.
+	 * 
+	 * @return The maxLength the new problem needs.
+	 */
+	private int beginProblem(String topOperand, String bottomOperand, int resultLength) {
+		int length = Math.max( Math.max(topOperand.length(), bottomOperand.length()), resultLength );
+		int maxLength = Math.max(length, baseMaxLength);
+		beginUpdate();
+		clearGuess();
+		if( maxLength > getMaxLength() )
+			resize(maxLength);
+		return maxLength;
+	}
+	
+	private void endProblem(String topOperand, char operator, String bottomOperand, int maxLength) {
+		setTopOperand(topOperand);
+		setOperator(operator);
+		setBottomOperand(bottomOperand);
+		if( maxLength < getMaxLength() )
+			resize(maxLength); // shrink after the longer ones are gone
+		endUpdate();
 	}
 	
 	public String getGuess() {
-		return guess.toString();
+		return new String(guess, 0, guessLength);
+	}
+	
+	/**
+	 * @return The guess as an int, or {@link MathProblem#NO_GUESS} if it is
+	 *         not an int written canonically (see
+	 *         {@link MathProblem#parseGuess(CharSequence)}), so it equals the
+	 *         result exactly when the guess is correct; the same as
+	 *         <code>MathProblem.parseGuess(getGuess())</code>, but without
+	 *         creating the String.
+	 */
+	public int getGuessValue() {
+		return MathProblem.parseGuess(guess, guessLength);
+	}
+	
+	/**
+	 * @return <code>true</code> if nothing (but spaces) has been typed; the
+	 *         same as <code>getGuess().trim().isEmpty()</code>, but without
+	 *         creating the Strings.
+	 */
+	public boolean isGuessEmpty() {
+		for( int i = 0; i < guessLength; i++ )
+			if( guess[i] > ' ' )
+				return false;
+		return true;
 	}
 	
 	public void setGuess(String guess) {
-		synchronized (this.guess) {
-			this.guess.replace(0, this.guess.length(), guess);
-		}
-		repaint();
+		if( guess.length() > this.guess.length )
+			this.guess = new char[ guess.length() ];
+		guess.getChars(0, guess.length(), this.guess, 0);
+		guessLength = guess.length();
+		repaintRows(GUESS_ROW);
+	}
+	
+	private void clearGuess() {
+		guessLength = 0;
+		repaintRows(GUESS_ROW);
+	}
+	
+	/**
+	 * @return <code>true</code> if the guess is exactly the result (as
+	 *         <code>getGuess().equals(getResult())</code>.)
+	 */
+	private boolean isGuessCorrect() {
+		if( resultLength != guessLength )
+			return false;
+		for( int i = 0; i < guessLength; i++ )
+			if( guess[i] != result[i] )
+				return false;
+		return true;
 	}
 	
 	public int getCaretPosition() {
@@ -144,63 +319,192 @@ public abstract class Chalkboard extends JComponent implements KeyListener {
 	
 	public void setCaretPosition(int caretPosition) {
 		this.caretPosition = (0 <= caretPosition && caretPosition < getMaxLength() ? caretPosition : -1);
-		repaint();
+		repaintRows(CARET_ROW);
+	}
+	
+	public InputLatencyMonitor getInputLatencyMonitor() {
+		return latencyMonitor;
+	}
+	
+	/**
+	 * @param latencyMonitor Told about every keystroke and paint, or
+	 *                       <code>null</code> for none.
+	 */
+	public void setInputLatencyMonitor(InputLatencyMonitor latencyMonitor) {
+		this.latencyMonitor = latencyMonitor;
+	}
+	
+	/**
+	 * Starts a batch of changes: until the matching {@link #endUpdate()}, the
+	 * regions changed by any setter are collected, and then repainted all at
+	 * once. Updates may be nested.
+	 */
+	public void beginUpdate() {
+		updateDepth++;
+	}
+	
+	public void endUpdate() {
+		if( updateDepth == 0 )
+			throw new IllegalStateException("endUpdate() without beginUpdate()");
+		if( --updateDepth == 0 && !dirtyRegion.isEmpty() ) {
+			repaint(dirtyRegion.x, dirtyRegion.y, dirtyRegion.width, dirtyRegion.height);
+			dirtyRegion.setBounds(0, 0, 0, 0);
+		}
+	}
+	
+	/**
+	 * Repaints (or, during an update, marks dirty) just the given rows of the
+	 * board.
+	 * 
+	 * @param rows Any of {@link #TOP_ROW}, {@link #BOTTOM_ROW},
+	 *             {@link #GUESS_ROW}, and {@link #CARET_ROW} or-ed together.
+	 */
+	private void repaintRows(int rows) {
+		if( glyphs == null || getWidth() <= 0 || getHeight() <= 0 ) {
+			// not painted yet, so the glyph extents are unknown
+			repaintRegion(0, 0, getWidth(), getHeight());
+			return;
+		}
+		Rectangle rect = layoutTextRect();
+		int dy = (rect.height - lineThickness - 2 * padding) / 3;
+		int ascent = glyphs.getMaxAscent() + 1;
+		int descent = glyphs.getMaxDescent() + 1;
+		if( (rows & TOP_ROW) != 0 )
+			repaintRegion(0, dy - ascent, getWidth(), ascent + descent);
+		if( (rows & BOTTOM_ROW) != 0 )
+			repaintRegion(0, 2 * dy - ascent, getWidth(), ascent + descent);
+		if( (rows & GUESS_ROW) != 0 )
+			repaintRegion(0, 3 * dy + padding - ascent, getWidth(), ascent + descent);
+		if( (rows & CARET_ROW) != 0 )
+			repaintRegion(0, rect.height - padding, getWidth(), padding + 1);
+	}
+	
+	private void repaintRegion(int x, int y, int width, int height) {
+		if( latencyMonitor != null )
+			latencyMonitor.repaintRequested();
+		if( updateDepth == 0 ) {
+			repaint(x, y, width, height);
+		} else if( dirtyRegion.isEmpty() ) {
+			dirtyRegion.setBounds(x, y, width, height);
+		} else {
+			dirtyRegion.add(x, y);
+			dirtyRegion.add(x + width, y + height);
+		}
 	}
 	
 	public abstract void correct();
 	
 	public abstract void incorrect();
 	
-	public void paintComponent(Graphics graphics) {
-		Graphics g = graphics.create();
+	/**
+	 * Throws away the cached glyphs and board image, so they are rebuilt on the
+	 * next paint.
+	 */
+	private void invalidateRenderCache() {
+		glyphs = null;
+		boardImage = null;
+		caretColor = null;
+	}
+	
+	/**
+	 * Computes where the text goes (inside the insets and padding) into
+	 * <code>textRect</code>.
+	 */
+	private Rectangle layoutTextRect() {
+		Rectangle rect = textRect;
+		Insets insets = getInsets(paintInsets);
+		rect.x = insets.left + padding;
+		rect.y = insets.top + padding;
+		rect.width = getWidth() - insets.left - insets.right - 2 * padding;
+		rect.height = getHeight() - insets.top - insets.bottom - 2 * padding;
+		return rect;
+	}
+	
+	private void validateRenderCache() {
+		if( boardImage != null && boardComponentWidth == getWidth() && boardComponentHeight == getHeight() )
+			return;
+		
+		GraphicsConfiguration config = getGraphicsConfiguration();
+		if( glyphs == null || !glyphs.matches(getFont(), getForeground()) )
+			glyphs = new GlyphAtlas( getFont(), getForeground(), config );
+		caretColor = getBackground().darker();
+		
+		// the static board (inside the insets): background and "equals" line
+		Insets insets = getInsets(paintInsets);
+		boardX = insets.left;
+		boardY = insets.top;
+		boardWidth = Math.max( 1, getWidth() - insets.left - insets.right );
+		boardHeight = Math.max( 1, getHeight() - insets.top - insets.bottom );
+		AffineTransform deviceTransform = config != null ? config.getDefaultTransform() : new AffineTransform();
+		int imageWidth = (int) Math.ceil( boardWidth * deviceTransform.getScaleX() );
+		int imageHeight = (int) Math.ceil( boardHeight * deviceTransform.getScaleY() );
+		if( config != null )
+			boardImage = config.createCompatibleImage(imageWidth, imageHeight, isOpaque() ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+		else
+			boardImage = new BufferedImage(imageWidth, imageHeight, isOpaque() ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = (Graphics2D) boardImage.getGraphics();
+		g.scale( deviceTransform.getScaleX(), deviceTransform.getScaleY() );
+		g.translate(-boardX, -boardY);
 		
-		Rectangle rect = new Rectangle( 0, 0, getWidth(), getHeight() );
-		Insets insets = getInsets();
-		rect.x += insets.left;
-		rect.y += insets.top;
-		rect.width -= insets.left + insets.right;
-		rect.height -= insets.top + insets.bottom;
 		if( isOpaque() ) {
 			g.setColor( getBackground() );
-			g.fillRect(rect.x, rect.y, rect.width, rect.height);
+			g.fillRect(boardX, boardY, boardWidth, boardHeight);
 		}
-		rect.x += padding;
-		rect.y += padding;
-		rect.width -= 2 * padding;
-		rect.height -= 2 * padding;
-		
+		Rectangle rect = layoutTextRect();
+		int dx = rect.width / columns;
+		int dy = (rect.height - lineThickness - 2 * padding) / 3;
 		g.setColor( getForeground() );
-		g.setFont( getFont() );
+		g.fillRect(dx, 2 * dy + padding, rect.width - dx, lineThickness);
+		g.dispose();
+		boardComponentWidth = getWidth();
+		boardComponentHeight = getHeight();
+	}
+	
+	private void drawRightAligned(Graphics g, CharSequence text, int x, int y, int dx) {
+		for( int i = text.length() - 1; i >= 0; i--, x -= dx )
+			glyphs.draw( g, text.charAt(i), x, y );
+	}
+	
+	private void drawRightAligned(Graphics g, char[] text, int length, int x, int y, int dx) {
+		for( int i = length - 1; i >= 0; i--, x -= dx )
+			glyphs.draw( g, text[i], x, y );
+	}
+	
+	public void paintComponent(Graphics g) {
+		long start = System.nanoTime();
+		paintBoard(g);
+		long end = System.nanoTime();
+		GameMetrics.getInstance().chalkboardPainted(end - start);
+		if( latencyMonitor != null )
+			latencyMonitor.painted(start, end);
+	}
+	
+	private void paintBoard(Graphics g) {
+		validateRenderCache();
+		
+		// background and "equals" line
+		g.drawImage(boardImage, boardX, boardY, boardWidth, boardHeight, null);
+		
+		Rectangle rect = layoutTextRect();
 		int dx = rect.width / columns;
 		int dy = (rect.height - lineThickness - 2 * padding) / 3;
 		
-		int y = dy;
 		// draw top operand
-		for( int i = topOperand.length() - 1, x = rect.x + rect.width - dx; i >= 0; i--, x -= dx )
-			g.drawString( Character.toString(topOperand.charAt(i)), x, y );
-		
-		y = 2 * dy;
+		drawRightAligned( g, topOperand, rect.x + rect.width - dx, dy, dx );
 		// draw operator
-		g.drawString( Character.toString(operator), rect.x, y );
+		glyphs.draw( g, operator, rect.x, 2 * dy );
 		// draw bottom operand
-		for( int i = bottomOperand.length() - 1, x = rect.x + rect.width - dx; i >= 0; i--, x -= dx )
-			g.drawString( Character.toString(bottomOperand.charAt(i)), x, y );
-		
-		y = 2 * dy + padding;
-		// draw "equals" line
-		g.fillRect(dx, y, rect.width - dx, lineThickness);
-		
-		y = 3 * dy + padding;
+		drawRightAligned( g, bottomOperand, rect.x + rect.width - dx, 2 * dy, dx );
 		// draw guess
-		for( int i = guess.length() - 1, x = rect.x + rect.width - dx; i >= 0; i--, x -= dx )
-			g.drawString( Character.toString(guess.charAt(i)), x, y );
+		drawRightAligned( g, guess, guessLength, rect.x + rect.width - dx, 3 * dy + padding, dx );
 		
 		// draw caret
 		if( caretPosition >= 0 ) {
 			int x = dx * (caretPosition + 1);
-			y = rect.height - padding;
+			int y = rect.height - padding;
 			
-			Polygon p = new Polygon();
+			Polygon p = caret;
+			p.reset();
 			/*
 			p.addPoint(  x + dx / 2,  y                            );
 			p.addPoint(  x + dx,      y + padding - lineThickness  );
@@ -219,63 +523,123 @@ public abstract class Chalkboard extends JComponent implements KeyListener {
 			p.addPoint(  x,                       y + padding                  );
 			
 			// g.fillRect( x, y, dx, lineThickness);
-			g.setColor( getBackground().darker() );
+			Color color = g.getColor();
+			g.setColor(caretColor);
 			g.fillPolygon(p);
+			g.setColor(color);
 		}
 	}
+	
+	public void setFont(Font font) {
+		super.setFont(font);
+		invalidateRenderCache();
+	}
+	
+	public void setForeground(Color foreground) {
+		super.setForeground(foreground);
+		invalidateRenderCache();
+	}
+	
+	public void setBackground(Color background) {
+		super.setBackground(background);
+		invalidateRenderCache();
+	}
+	
+	public void setBorder(Border border) {
+		super.setBorder(border);
+		invalidateRenderCache();
+	}
+	
+	public void setOpaque(boolean isOpaque) {
+		super.setOpaque(isOpaque);
+		invalidateRenderCache();
+	}
+	
+	public void addNotify() {
+		super.addNotify();
+		invalidateRenderCache(); // the GraphicsConfiguration (and so the device scale) may have changed
+	}
 
 	public void keyTyped(KeyEvent e) {
+		if( latencyMonitor == null ) {
+			typeKey(e);
+			return;
+		}
+		latencyMonitor.keyStarted(e);
+		try {
+			typeKey(e);
+		} finally {
+			latencyMonitor.keyFinished();
+		}
+	}
+	
+	private void typeKey(KeyEvent e) {
 		if( Character.isAlphabetic(e.getKeyChar()) || Character.isDigit(e.getKeyChar()) ) {
 			if( caretPosition >= 0 ) {
-				synchronized(guess) {
-					int pos;
-					while( (pos = getRelativeCaretPosition()) < 0 )
-						guess.insert(0, ' ');
-					guess.setCharAt( pos, e.getKeyChar() );
-					if( pos < guess.length() - 1 && guess.charAt(pos + 1) == ' ' )
-						caretPosition++;
+				int pos = getRelativeCaretPosition();
+				if( pos < 0 ) {
+					// pad with spaces out to the caret
+					if( guessLength - pos > guess.length )
+						guess = Arrays.copyOf(guess, guessLength - pos);
+					System.arraycopy(guess, 0, guess, -pos, guessLength);
+					Arrays.fill(guess, 0, -pos, ' ');
+					guessLength -= pos;
+					pos = 0;
 				}
+				guess[pos] = e.getKeyChar();
+				if( pos < guessLength - 1 && guess[pos + 1] == ' ' )
+					caretPosition++;
 			} else {
-				synchronized(guess) {
-					if( guess.length() < getMaxLength() )
-						guess.append( e.getKeyChar() );
+				if( guessLength < getMaxLength() ) {
+					if( guessLength == guess.length )
+						guess = Arrays.copyOf(guess, getMaxLength());
+					guess[guessLength++] = e.getKeyChar();
 				}
 			}
-			repaint();
+			repaintRows(GUESS_ROW | CARET_ROW);
 		}
 	}
 
 	private int getRelativeCaretPosition() {
-		return caretPosition + guess.length() - getMaxLength();
+		return caretPosition + guessLength - getMaxLength();
 	}
 	
 	public void keyPressed(KeyEvent e) {
+		if( latencyMonitor == null ) {
+			pressKey(e);
+			return;
+		}
+		latencyMonitor.keyStarted(e);
+		try {
+			pressKey(e);
+		} finally {
+			latencyMonitor.keyFinished();
+		}
+	}
+	
+	private void pressKey(KeyEvent e) {
 		if( e.getKeyCode() == KeyEvent.VK_BACK_SPACE ) {
 			
 			if( caretPosition >= 0 ) {
-				synchronized(guess) {
-					int pos = getRelativeCaretPosition();
-					if( pos >= 0 )
-						guess.setCharAt(pos, ' ');
-					while( guess.length() != 0 && guess.charAt(0) == ' ' )
-						guess.deleteCharAt(0);
-				}
+				int pos = getRelativeCaretPosition();
+				if( pos >= 0 )
+					guess[pos] = ' ';
+				int spaces = 0;
+				while( spaces < guessLength && guess[spaces] == ' ' )
+					spaces++;
+				System.arraycopy(guess, spaces, guess, 0, guessLength - spaces);
+				guessLength -= spaces;
 			} else {
-				synchronized(guess) {
-					if( guess.length() != 0 )
-						guess.deleteCharAt( guess.length() - 1 );
-				}
+				if( guessLength != 0 )
+					guessLength--;
 			}
-			repaint();
+			repaintRows(GUESS_ROW | CARET_ROW);
 			
 		} else if( e.getKeyCode() == KeyEvent.VK_DELETE || e.getKeyCode() == KeyEvent.VK_ESCAPE ) {
 			
 			caretPosition = -1;
-			synchronized(guess) {
-				if( guess.length() != 0 )
-					guess.delete( 0, guess.length() );
-			}
-			repaint();
+			guessLength = 0;
+			repaintRows(GUESS_ROW | CARET_ROW);
 			
 		} else if( e.getKeyCode() == KeyEvent.VK_LEFT ) {
 			
@@ -285,7 +649,7 @@ public abstract class Chalkboard extends JComponent implements KeyListener {
 			} else {
 				caretPosition = getMaxLength() - 1;
 			}
-			repaint();
+			repaintRows(CARET_ROW);
 			
 		} else if( e.getKeyCode() == KeyEvent.VK_RIGHT ) {
 			
@@ -295,15 +659,11 @@ public abstract class Chalkboard extends JComponent implements KeyListener {
 			} else {
 				caretPosition = 0;
 			}
-			repaint();
+			repaintRows(CARET_ROW);
 			
 		} else if( e.getKeyChar() == KeyEvent.VK_ENTER || e.getKeyCode() == KeyEvent.VK_SPACE ) {
 			
-			String guess;
-			synchronized(this.guess) {
-				guess = this.guess.toString();
-			}
-			if( result != null && guess.equals(result) )
+			if( isGuessCorrect() )
 				correct();
 			else
 				incorrect();
@@ -0,0 +1,493 @@
+package com.mathhead200.math_game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Periodically saves a {@link Checkpoint} of the game, so that it can be
+ * resumed if the JVM dies.
+ *
+ * {@link #update(Checkpoint)} only publishes the latest checkpoint, so it
+ * never blocks (e.g. the EDT); a background thread writes the latest one, at
+ * most once a period, to a temporary file which is then atomically moved over
+ * the checkpoint file, so the checkpoint file is always either the previous
+ * checkpoint or the new one, never a torn write.
+ *
+ * A checkpoint does not hold the game log itself, only the path of the
+ * {@link SessionJournal} file and how long it was; the journal is flushed
+ * before each checkpoint is written, so the file always holds at least that
+ * much of the log. So writing a checkpoint costs the same however long the
+ * session has been. (Resuming one does not: the generator is restored by
+ * replaying it; see {@link ProblemSet#restore}.)
+ *
+ * Each running game has its own checkpoint, named after a common base (e.g.
+ * <code>Math Game.checkpoint.&lt;id&gt;</code>), and holds a lock on a
+ * <code>.lock</code> file beside it for as long as it is open. So a
+ * checkpoint whose lock can be taken was left by a game which is no longer
+ * running (see {@link #findOrphan(Path)}), and no game ever resumes, or
+ * deletes, the checkpoint (or journal) of one which is.
+ *
+ * <pre>
+ * checkpoint:  int magic ("MGCP"), short version, byte level (or -1 for no game),
+ *              byte difficulty, long seed, long problems generated, int points,
+ *              int correct count, int incorrect count, int problem number,
+ *              byte current problem unanswered, 7 bytes reserved,
+ *              long milliseconds played, long journal length (chars),
+ *              long journal length saved (chars), short journal path length (bytes),
+ *              journal path (UTF-8)
+ * </pre>
+ *
+ * All values are little-endian.
+ */
+public class Checkpointer implements Closeable {
+
+	public static final int MAGIC = 0x5043474D; // "MGCP" in little-endian
+	public static final short VERSION = 1;
+	public static final long DEFAULT_PERIOD_MILLIS = 5000;
+	/** The longest {@link #close()} waits for the background thread. */
+	public static final long CLOSE_TIMEOUT_MILLIS = 1000;
+	private static final int FIXED_SIZE = 74; // everything but the journal path
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final long STALE_LOCK_MILLIS = 60_000; // before a lock file with no checkpoint is deleted
+
+	/**
+	 * The state of the game at one point in time.
+	 */
+	public static class Checkpoint {
+		public final Level level; // or null if no game is in progress
+		public final Difficulty difficulty;
+		public final long seed;
+		public final long generated;
+		public final int points;
+		public final int correctCount;
+		public final int incorrectCount;
+		public final int problemNumber;
+		public final boolean current;
+		public final long elapsedMillis;
+		public final Path journalPath;
+		public final long journalLength;
+		public final long savedLength;
+
+		/**
+		 * A checkpoint of a game in progress.
+		 */
+		Checkpoint(Level level, Difficulty difficulty, ProblemSet problemSet, long elapsedMillis,
+				SessionJournal journal, long savedLength)
+		{
+			this( level, difficulty, problemSet.getSeed(), problemSet.getGenerated(), problemSet.getPoints(),
+					problemSet.getCorrectCount(), problemSet.getIncorrectCount(), problemSet.getCurrentProblemNumber(),
+					problemSet.getCurrentProblem() != null, elapsedMillis, journal.getPath(), journal.getLength(), savedLength );
+		}
+
+		/**
+		 * A checkpoint of just the game log (no game is in progress.)
+		 */
+		Checkpoint(SessionJournal journal, long savedLength) {
+			this( null, null, 0, 0, 0, 0, 0, 0, false, 0, journal.getPath(), journal.getLength(), savedLength );
+		}
+
+		private Checkpoint(Level level, Difficulty difficulty, long seed, long generated, int points, int correctCount,
+				int incorrectCount, int problemNumber, boolean current, long elapsedMillis, Path journalPath,
+				long journalLength, long savedLength)
+		{
+			this.level = level;
+			this.difficulty = difficulty;
+			this.seed = seed;
+			this.generated = generated;
+			this.points = points;
+			this.correctCount = correctCount;
+			this.incorrectCount = incorrectCount;
+			this.problemNumber = problemNumber;
+			this.current = current;
+			this.elapsedMillis = elapsedMillis;
+			this.journalPath = journalPath;
+			this.journalLength = journalLength;
+			this.savedLength = savedLength;
+		}
+
+		/**
+		 * @return The problem set of the game, exactly as it was (generator
+		 *         included), or <code>null</code> if no game was in progress.
+		 */
+		public ProblemSet restoreProblemSet() {
+			if( level == null )
+				return null;
+			ProblemSet problemSet = level.newProblemSet(difficulty, seed);
+			problemSet.restore(generated, points, correctCount, incorrectCount, problemNumber, current);
+			return problemSet;
+		}
+
+		/**
+		 * @return The part of the game log written before this checkpoint, or
+		 *         <code>null</code> if the journal file is gone.
+		 */
+		public String restoreLog() throws IOException {
+			if( !Files.exists(journalPath) )
+				return null;
+			String log = new String( Files.readAllBytes(journalPath), StandardCharsets.UTF_8 );
+			return log.length() > journalLength ? log.substring(0, (int) journalLength) : log;
+		}
+
+		void write(ByteBuffer buffer) {
+			byte[] journalPath = this.journalPath.toString().getBytes(StandardCharsets.UTF_8);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putShort(VERSION)
+			      .put( (byte) (level == null ? -1 : level.ordinal()) ).put( (byte) (difficulty == null ? -1 : difficulty.ordinal()) )
+			      .putLong(seed).putLong(generated).putInt(points).putInt(correctCount).putInt(incorrectCount)
+			      .putInt(problemNumber).put( (byte) (current ? 1 : 0) ).put(new byte[7])
+			      .putLong(elapsedMillis).putLong(journalLength).putLong(savedLength)
+			      .putShort( (short) journalPath.length ).put(journalPath);
+		}
+
+		int getEncodedSize() {
+			return FIXED_SIZE + journalPath.toString().getBytes(StandardCharsets.UTF_8).length;
+		}
+
+		static Checkpoint read(ByteBuffer buffer) throws IOException {
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if( buffer.remaining() < FIXED_SIZE )
+				throw new IOException("truncated checkpoint");
+			if( buffer.getInt() != MAGIC )
+				throw new IOException("not a checkpoint (bad magic number)");
+			short version = buffer.getShort();
+			if( version != VERSION )
+				throw new IOException("unsupported checkpoint version: " + version);
+			int level = buffer.get();
+			int difficulty = buffer.get();
+			if( level < -1 || level >= Level.values().length || (level >= 0 && (difficulty < 0 || difficulty >= Difficulty.values().length)) )
+				throw new IOException("unrecognized level or difficulty: " + level + ", " + difficulty);
+			long seed = buffer.getLong();
+			long generated = buffer.getLong();
+			int points = buffer.getInt();
+			int correctCount = buffer.getInt();
+			int incorrectCount = buffer.getInt();
+			int problemNumber = buffer.getInt();
+			boolean current = buffer.get() != 0;
+			buffer.position( buffer.position() + 7 ); // reserved
+			long elapsedMillis = buffer.getLong();
+			long journalLength = buffer.getLong();
+			long savedLength = buffer.getLong();
+			byte[] journalPath = new byte[ buffer.getShort() & 0xFFFF ];
+			if( buffer.remaining() < journalPath.length )
+				throw new IOException("truncated checkpoint");
+			buffer.get(journalPath);
+			return new Checkpoint( level < 0 ? null : Level.values()[level], level < 0 ? null : Difficulty.values()[difficulty],
+					seed, generated, points, correctCount, incorrectCount, problemNumber, current, elapsedMillis,
+					Paths.get( new String(journalPath, StandardCharsets.UTF_8) ), journalLength, savedLength );
+		}
+
+		public String toString() {
+			return level == null ? "no game in progress" : String.format("%s %d\u2713 %d\u2717 %d points", level.getTitle(difficulty),
+					correctCount, incorrectCount, points);
+		}
+	}
+
+	/**
+	 * A checkpoint left by a game which was not closed properly, locked by
+	 * this game, so no other game offers to resume it too.
+	 */
+	public static class Orphan implements Closeable {
+		public final Checkpoint checkpoint;
+		private final Path path;
+		private final FileChannel lockChannel;
+
+		Orphan(Checkpoint checkpoint, Path path, FileChannel lockChannel) {
+			this.checkpoint = checkpoint;
+			this.path = path;
+			this.lockChannel = lockChannel;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * Deletes the checkpoint (once it has been resumed, or declined), and
+		 * then its lock.
+		 */
+		public void delete() throws IOException {
+			try {
+				Files.deleteIfExists(path);
+				Files.deleteIfExists( tempPath(path) );
+			} finally {
+				close();
+				Files.deleteIfExists( lockPath(path) );
+			}
+		}
+
+		/**
+		 * Releases the checkpoint, leaving it to be offered again.
+		 */
+		public void close() throws IOException {
+			lockChannel.close();
+		}
+	}
+
+	private final Path path;
+	private final Path tempPath;
+	private final FileChannel lockChannel; // locked for as long as this checkpointer is open
+	private final SessionJournal journal;
+	private final AtomicReference<Checkpoint> latest = new AtomicReference<>();
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * @param journal The journal checkpoints refer to; it is flushed before
+	 *                each checkpoint is written.
+	 * @throws IOException If the checkpoint is locked by another game.
+	 */
+	public Checkpointer(Path path, SessionJournal journal, long periodMillis) throws IOException {
+		this( path, lock(lockPath(path), false), journal, periodMillis );
+	}
+
+	public Checkpointer(Path path, SessionJournal journal) throws IOException {
+		this(path, journal, DEFAULT_PERIOD_MILLIS);
+	}
+
+	private Checkpointer(Path path, FileChannel lockChannel, SessionJournal journal, long periodMillis) throws IOException {
+		if( lockChannel == null )
+			throw new IOException("the checkpoint is in use by another game: " + path);
+		this.path = path;
+		this.tempPath = tempPath(path);
+		this.lockChannel = lockChannel;
+		this.journal = journal;
+		this.executor = Executors.newSingleThreadScheduledExecutor( runnable -> {
+			Thread thread = new Thread(runnable, "Checkpointer " + path.getFileName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::writeLatest, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return A checkpointer of a new checkpoint of its own, named after
+	 *         <code>base</code>, so any number of games can run at once.
+	 */
+	public static Checkpointer create(Path base, SessionJournal journal) throws IOException {
+		for( int attempt = 0; ; attempt++ ) {
+			Path path = base.resolveSibling( base.getFileName() + "." + Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36) );
+			FileChannel lockChannel = lock(lockPath(path), true);
+			if( lockChannel != null )
+				return new Checkpointer(path, lockChannel, journal, DEFAULT_PERIOD_MILLIS);
+			if( attempt == 100 )
+				throw new IOException("could not create a checkpoint beside " + base);
+		}
+	}
+
+	private static Path tempPath(Path path) {
+		return path.resolveSibling( path.getFileName() + TEMP_SUFFIX );
+	}
+
+	private static Path lockPath(Path path) {
+		return path.resolveSibling( path.getFileName() + LOCK_SUFFIX );
+	}
+
+	/**
+	 * @param createNew If the lock file must not already exist.
+	 * @return The open lock file, locked, or <code>null</code> if it is
+	 *         locked by another game (or already exists.)
+	 */
+	private static FileChannel lock(Path lockPath, boolean createNew) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open( lockPath, createNew ? StandardOpenOption.CREATE_NEW : StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+		} catch(FileAlreadyExistsException e) {
+			return null;
+		}
+		FileLock lock = null;
+		try {
+			lock = channel.tryLock();
+		} catch(OverlappingFileLockException e) {
+			// locked by this JVM
+		} finally {
+			if( lock == null )
+				channel.close();
+		}
+		return lock != null ? channel : null;
+	}
+
+	/**
+	 * Finds the most recent checkpoint, named after <code>base</code>, left by
+	 * a game which was not closed properly (i.e. which is not locked), and
+	 * locks it. Checkpoints which can not be read, and lock files left without
+	 * a checkpoint, are deleted along the way.
+	 *
+	 * @return The checkpoint, or <code>null</code> if there is none.
+	 */
+	public static Orphan findOrphan(Path base) throws IOException {
+		Path directory = base.toAbsolutePath().getParent();
+		String name = base.getFileName().toString();
+		List<Path> checkpoints = new ArrayList<>();
+		List<Path> locks = new ArrayList<>();
+		try( DirectoryStream<Path> files = Files.newDirectoryStream(directory) ) {
+			for( Path file : files ) {
+				String fileName = file.getFileName().toString();
+				if( !fileName.equals(name) && !fileName.startsWith(name + ".") )
+					continue;
+				if( fileName.endsWith(LOCK_SUFFIX) )
+					locks.add(file);
+				else if( !fileName.endsWith(TEMP_SUFFIX) )
+					checkpoints.add(file);
+			}
+		}
+		long now = System.currentTimeMillis();
+		for( Path lock : locks ) {
+			String fileName = lock.getFileName().toString();
+			Path path = lock.resolveSibling( fileName.substring(0, fileName.length() - LOCK_SUFFIX.length()) );
+			if( Files.exists(path) || now - Files.getLastModifiedTime(lock).toMillis() < STALE_LOCK_MILLIS )
+				continue; // a checkpoint, or a game just starting
+			FileChannel channel = lock(lock, false);
+			if( channel != null ) {
+				channel.close();
+				Files.deleteIfExists(lock);
+			}
+		}
+
+		checkpoints.sort( (a, b) -> Long.compare(lastModified(b), lastModified(a)) ); // most recent first
+		for( Path path : checkpoints ) {
+			FileChannel lockChannel = lock(lockPath(path), false);
+			if( lockChannel == null )
+				continue; // the game is still running
+			Orphan orphan = null;
+			try {
+				Checkpoint checkpoint = read(path);
+				if( checkpoint != null )
+					return orphan = new Orphan(checkpoint, path, lockChannel);
+			} catch(IOException e) {
+				e.printStackTrace();
+				Files.deleteIfExists(path);
+				Files.deleteIfExists( tempPath(path) );
+			} finally {
+				if( orphan == null ) {
+					lockChannel.close();
+					Files.deleteIfExists( lockPath(path) );
+				}
+			}
+		}
+		return null;
+	}
+
+	private static long lastModified(Path path) {
+		try {
+			return Files.getLastModifiedTime(path).toMillis();
+		} catch(IOException e) {
+			return 0; // gone
+		}
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Publishes the latest state of the game, to be written with the next
+	 * checkpoint. Never blocks.
+	 */
+	public void update(Checkpoint checkpoint) {
+		latest.set(checkpoint);
+	}
+
+	/**
+	 * Deletes the checkpoint (e.g. once there is nothing left to lose.) Never
+	 * blocks; the file is deleted in the background, after any checkpoint
+	 * being written.
+	 */
+	public void clear() {
+		latest.set(null);
+		executor.execute(this::delete);
+	}
+
+	private void writeLatest() {
+		Checkpoint checkpoint = latest.getAndSet(null);
+		if( checkpoint == null )
+			return;
+		try {
+			journal.flush();
+			ByteBuffer buffer = ByteBuffer.allocate( checkpoint.getEncodedSize() );
+			checkpoint.write(buffer);
+			buffer.flip();
+			try( FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) ) {
+				while( buffer.hasRemaining() )
+					channel.write(buffer);
+				channel.force(false);
+			}
+			Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void delete() {
+		try {
+			Files.deleteIfExists(path);
+			Files.deleteIfExists(tempPath);
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return The checkpoint saved in <code>path</code>, or <code>null</code>
+	 *         if there is none.
+	 */
+	public static Checkpoint read(Path path) throws IOException {
+		if( !Files.exists(path) )
+			return null;
+		return Checkpoint.read( ByteBuffer.wrap(Files.readAllBytes(path)) );
+	}
+
+	/**
+	 * Stops checkpointing, and deletes the checkpoint, and then its lock; for
+	 * when the game is closed normally. The files are deleted by the
+	 * background thread, after any checkpoint being written, and this waits
+	 * for that for at most {@link #CLOSE_TIMEOUT_MILLIS}, so it can be called
+	 * on the EDT. If the JVM exits before then, the checkpoint is left to be
+	 * offered by the next game, as after a crash.
+	 */
+	public void close() {
+		if( executor.isShutdown() )
+			return;
+		latest.set(null);
+		executor.execute(this::deleteAndUnlock);
+		executor.shutdown();
+		try {
+			executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void deleteAndUnlock() {
+		try {
+			try {
+				Files.deleteIfExists(path);
+				Files.deleteIfExists(tempPath);
+			} finally {
+				lockChannel.close();
+				Files.deleteIfExists( lockPath(path) );
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
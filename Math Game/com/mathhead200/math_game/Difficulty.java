@@ -0,0 +1,19 @@
+package com.mathhead200.math_game;
+
+public enum Difficulty {
+	EASY("Easy"),
+	MEDIUM("Medium"),
+	HARD("Hard"),
+	VERY_HARD("Very Hard"),
+	ULTIMATE("Ultimate");
+	
+	private final String displayName;
+	
+	private Difficulty(String displayName) {
+		this.displayName = displayName;
+	}
+	
+	public String toString() {
+		return displayName;
+	}
+}
@@ -0,0 +1,225 @@
+package com.mathhead200.math_game;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live metrics of the game engine, exposed over JMX as
+ * {@value #OBJECT_NAME} so they can be watched with e.g. JConsole.
+ *
+ * Counters are {@link LongAdder}s, and everything else is a volatile write,
+ * so recording a metric on the EDT (or in many concurrent sessions) costs
+ * next to nothing; all of the arithmetic is done when an attribute is read.
+ *
+ * The rates are over the last {@value #RATE_WINDOW_SECONDS} seconds, from
+ * totals sampled once a second by a daemon thread (started by
+ * {@link #register()}), so reading an attribute has no side effects, and
+ * any number of JMX clients see the same rates.
+ *
+ * Problems and answers are recorded by the games being played (i.e. by
+ * {@link MathGameGUI}, and by {@link GameServer} for its sessions), not by
+ * {@link ProblemSet}, so problem sets used for anything else in the same JVM
+ * (e.g. calibration or replays) are not counted.
+ */
+public class GameMetrics implements GameMetricsMBean {
+	
+	public static final String OBJECT_NAME = "com.mathhead200.math_game:type=GameMetrics";
+	public static final int RATE_WINDOW_SECONDS = 10;
+	
+	private static final GameMetrics INSTANCE = new GameMetrics();
+	
+	private final LongAdder problemsGenerated = new LongAdder();
+	private final LongAdder correctAnswers = new LongAdder();
+	private final LongAdder incorrectAnswers = new LongAdder();
+	private final LongAdder chalkboardPaintNanos = new LongAdder();
+	private final LongAdder chalkboardPaints = new LongAdder();
+	private final LongAdder progressBarPaintNanos = new LongAdder();
+	private final LongAdder progressBarPaints = new LongAdder();
+	private volatile int points = 0;
+	private volatile int goal = 0;
+	private volatile SessionJournal journal = null;
+	private volatile long timeToFirstFrame = 0; // ms
+	
+	// a ring of the sampler's last samples of the totals; guarded by this
+	private final long[] sampleTimes = new long[RATE_WINDOW_SECONDS + 1];
+	private final long[] problemsGeneratedSamples = new long[RATE_WINDOW_SECONDS + 1];
+	private final long[] answersSamples = new long[RATE_WINDOW_SECONDS + 1];
+	private long samples = 0;
+	private ScheduledExecutorService sampler = null;
+	
+	private GameMetrics() {
+	}
+	
+	public static GameMetrics getInstance() {
+		return INSTANCE;
+	}
+	
+	/**
+	 * Registers the metrics with the platform MBean server, and starts
+	 * sampling the rates, if they have not been already.
+	 */
+	public synchronized void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean( this, new ObjectName(OBJECT_NAME) );
+		} catch(InstanceAlreadyExistsException e) {
+			// already registered
+		}
+		if( sampler == null ) {
+			sampler = Executors.newSingleThreadScheduledExecutor( runnable -> {
+				Thread thread = new Thread(runnable, "GameMetrics sampler");
+				thread.setDaemon(true);
+				return thread;
+			});
+			sampler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+		}
+	}
+	
+	private synchronized void sample() {
+		int i = (int) (samples++ % sampleTimes.length);
+		sampleTimes[i] = System.nanoTime();
+		problemsGeneratedSamples[i] = problemsGenerated.sum();
+		answersSamples[i] = correctAnswers.sum() + incorrectAnswers.sum();
+	}
+	
+	/**
+	 * @return The rate of the sampled total over the samples in the ring.
+	 */
+	private double rate(long[] totals) {
+		if( samples < 2 )
+			return 0;
+		int newest = (int) ((samples - 1) % sampleTimes.length);
+		int oldest = samples > sampleTimes.length ? (int) (samples % sampleTimes.length) : 0;
+		return perSecond( totals[newest] - totals[oldest], sampleTimes[newest] - sampleTimes[oldest] );
+	}
+	
+	void problemGenerated() {
+		problemsGenerated.increment();
+	}
+	
+	void answered(boolean correct) {
+		(correct ? correctAnswers : incorrectAnswers).increment();
+	}
+	
+	/**
+	 * Records several problems and answers at once (e.g. a whole command of a
+	 * {@link GameServer} session.)
+	 */
+	void recorded(int problems, int correct, int incorrect) {
+		if( problems != 0 )
+			problemsGenerated.add(problems);
+		if( correct != 0 )
+			correctAnswers.add(correct);
+		if( incorrect != 0 )
+			incorrectAnswers.add(incorrect);
+	}
+	
+	void chalkboardPainted(long nanos) {
+		chalkboardPaintNanos.add(nanos);
+		chalkboardPaints.increment();
+	}
+	
+	void progressBarPainted(long nanos) {
+		progressBarPaintNanos.add(nanos);
+		progressBarPaints.increment();
+	}
+	
+	/**
+	 * Publishes the progress of the game being played.
+	 */
+	void progress(int points, int goal) {
+		this.points = points;
+		this.goal = goal;
+	}
+	
+	/**
+	 * Publishes the log of the game being played.
+	 */
+	void setJournal(SessionJournal journal) {
+		this.journal = journal;
+	}
+	
+	/**
+	 * Publishes how long the GUI took to show its first frame, in
+	 * milliseconds since the JVM started.
+	 */
+	void firstFrame(long millis) {
+		this.timeToFirstFrame = millis;
+	}
+	
+	public long getProblemsGenerated() {
+		return problemsGenerated.sum();
+	}
+	
+	public synchronized double getProblemsGeneratedPerSecond() {
+		return rate(problemsGeneratedSamples);
+	}
+	
+	public long getCorrectAnswers() {
+		return correctAnswers.sum();
+	}
+	
+	public long getIncorrectAnswers() {
+		return incorrectAnswers.sum();
+	}
+	
+	public synchronized double getAnswersPerSecond() {
+		return rate(answersSamples);
+	}
+	
+	private static double perSecond(long count, long nanos) {
+		return nanos <= 0 ? 0 : count * 1e9 / nanos;
+	}
+	
+	public double getCorrectRatio() {
+		long correct = correctAnswers.sum();
+		long total = correct + incorrectAnswers.sum();
+		return total == 0 ? 0 : (double) correct / total;
+	}
+	
+	public int getPoints() {
+		return points;
+	}
+	
+	public int getGoal() {
+		return goal;
+	}
+	
+	public long getLogLength() {
+		SessionJournal journal = this.journal;
+		return journal == null ? 0 : journal.getLength();
+	}
+	
+	public double getAverageChalkboardPaintMillis() {
+		long count = chalkboardPaints.sum();
+		return count == 0 ? 0 : chalkboardPaintNanos.sum() / 1e6 / count;
+	}
+	
+	public double getAverageProgressBarPaintMillis() {
+		long count = progressBarPaints.sum();
+		return count == 0 ? 0 : progressBarPaintNanos.sum() / 1e6 / count;
+	}
+	
+	public long getTimeToFirstFrameMillis() {
+		return timeToFirstFrame;
+	}
+	
+	public synchronized void reset() {
+		problemsGenerated.reset();
+		correctAnswers.reset();
+		incorrectAnswers.reset();
+		chalkboardPaintNanos.reset();
+		chalkboardPaints.reset();
+		progressBarPaintNanos.reset();
+		progressBarPaints.reset();
+		samples = 0; // the rates start again from the next sample
+	}
+}
@@ -0,0 +1,54 @@
+package com.mathhead200.math_game;
+
+/**
+ * The management interface of {@link GameMetrics}.
+ */
+public interface GameMetricsMBean {
+	
+	public long getProblemsGenerated();
+	
+	/**
+	 * @return Problems generated per second over the last
+	 *         {@value GameMetrics#RATE_WINDOW_SECONDS} seconds.
+	 */
+	public double getProblemsGeneratedPerSecond();
+	
+	public long getCorrectAnswers();
+	
+	public long getIncorrectAnswers();
+	
+	/**
+	 * @return Answers per second over the last
+	 *         {@value GameMetrics#RATE_WINDOW_SECONDS} seconds.
+	 */
+	public double getAnswersPerSecond();
+	
+	/**
+	 * @return The fraction of answers which were correct.
+	 */
+	public double getCorrectRatio();
+	
+	public int getPoints();
+	
+	public int getGoal();
+	
+	/**
+	 * @return The number of chars written to the game log.
+	 */
+	public long getLogLength();
+	
+	public double getAverageChalkboardPaintMillis();
+	
+	public double getAverageProgressBarPaintMillis();
+	
+	/**
+	 * @return How long the GUI took to show its first frame, in milliseconds
+	 *         since the JVM started, or 0 if it has not been shown.
+	 */
+	public long getTimeToFirstFrameMillis();
+	
+	/**
+	 * Zeros the counters and paint times.
+	 */
+	public void reset();
+}
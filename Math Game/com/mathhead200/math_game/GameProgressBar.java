@@ -1,9 +1,12 @@
 package com.mathhead200.math_game;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
+import java.awt.Composite;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Insets;
-import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JComponent;
 
@@ -15,6 +18,10 @@ public class GameProgressBar extends JComponent {
 	private int value = 0;
 	private int prevValue = 0;
 	
+	private final Insets paintInsets = new Insets(0, 0, 0, 0);
+	private BufferedImage buffer = null; // the bar as last drawn, inside the insets
+	private Graphics2D bufferGraphics = null;
+	
 	private Color incForeground = null; // foreground color to use when an increase in value has occurred
 	private Color decForeground = null; // foreground color to use when a decrease in value has occurred
 	
@@ -46,6 +53,7 @@ public class GameProgressBar extends JComponent {
 		if( min >= max )
 			throw new IllegalArgumentException("min must be less then max: " + min);
 		this.min = min;
+		invalidateBuffer();
 		repaint();
 	}
 
@@ -57,6 +65,7 @@ public class GameProgressBar extends JComponent {
 		if( min >= max )
 			throw new IllegalArgumentException("max must be greater then min: " + max);
 		this.max = max;
+		invalidateBuffer();
 		repaint();
 	}
 
@@ -65,6 +74,7 @@ public class GameProgressBar extends JComponent {
 			throw new IllegalArgumentException("min must be less then max: " + min + ", " + max);
 		this.min = min;
 		this.max = max;
+		invalidateBuffer();
 	}
 	
 	public int getValue() {
@@ -72,11 +82,51 @@ public class GameProgressBar extends JComponent {
 	}
 	
 	public void setValue(int value) {
+		int oldPrevValue = this.prevValue;
 		this.prevValue = this.value;
 		this.value = value < min ? min : value > max ? max : value;
+		// only the old and new highlighted bands change
+		updateBand( Math.min(oldPrevValue, Math.min(this.prevValue, this.value)), Math.max(oldPrevValue, Math.max(this.prevValue, this.value)) );
+	}
+	
+	/**
+	 * Sets the min, max and value all at once, with a single repaint. Unlike
+	 * {@link #setValue(int)}, this does not highlight the change in value.
+	 */
+	public void reset(int min, int max, int value) {
+		if( min >= max )
+			throw new IllegalArgumentException("min must be less then max: " + min + ", " + max);
+		this.min = min;
+		this.max = max;
+		this.value = value < min ? min : value > max ? max : value;
+		this.prevValue = this.value;
+		invalidateBuffer();
 		repaint();
 	}
 	
+	/**
+	 * Redraws the horizontal band of the bar between the two values in the
+	 * offscreen buffer, and repaints just that band.
+	 */
+	private void updateBand(int lowValue, int highValue) {
+		Insets insets = getInsets(paintInsets);
+		int height = getHeight() - insets.top - insets.bottom;
+		int yLow = height - (int) Math.floor((double) lowValue / (max - min) * height) + 1;
+		int yHigh = height - (int) Math.ceil((double) highValue / (max - min) * height) - 1;
+		if( buffer != null ) {
+			bufferGraphics.setClip(0, yHigh, buffer.getWidth(), yLow - yHigh);
+			drawBar(bufferGraphics, buffer.getWidth(), buffer.getHeight());
+		}
+		repaint(insets.left, insets.top + yHigh, getWidth() - insets.left - insets.right, yLow - yHigh);
+	}
+	
+	private void invalidateBuffer() {
+		if( bufferGraphics != null )
+			bufferGraphics.dispose();
+		buffer = null;
+		bufferGraphics = null;
+	}
+	
 	public void addValue(int dv) {
 		setValue( getValue() + dv );
 	}
@@ -91,6 +141,7 @@ public class GameProgressBar extends JComponent {
 
 	public void setIncForeground(Color incForeground) {
 		this.incForeground = incForeground;
+		invalidateBuffer();
 		repaint();
 	}
 
@@ -100,36 +151,75 @@ public class GameProgressBar extends JComponent {
 
 	public void setDecForeground(Color decForeground) {
 		this.decForeground = decForeground;
+		invalidateBuffer();
 		repaint();
 	}
 
-	public void paintComponent(Graphics graphics) {
-		Graphics g = graphics.create();
-		
-		Rectangle rect = new Rectangle( 0, 0, getWidth(), getHeight() );
-		Insets insets = getInsets();
-		rect.x += insets.left;
-		rect.y += insets.top;
-		rect.width -= insets.left + insets.right;
-		rect.height -= insets.top + insets.bottom;
+	public void paintComponent(Graphics g) {
+		long start = System.nanoTime();
+		paintBar(g);
+		GameMetrics.getInstance().progressBarPainted( System.nanoTime() - start );
+	}
+	
+	private void paintBar(Graphics g) {
+		Insets insets = getInsets(paintInsets);
+		int width = getWidth() - insets.left - insets.right;
+		int height = getHeight() - insets.top - insets.bottom;
+		if( width <= 0 || height <= 0 )
+			return;
+		if( buffer == null || buffer.getWidth() != width || buffer.getHeight() != height ) {
+			invalidateBuffer();
+			buffer = new BufferedImage(width, height, isOpaque() ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+			bufferGraphics = buffer.createGraphics();
+			drawBar(bufferGraphics, width, height);
+		}
+		g.drawImage(buffer, insets.left, insets.top, null);
+	}
+	
+	/**
+	 * Draws the whole bar (limited by the clip) into a <code>width</code> by
+	 * <code>height</code> area at the origin.
+	 */
+	private void drawBar(Graphics2D g, int width, int height) {
+		if( !isOpaque() ) {
+			Composite composite = g.getComposite();
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, width, height);
+			g.setComposite(composite);
+		}
 		
-		int heightPrev = (int) Math.round((double) prevValue / (max - min) * rect.height);	
+		int heightPrev = (int) Math.round((double) prevValue / (max - min) * height);	
 		g.setColor( getForeground() );
-		g.fillRect(rect.x, rect.y + rect.height - heightPrev, rect.width, heightPrev);
+		g.fillRect(0, height - heightPrev, width, heightPrev);
 		
 		if( isOpaque() ) {
 			g.setColor( getBackground() );
-			g.fillRect(rect.x, rect.y, rect.width, rect.height - heightPrev);
+			g.fillRect(0, 0, width, height - heightPrev);
 		}
 		
 		if( value > prevValue ) {
-			int heightChange = (int) Math.round((double) (value - prevValue) / (max - min) * rect.height);
+			int heightChange = (int) Math.round((double) (value - prevValue) / (max - min) * height);
 			g.setColor( incForeground != null ? incForeground : getForeground().brighter() );
-			g.fillRect(rect.x, rect.y + rect.height - heightPrev - heightChange, rect.width, heightChange);
+			g.fillRect(0, height - heightPrev - heightChange, width, heightChange);
 		} else {
-			int heightChange = (int) ((double) (prevValue - value) / (max - min) * rect.height);
+			int heightChange = (int) ((double) (prevValue - value) / (max - min) * height);
 			g.setColor( decForeground != null ? decForeground : getForeground().darker() );
-			g.fillRect(rect.x, rect.y + rect.height - heightPrev, rect.width, heightChange);
+			g.fillRect(0, height - heightPrev, width, heightChange);
 		}
 	}
+	
+	public void setForeground(Color foreground) {
+		super.setForeground(foreground);
+		invalidateBuffer();
+	}
+	
+	public void setBackground(Color background) {
+		super.setBackground(background);
+		invalidateBuffer();
+	}
+	
+	public void setOpaque(boolean isOpaque) {
+		super.setOpaque(isOpaque);
+		invalidateBuffer();
+	}
 }
@@ -0,0 +1,137 @@
+package com.mathhead200.math_game;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+
+/**
+ * Hosts many independent, headless {@link GameSession}s from one JVM, one per
+ * connection, using the line based protocol described in {@link GameSession}.
+ *
+ * Each session runs on its own thread (a virtual thread when the JVM supports
+ * them, otherwise a pooled platform thread), and is confined to that thread,
+ * so sessions scale across cores without sharing any state or locks. (The
+ * only thing they share is the {@link Leaderboard}, which is contention free.)
+ *
+ * Usage: <code>java com.mathhead200.math_game.GameServer [port]</code>
+ * (listens on the loopback interface only.)
+ */
+public class GameServer implements Closeable {
+
+	public static final int DEFAULT_PORT = 4200;
+
+	private final ServerSocket serverSocket;
+	private final ExecutorService executor = newSessionExecutor();
+	private final Leaderboard leaderboard = new Leaderboard();
+	private final AtomicLong sessionCount = new AtomicLong();
+
+	public GameServer(InetSocketAddress address) throws IOException {
+		serverSocket = new ServerSocket();
+		serverSocket.bind(address, 1024);
+	}
+
+	public GameServer(int port) throws IOException {
+		this( new InetSocketAddress(InetAddress.getLoopbackAddress(), port) );
+	}
+
+	private static ExecutorService newSessionExecutor() {
+		try {
+			// Java 21+
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch(ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool( r -> {
+				Thread thread = new Thread(r, "GameSession");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	public Leaderboard getLeaderboard() {
+		return leaderboard;
+	}
+	
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Accepts connections until this server is closed.
+	 */
+	public void serve() throws IOException {
+		try {
+			while( true ) {
+				Socket socket = serverSocket.accept();
+				executor.execute( () -> serve(socket) );
+			}
+		} catch(SocketException e) {
+			if( !serverSocket.isClosed() )
+				throw e;
+		}
+	}
+
+	private void serve(Socket socket) {
+		GameSession session = new GameSession( leaderboard, "student" + sessionCount.incrementAndGet() );
+		try( Socket s = socket;
+		     BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+		     Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)) )
+		{
+			s.setTcpNoDelay(true);
+			String line;
+			while( !session.isClosed() && (line = in.readLine()) != null ) {
+				if( line.trim().isEmpty() )
+					continue;
+				ProblemSet problemSet = session.getProblemSet();
+				int problems = problemSet != null ? problemSet.getCurrentProblemNumber() : 0;
+				int correct = problemSet != null ? problemSet.getCorrectCount() : 0;
+				int incorrect = problemSet != null ? problemSet.getIncorrectCount() : 0;
+				String response = session.handle(line);
+				if( session.getProblemSet() != problemSet ) { // a new level was started
+					problemSet = session.getProblemSet();
+					problems = correct = incorrect = 0;
+				}
+				if( problemSet != null )
+					GameMetrics.getInstance().recorded( problemSet.getCurrentProblemNumber() - problems,
+							problemSet.getCorrectCount() - correct, problemSet.getIncorrectCount() - incorrect );
+				out.write(response);
+				out.write('\n');
+				out.flush();
+			}
+		} catch(IOException e) {
+			// the student disconnected; their session just ends
+		}
+	}
+
+	public void close() throws IOException {
+		serverSocket.close();
+		executor.shutdownNow();
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		try {
+			GameMetrics.getInstance().register();
+		} catch(JMException e) {
+			e.printStackTrace();
+		}
+		try( GameServer server = new GameServer(port) ) {
+			System.out.println("Math Game server listening on " + server.serverSocket.getLocalSocketAddress());
+			server.serve();
+		}
+	}
+}
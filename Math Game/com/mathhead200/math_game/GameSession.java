@@ -0,0 +1,201 @@
+package com.mathhead200.math_game;
+
+import java.util.Locale;
+
+/**
+ * A single headless game: one student playing one {@link ProblemSet} at a
+ * time, driven by the line based commands of {@link GameServer}.
+ *
+ * A session is not thread safe; it is meant to be confined to the one thread
+ * serving its student, so sessions never share any state or locks.
+ *
+ * <pre>
+ * START &lt;level&gt; &lt;difficulty&gt;  -&gt; OK &lt;title&gt;
+ * NEXT                        -&gt; PROBLEM &lt;number&gt; &lt;operand1&gt; &lt;operator&gt; &lt;operand2&gt;
+ * GUESS &lt;answer&gt;              -&gt; CORRECT|INCORRECT &lt;points&gt; &lt;goal&gt; [COMPLETED]
+ * SCORE                       -&gt; SCORE &lt;points&gt; &lt;goal&gt; &lt;correct&gt; &lt;incorrect&gt;
+ * NAME &lt;player&gt;               -&gt; OK &lt;player&gt;
+ * LEADERBOARD                 -&gt; LEADERBOARD [&lt;player&gt; &lt;points&gt; &lt;accuracy&gt;%,]...
+ * FASTEST                     -&gt; FASTEST [&lt;player&gt; &lt;minutes&gt;:&lt;seconds&gt;,]...
+ * QUIT                        -&gt; BYE
+ * </pre>
+ *
+ * Levels and difficulties are named as in {@link Level} and
+ * {@link Difficulty} (e.g. <code>START level_2 very_hard</code>), and
+ * operators are sent as <code>+ - * /</code>. Any error is answered with
+ * <code>ERROR &lt;message&gt;</code>.
+ *
+ * If the session has a {@link Leaderboard}, each answer is scored on it under
+ * the session's player name, and completed levels are ranked by time.
+ * <code>FASTEST</code> ranks the level most recently started.
+ */
+public class GameSession {
+
+	private final Leaderboard leaderboard;
+	private String playerName;
+	private Leaderboard.Player player = null; // registered on the first answer, so renaming first leaves no trace
+	private ProblemSet problemSet = null;
+	private String title = null;
+	private long timestamp;
+	private boolean closed = false;
+	
+	/**
+	 * @param leaderboard The leaderboard to score this session on, or
+	 *                    <code>null</code> for none.
+	 * @param player The initial name of this session's player.
+	 */
+	public GameSession(Leaderboard leaderboard, String player) {
+		this.leaderboard = leaderboard;
+		this.playerName = player;
+	}
+	
+	public GameSession() {
+		this(null, null);
+	}
+	
+	public void setPlayer(String player) {
+		if( leaderboard == null )
+			throw new IllegalStateException("this session has no leaderboard");
+		this.playerName = player;
+		this.player = null;
+	}
+
+	public ProblemSet getProblemSet() {
+		return problemSet;
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public void start(Level level, Difficulty difficulty) {
+		problemSet = level.newProblemSet(difficulty);
+		title = level.getTitle(difficulty);
+		timestamp = System.nanoTime();
+	}
+
+	/**
+	 * @return The current problem, or the next one if the current problem has
+	 *         already been answered.
+	 */
+	public MathProblem next() {
+		if( problemSet == null )
+			throw new IllegalStateException("no level has been started");
+		MathProblem problem = problemSet.getCurrentProblem();
+		return problem != null ? problem : problemSet.next();
+	}
+
+	/**
+	 * Scores the current problem.
+	 *
+	 * @return <code>true</code> if <code>answer</code> was correct.
+	 */
+	public boolean guess(String answer) {
+		if( problemSet == null )
+			throw new IllegalStateException("no level has been started");
+		MathProblem problem = problemSet.getCurrentProblem();
+		if( problem == null )
+			throw new IllegalStateException("no problem has been given");
+		int points = problemSet.getPoints();
+		boolean correct = answer.equals( Integer.toString(problem.result) );
+		if( correct )
+			problemSet.correct();
+		else
+			problemSet.incorrect();
+		
+		if( leaderboard != null ) {
+			if( player == null )
+				player = leaderboard.register(playerName);
+			if( correct )
+				player.correct( problemSet.getPoints() - points );
+			else
+				player.incorrect( problemSet.getPoints() - points );
+			if( !problemSet.hasNext() )
+				leaderboard.completed( player, title, (System.nanoTime() - timestamp) / 1_000_000 );
+		}
+		return correct;
+	}
+
+	private static char toProtocolOperator(char operator) {
+		return operator == MathProblem.TIMES ? '*' : operator == MathProblem.DIVIDE ? '/' : operator;
+	}
+
+	/**
+	 * Executes one command line.
+	 *
+	 * @return The response line (without a line terminator.)
+	 */
+	public String handle(String line) {
+		String[] args = line.trim().split("\\s+");
+		String command = args[0].toUpperCase(Locale.ROOT);
+		try {
+			if( command.equals("START") ) {
+
+				if( args.length != 3 )
+					return "ERROR usage: START <level> <difficulty>";
+				Level level;
+				Difficulty difficulty;
+				try {
+					level = Level.valueOf( args[1].toUpperCase(Locale.ROOT) );
+					difficulty = Difficulty.valueOf( args[2].toUpperCase(Locale.ROOT) );
+				} catch(IllegalArgumentException e) {
+					return "ERROR unrecognized level or difficulty: " + args[1] + " " + args[2];
+				}
+				start(level, difficulty);
+				return "OK " + level.getTitle(difficulty);
+
+			} else if( command.equals("NEXT") ) {
+
+				MathProblem problem = next();
+				return "PROBLEM " + problemSet.getCurrentProblemNumber() + " " + problem.operand1 + " "
+						+ toProtocolOperator(problem.operator) + " " + problem.operand2;
+
+			} else if( command.equals("GUESS") ) {
+
+				if( args.length != 2 )
+					return "ERROR usage: GUESS <answer>";
+				boolean correct = guess(args[1]);
+				return (correct ? "CORRECT " : "INCORRECT ") + problemSet.getPoints() + " " + problemSet.getGoal()
+						+ (problemSet.hasNext() ? "" : " COMPLETED");
+
+			} else if( command.equals("SCORE") ) {
+
+				if( problemSet == null )
+					return "ERROR no level has been started";
+				return "SCORE " + problemSet.getPoints() + " " + problemSet.getGoal() + " "
+						+ problemSet.getCorrectCount() + " " + problemSet.getIncorrectCount();
+
+			} else if( command.equals("NAME") ) {
+				
+				if( args.length != 2 )
+					return "ERROR usage: NAME <player>";
+				setPlayer(args[1]);
+				return "OK " + args[1];
+				
+			} else if( command.equals("LEADERBOARD") || command.equals("FASTEST") ) {
+				
+				if( leaderboard == null )
+					return "ERROR this session has no leaderboard";
+				if( command.equals("FASTEST") && title == null )
+					return "ERROR no level has been started";
+				StringBuilder response = new StringBuilder(command);
+				String separator = " ";
+				for( Object place : command.equals("LEADERBOARD") ? leaderboard.getTopPoints() : leaderboard.getFastestTimes(title) ) {
+					response.append(separator).append(place);
+					separator = ", ";
+				}
+				return response.toString();
+				
+			} else if( command.equals("QUIT") ) {
+
+				closed = true;
+				return "BYE";
+
+			} else {
+				return "ERROR unrecognized command: " + args[0];
+			}
+		} catch(RuntimeException e) { // IllegalArgumentException, IllegalStateException, NoSuchElementException
+			return "ERROR " + e.getMessage();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.mathhead200.math_game;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * A sheet of pre-rasterized glyphs for one font and color, so that text can be
+ * drawn one image blit per character instead of with
+ * {@link Graphics#drawString(String, int, int)}.
+ *
+ * The sheet is rendered at the device scale it is drawn at (e.g. 2x on a HiDPI
+ * screen), and each glyph is padded out to whole user space pixels, so blits
+ * land on exactly the same pixels <code>drawString</code> would have.
+ */
+public class GlyphAtlas {
+
+	/** The characters rasterized into the sheet; any others are drawn with drawString(...). */
+	public static final String GLYPHS = "0123456789"
+			+ "+-*/=" + MathProblem.TIMES + MathProblem.DIVIDE
+			+ ":!?.,' "
+			+ "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+			+ "abcdefghijklmnopqrstuvwxyz";
+
+	private static final int MAX_SHEET_WIDTH = 2048;
+
+	private final Font font;
+	private final Color color;
+	private final double scaleX;
+	private final double scaleY;
+	private final Image sheet;
+	private int maxAscent = 0; // over every glyph in the sheet, in user space pixels
+	private int maxDescent = 0;
+
+	// indexed by char; cells are in device pixels, bounds (relative to the glyph origin) in user space pixels
+	private final boolean[] present = new boolean[256];
+	private final int[] cellX = new int[256];
+	private final int[] cellY = new int[256];
+	private final int[] cellWidth = new int[256];
+	private final int[] cellHeight = new int[256];
+	private final int[] x0 = new int[256];
+	private final int[] y0 = new int[256];
+	private final int[] x1 = new int[256];
+	private final int[] y1 = new int[256];
+
+	/**
+	 * @param config The configuration to create a compatible (accelerated)
+	 *               sheet for, or <code>null</code>.
+	 */
+	public GlyphAtlas(Font font, Color color, GraphicsConfiguration config) {
+		this.font = font;
+		this.color = color;
+		AffineTransform deviceTransform = config != null ? config.getDefaultTransform() : new AffineTransform();
+		this.scaleX = deviceTransform.getScaleX();
+		this.scaleY = deviceTransform.getScaleY();
+
+		FontRenderContext frc = new FontRenderContext( AffineTransform.getScaleInstance(scaleX, scaleY), false, false );
+		int x = 0, y = 0, rowHeight = 0, sheetWidth = 1;
+		for( int i = 0; i < GLYPHS.length(); i++ ) {
+			char c = GLYPHS.charAt(i);
+			if( !font.canDisplay(c) )
+				continue;
+			Rectangle bounds = font.createGlyphVector( frc, new char[] {c} ).getPixelBounds(frc, 0, 0);
+			present[c] = true;
+			if( bounds.isEmpty() )
+				continue;
+			x0[c] = (int) Math.floor(bounds.x / scaleX);
+			y0[c] = (int) Math.floor(bounds.y / scaleY);
+			x1[c] = (int) Math.ceil((bounds.x + bounds.width) / scaleX);
+			y1[c] = (int) Math.ceil((bounds.y + bounds.height) / scaleY);
+			maxAscent = Math.max(maxAscent, -y0[c]);
+			maxDescent = Math.max(maxDescent, y1[c]);
+			cellWidth[c] = (int) Math.ceil((x1[c] - x0[c]) * scaleX);
+			cellHeight[c] = (int) Math.ceil((y1[c] - y0[c]) * scaleY);
+			if( x + cellWidth[c] > MAX_SHEET_WIDTH ) {
+				x = 0;
+				y += rowHeight + 1;
+				rowHeight = 0;
+			}
+			cellX[c] = x;
+			cellY[c] = y;
+			x += cellWidth[c] + 1;
+			rowHeight = Math.max(rowHeight, cellHeight[c]);
+			sheetWidth = Math.max(sheetWidth, x);
+		}
+		int sheetHeight = Math.max(1, y + rowHeight);
+
+		sheet = config != null
+				? config.createCompatibleImage(sheetWidth, sheetHeight, Transparency.TRANSLUCENT)
+				: new BufferedImage(sheetWidth, sheetHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g = (Graphics2D) sheet.getGraphics();
+		g.setFont(font);
+		g.setColor(color);
+		for( int i = 0; i < GLYPHS.length(); i++ ) {
+			char c = GLYPHS.charAt(i);
+			if( cellWidth[c] == 0 )
+				continue;
+			g.setTransform( AffineTransform.getTranslateInstance(cellX[c] - x0[c] * scaleX, cellY[c] - y0[c] * scaleY) );
+			g.scale(scaleX, scaleY);
+			GlyphVector glyph = font.createGlyphVector( g.getFontRenderContext(), new char[] {c} );
+			g.drawGlyphVector(glyph, 0, 0);
+		}
+		g.dispose();
+	}
+
+	/**
+	 * @return <code>true</code> if this atlas can be used to draw with the
+	 *         given font and color.
+	 */
+	public boolean matches(Font font, Color color) {
+		return this.font.equals(font) && this.color.equals(color);
+	}
+
+	/**
+	 * @return How far above the baseline any glyph in the sheet reaches.
+	 */
+	public int getMaxAscent() {
+		return maxAscent;
+	}
+	
+	/**
+	 * @return How far below the baseline any glyph in the sheet reaches.
+	 */
+	public int getMaxDescent() {
+		return maxDescent;
+	}
+	
+	/**
+	 * Draws a character with its baseline origin at <code>(x, y)</code>; i.e.
+	 * like <code>g.drawString(Character.toString(c), x, y)</code>.
+	 */
+	public void draw(Graphics g, char c, int x, int y) {
+		if( c < present.length && present[c] ) {
+			if( cellWidth[c] != 0 )
+				g.drawImage( sheet, x + x0[c], y + y0[c], x + x1[c], y + y1[c],
+						cellX[c], cellY[c], cellX[c] + cellWidth[c], cellY[c] + cellHeight[c], null );
+		} else {
+			Font prevFont = g.getFont();
+			Color prevColor = g.getColor();
+			g.setFont(font);
+			g.setColor(color);
+			g.drawString( Character.toString(c), x, y );
+			g.setFont(prevFont);
+			g.setColor(prevColor);
+		}
+	}
+}
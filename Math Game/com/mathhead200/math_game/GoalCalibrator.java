@@ -0,0 +1,307 @@
+package com.mathhead200.math_game;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Plays synthetic students through each {@link Level} and {@link Difficulty}
+ * to measure how long the levels really are, and proposes goals and losses
+ * from what the problem sets really generate (rather than the closed form
+ * estimate {@link ProblemSet#getApproxPointsPer()}.)
+ *
+ * A student is modeled by their accuracy (the chance they answer a problem
+ * correctly) and speed (how long they take per digit of the answer, with log
+ * normal noise.) Games are simulated in parallel, by a fork/join task per
+ * range of games; each task has its own {@link ProblemSet#split() split} of
+ * the problem set and its own student generator, so nothing is shared while
+ * simulating, and the same seed always gives the same report.
+ *
+ * The proposed loss is {@link Level#getFailMultiplier(Difficulty)} median
+ * problems' worth of points, rounded as {@link ProblemSet} rounds it. The
+ * proposed goal is the one at which the {@link #TARGET_STUDENT target student}
+ * takes a median of {@link Level#getApproxSize(Difficulty)} problems to
+ * finish: starting from what a perfect student scores in that many problems,
+ * the goal is scaled by the target size over the simulated median, until it
+ * settles (to 2 significant figures.)
+ *
+ * Usage: <code>java com.mathhead200.math_game.GoalCalibrator [&lt;games&gt; [&lt;seed&gt;]]</code>,
+ * where <code>games</code> is the number of games each student plays at
+ * each level and difficulty.
+ */
+public class GoalCalibrator {
+
+	public static final int DEFAULT_GAMES = 20_000;
+	/** Games are abandoned (counted as unfinished) after this many problems. */
+	public static final int MAX_PROBLEMS = 10_000;
+	private static final int GAMES_PER_TASK = 256;
+	private static final long MAX_TIME = 24 * 3_600_000_000_000L; // 1 day in ns
+	private static final double SPEED_SIGMA = 0.5; // of the log of the time per answer
+	private static final int MAX_ITERATIONS = 8; // of the proposed goal
+
+	public static class Student {
+		public final String name;
+		public final double accuracy;
+		public final double secondsPerDigit; // median
+
+		public Student(String name, double accuracy, double secondsPerDigit) {
+			if( accuracy <= 0 || accuracy > 1 )
+				throw new IllegalArgumentException("accuracy must be in (0, 1]: " + accuracy);
+			this.name = name;
+			this.accuracy = accuracy;
+			this.secondsPerDigit = secondsPerDigit;
+		}
+
+		public String toString() {
+			return String.format("%s (%.0f%%, %.1f s/digit)", name, accuracy * 100, secondsPerDigit);
+		}
+	}
+
+	public static final Student[] DEFAULT_STUDENTS = {
+		new Student("Strong", 0.95, 1.0),
+		new Student("Average", 0.85, 2.0),
+		new Student("Struggling", 0.70, 3.5)
+	};
+	/** The student the levels' sizes are intended for. */
+	public static final Student TARGET_STUDENT = DEFAULT_STUDENTS[1];
+
+	/**
+	 * The distribution of the games one student played at one level.
+	 */
+	public static class Result {
+		/** The number of problems each finished game took. */
+		public final LatencyHistogram problems = new LatencyHistogram(MAX_PROBLEMS);
+		/** How long each finished game took, in nanoseconds. */
+		public final LatencyHistogram time = new LatencyHistogram(MAX_TIME);
+		public long unfinished = 0;
+
+		void add(Result other) {
+			problems.add(other.problems);
+			time.add(other.time);
+			unfinished += other.unfinished;
+		}
+
+		public String toString() {
+			return String.format("problems p50 %4d p90 %4d p99 %4d, minutes p50 %5.1f p90 %5.1f, unfinished %5.2f%%",
+					problems.getValueAtPercentile(50), problems.getValueAtPercentile(90), problems.getValueAtPercentile(99),
+					time.getValueAtPercentile(50) / 60e9, time.getValueAtPercentile(90) / 60e9,
+					100.0 * unfinished / (problems.getTotalCount() + unfinished));
+		}
+	}
+
+	public static class Proposal {
+		public final int goal;
+		public final int loss;
+
+		Proposal(int goal, int loss) {
+			this.goal = goal;
+			this.loss = loss;
+		}
+
+		public String toString() {
+			return "goal " + goal + ", loss " + loss;
+		}
+	}
+
+	private final ForkJoinPool pool;
+
+	public GoalCalibrator(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public GoalCalibrator() {
+		this( ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Plays <code>games</code> games of <code>problemSet</code>'s level, with
+	 * the given goal and loss.
+	 */
+	public Result simulate(ProblemSet problemSet, int goal, int loss, Student student, int games, long seed) {
+		return pool.invoke( new SimulateTask(problemSet.split(), new SplittableRandom(seed), goal, loss, student, games) );
+	}
+
+	public Proposal propose(Level level, Difficulty difficulty, int games, long seed) {
+		return propose(level, difficulty, TARGET_STUDENT, games, seed);
+	}
+
+	/**
+	 * Proposes the goal at which <code>student</code> takes a median of
+	 * {@link Level#getApproxSize(Difficulty)} problems to finish, simulating
+	 * <code>games</code> games per try.
+	 */
+	public Proposal propose(Level level, Difficulty difficulty, Student student, int games, long seed) {
+		int size = level.getApproxSize(difficulty);
+		ProblemSet problemSet = level.newProblemSet(difficulty, seed);
+		LatencyHistogram[] histograms = pool.invoke( new SampleTask(problemSet.split(), size, games) );
+		int loss = Math.max( 1, ProblemSet.loss(histograms[1].getValueAtPercentile(50), level.getFailMultiplier(difficulty)) );
+		int goal = toGoal( histograms[0].getValueAtPercentile(50) );
+		for( int i = 0; i < MAX_ITERATIONS; i++ ) {
+			Result result = simulate(problemSet, goal, loss, student, games, seed);
+			// if most games were unfinished, the median is at least MAX_PROBLEMS
+			long median = 2 * result.unfinished >= result.problems.getTotalCount() + result.unfinished
+					? MAX_PROBLEMS : Math.max( 1, result.problems.getValueAtPercentile(50) );
+			int next = toGoal( Math.round((double) goal * size / median) );
+			if( next == goal )
+				break;
+			goal = next;
+		}
+		return new Proposal(goal, loss);
+	}
+
+	private static int toGoal(long points) {
+		return (int) Math.min( Integer.MAX_VALUE, Math.max(ProblemSet.MIN_GOAL, roundSignificant(points, 2)) );
+	}
+
+	private static long roundSignificant(long value, int figures) {
+		if( value <= 0 )
+			return value;
+		long place = 1;
+		for( int i = (int) Math.log10(value) + 1 - figures; i > 0; i-- )
+			place *= 10;
+		return Math.round( (double) value / place ) * place;
+	}
+
+	private static int digits(int value) {
+		int digits = 1;
+		for( value = Math.abs(value / 10); value != 0; value /= 10 )
+			digits++;
+		return digits;
+	}
+
+	private static double nextGaussian(SplittableRandom random) {
+		// Box-Muller; SplittableRandom has no nextGaussian() in Java 8
+		double u = 1 - random.nextDouble(); // in (0, 1]
+		return Math.sqrt(-2 * Math.log(u)) * Math.cos( 2 * Math.PI * random.nextDouble() );
+	}
+
+	@SuppressWarnings("serial")
+	private static class SimulateTask extends RecursiveTask<Result> {
+		private final ProblemSet problemSet;
+		private final SplittableRandom random;
+		private final int goal;
+		private final int loss;
+		private final Student student;
+		private final int games;
+
+		SimulateTask(ProblemSet problemSet, SplittableRandom random, int goal, int loss, Student student, int games) {
+			this.problemSet = problemSet;
+			this.random = random;
+			this.goal = goal;
+			this.loss = loss;
+			this.student = student;
+			this.games = games;
+		}
+
+		protected Result compute() {
+			if( games > GAMES_PER_TASK ) {
+				int half = games / 2;
+				// split before forking, so each half's games depend only on the seed
+				SimulateTask other = new SimulateTask( problemSet.split(), random.split(), goal, loss, student, games - half );
+				other.fork();
+				Result result = new SimulateTask(problemSet, random, goal, loss, student, half).compute();
+				result.add( other.join() );
+				return result;
+			}
+
+			Result result = new Result();
+			double nanosPerDigit = student.secondsPerDigit * 1e9;
+			for( int g = 0; g < games; g++ ) {
+				problemSet.restart(goal, loss);
+				int problems = 0;
+				long nanos = 0;
+				while( problemSet.hasNext() && problems < MAX_PROBLEMS ) {
+					MathProblem problem = problemSet.next();
+					problems++;
+					nanos += (long) (nanosPerDigit * digits(problem.result) * Math.exp( SPEED_SIGMA * nextGaussian(random) ));
+					if( random.nextDouble() < student.accuracy )
+						problemSet.correct();
+					else
+						problemSet.incorrect();
+				}
+				if( problemSet.hasNext() ) {
+					result.unfinished++;
+				} else {
+					result.problems.record(problems);
+					result.time.record(nanos);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Samples the points of <code>size</code> problems in a row, and of each
+	 * problem, straight from {@link ProblemSet#generate}.
+	 */
+	@SuppressWarnings("serial")
+	private static class SampleTask extends RecursiveTask<LatencyHistogram[]> {
+		private final ProblemSet problemSet;
+		private final int size;
+		private final int samples;
+
+		SampleTask(ProblemSet problemSet, int size, int samples) {
+			this.problemSet = problemSet;
+			this.size = size;
+			this.samples = samples;
+		}
+
+		protected LatencyHistogram[] compute() {
+			if( samples > GAMES_PER_TASK ) {
+				int half = samples / 2;
+				SampleTask other = new SampleTask( problemSet.split(), size, samples - half );
+				other.fork();
+				LatencyHistogram[] histograms = new SampleTask(problemSet, size, half).compute();
+				LatencyHistogram[] others = other.join();
+				histograms[0].add( others[0] );
+				histograms[1].add( others[1] );
+				return histograms;
+			}
+
+			LatencyHistogram sums = new LatencyHistogram();
+			LatencyHistogram points = new LatencyHistogram();
+			int[] operand1 = new int[size];
+			char[] operator = new char[size];
+			int[] operand2 = new int[size];
+			int[] result = new int[size];
+			int[] problemPoints = new int[size];
+			for( int s = 0; s < samples; s++ ) {
+				problemSet.generate(operand1, operator, operand2, result, problemPoints, 0, size);
+				long sum = 0;
+				for( int i = 0; i < size; i++ ) {
+					sum += problemPoints[i];
+					points.record( problemPoints[i] );
+				}
+				sums.record(sum);
+			}
+			return new LatencyHistogram[] { sums, points };
+		}
+	}
+
+	public static void main(String[] args) {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : ThreadLocalRandom.current().nextLong();
+		GoalCalibrator calibrator = new GoalCalibrator();
+		long start = System.nanoTime();
+		long played = 0;
+		System.out.printf("%,d games per student, level and difficulty (seed %d)%n%n", games, seed);
+		for( Level level : Level.values() ) {
+			for( Difficulty difficulty : Difficulty.values() ) {
+				ProblemSet problemSet = level.newProblemSet(difficulty, seed);
+				Proposal proposal = calibrator.propose(level, difficulty, games, seed);
+				System.out.printf("%s  current goal %d, loss %d; proposed %s%n",
+						level.getTitle(difficulty), problemSet.getGoal(), problemSet.getLoss(), proposal);
+				for( Student student : DEFAULT_STUDENTS ) {
+					Result current = calibrator.simulate(problemSet, problemSet.getGoal(), problemSet.getLoss(), student, games, seed);
+					Result proposed = calibrator.simulate(problemSet, proposal.goal, proposal.loss, student, games, seed);
+					System.out.printf("  %-32s current:  %s%n  %-32s proposed: %s%n", student, current, "", proposed);
+					played += 2L * games;
+				}
+				System.out.println();
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%,d games simulated in %.1f s: %,.0f games/s%n", played, seconds, played / seconds);
+	}
+}
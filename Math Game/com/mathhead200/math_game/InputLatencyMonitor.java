@@ -0,0 +1,381 @@
+package com.mathhead200.math_game;
+
+import java.awt.AWTEvent;
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * Measures how long it takes a keystroke to reach the screen, and how long
+ * events wait in the AWT event queue, so slow typing can be blamed on the
+ * right thing.
+ *
+ * A keystroke's latency runs from when the OS delivered the key event
+ * ({@link KeyEvent#getWhen()}, so including any time it waited in the event
+ * queue) to the end of the first {@link Chalkboard#paintComponent(Graphics)}
+ * after a key handler requested a repaint. Each keystroke is split into time
+ * spent waiting in the queue, in the key handler, writing the game log, and
+ * painting; keystrokes slower than the threshold are blamed on whichever of
+ * those (or GC, which may overlap any of them) took longest.
+ *
+ * EDT stalls are measured by a heartbeat thread which posts an event every
+ * {@value #HEARTBEAT_MILLIS} ms and times how long it waits to be dispatched,
+ * and by timing the dispatch of every event (after {@link #install()}).
+ *
+ * Apart from installing it, everything here runs on the EDT, and recording
+ * does not allocate.
+ */
+public class InputLatencyMonitor {
+
+	public static final long DEFAULT_THRESHOLD_NANOS = 50_000_000L; // 50 ms
+	public static final int HEARTBEAT_MILLIS = 20;
+	private static final long WINDOW_NANOS = 30_000_000_000L; // rolling distributions cover the last 30-60 seconds
+
+	/** What a slow keystroke is blamed on. */
+	public enum Cause {
+		QUEUE("waiting in the event queue"),
+		HANDLER("key handling"),
+		LOGGING("logging"),
+		PAINT("painting"),
+		GC("garbage collection"),
+		OTHER("other EDT work");
+
+		private final String description;
+
+		private Cause(String description) {
+			this.description = description;
+		}
+
+		public String toString() {
+			return description;
+		}
+	}
+
+	/**
+	 * A distribution over roughly the last {@link #WINDOW_NANOS}: two
+	 * histograms, the older of which is cleared and reused every window.
+	 */
+	private static class RollingHistogram {
+		private LatencyHistogram current = new LatencyHistogram();
+		private LatencyHistogram previous = new LatencyHistogram();
+		private final LatencyHistogram snapshot = new LatencyHistogram();
+		private long windowStart = System.nanoTime();
+
+		void record(long value, long now) {
+			if( now - windowStart >= WINDOW_NANOS ) {
+				LatencyHistogram h = previous;
+				previous = current;
+				current = h;
+				current.reset();
+				windowStart = now;
+			}
+			current.record(value);
+		}
+
+		LatencyHistogram get() {
+			snapshot.reset();
+			snapshot.add(previous);
+			snapshot.add(current);
+			return snapshot;
+		}
+	}
+
+	private final long thresholdNanos;
+	private final GarbageCollectorMXBean[] gcBeans = ManagementFactory.getGarbageCollectorMXBeans().toArray( new GarbageCollectorMXBean[0] );
+
+	// the keystroke being handled, or waiting to be painted
+	private boolean handling = false;
+	private boolean repaintRequested = false;
+	private long handlerStart;
+	private long pendingSince = 0; // 0 if no keystroke is waiting to be painted
+	private long queueNanos;
+	private long handlerNanos;
+	private long loggingStart;
+	private long loggingNanos;
+	private long gcMillisStart;
+	private int coalescedKeys = 0;
+
+	private final LatencyHistogram keyToPixel = new LatencyHistogram();
+	private final RollingHistogram recentKeyToPixel = new RollingHistogram();
+	private final LatencyHistogram queueTimes = new LatencyHistogram();
+	private final LatencyHistogram handlerTimes = new LatencyHistogram();
+	private final LatencyHistogram loggingTimes = new LatencyHistogram();
+	private final LatencyHistogram paintTimes = new LatencyHistogram();
+	private final long[] slowKeys = new long[ Cause.values().length ];
+
+	private final LatencyHistogram heartbeatDelays = new LatencyHistogram();
+	private final RollingHistogram recentHeartbeatDelays = new RollingHistogram();
+	private final LatencyHistogram dispatchTimes = new LatencyHistogram();
+	private long stalls = 0;
+	private long longDispatches = 0;
+	private long longestDispatch = 0;
+	private String longestDispatchEvent = null;
+
+	private volatile long heartbeatPostedAt = 0; // 0 if no heartbeat is in the queue
+	private final Runnable heartbeat = this::heartbeat;
+	private Thread heartbeatThread = null;
+	private DispatchTimer dispatchTimer = null;
+
+	/**
+	 * Times the dispatch of every event, once pushed onto the system event
+	 * queue.
+	 */
+	private class DispatchTimer extends EventQueue {
+		protected void dispatchEvent(AWTEvent event) {
+			long start = System.nanoTime();
+			super.dispatchEvent(event);
+			dispatched(event, System.nanoTime() - start);
+		}
+
+		void remove() {
+			pop();
+		}
+	}
+
+	public InputLatencyMonitor(long thresholdNanos) {
+		this.thresholdNanos = thresholdNanos;
+	}
+
+	public InputLatencyMonitor() {
+		this(DEFAULT_THRESHOLD_NANOS);
+	}
+
+	public long getThresholdNanos() {
+		return thresholdNanos;
+	}
+
+	/**
+	 * Starts timing event dispatch and measuring EDT stalls.
+	 */
+	public synchronized void install() {
+		if( heartbeatThread != null )
+			return;
+		dispatchTimer = new DispatchTimer();
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(dispatchTimer);
+		heartbeatThread = new Thread( () -> {
+			try {
+				while( !Thread.currentThread().isInterrupted() ) {
+					Thread.sleep(HEARTBEAT_MILLIS);
+					if( heartbeatPostedAt == 0 ) { // otherwise the last one is still waiting
+						heartbeatPostedAt = System.nanoTime();
+						EventQueue.invokeLater(heartbeat);
+					}
+				}
+			} catch(InterruptedException e) {
+				// uninstalled
+			}
+		}, "EDT heartbeat");
+		heartbeatThread.setDaemon(true);
+		heartbeatThread.start();
+	}
+
+	public synchronized void uninstall() {
+		if( heartbeatThread == null )
+			return;
+		heartbeatThread.interrupt();
+		heartbeatThread = null;
+		dispatchTimer.remove();
+		dispatchTimer = null;
+	}
+
+	private void heartbeat() {
+		long now = System.nanoTime();
+		long delay = now - heartbeatPostedAt;
+		heartbeatPostedAt = 0;
+		heartbeatDelays.record(delay);
+		recentHeartbeatDelays.record(delay, now);
+		if( delay >= thresholdNanos )
+			stalls++;
+	}
+
+	private void dispatched(AWTEvent event, long nanos) {
+		dispatchTimes.record(nanos);
+		if( nanos >= thresholdNanos ) {
+			longDispatches++;
+			if( nanos > longestDispatch ) {
+				longestDispatch = nanos;
+				longestDispatchEvent = event.getClass().getSimpleName() + " from " + event.getSource().getClass().getName();
+			}
+		}
+	}
+
+	private long gcMillis() {
+		long millis = 0;
+		for( int i = 0; i < gcBeans.length; i++ )
+			millis += Math.max( 0, gcBeans[i].getCollectionTime() );
+		return millis;
+	}
+
+	/**
+	 * Called at the start of a key handler.
+	 */
+	void keyStarted(KeyEvent e) {
+		long now = System.nanoTime();
+		handling = true;
+		repaintRequested = false;
+		handlerStart = now;
+		if( pendingSince == 0 ) {
+			queueNanos = Math.max( 0, System.currentTimeMillis() - e.getWhen() ) * 1_000_000L;
+			handlerNanos = 0;
+			loggingNanos = 0;
+			gcMillisStart = gcMillis();
+		}
+	}
+
+	/**
+	 * Called when the key handler changes something on screen.
+	 */
+	void repaintRequested() {
+		if( handling )
+			repaintRequested = true;
+	}
+
+	/**
+	 * Called at the end of a key handler.
+	 */
+	void keyFinished() {
+		if( !handling )
+			return;
+		handling = false;
+		if( !repaintRequested ) // nothing to wait for
+			return;
+		handlerNanos += System.nanoTime() - handlerStart;
+		if( pendingSince == 0 )
+			pendingSince = handlerStart;
+		else
+			coalescedKeys++; // painted along with the pending keystroke
+	}
+
+	void beginLogging() {
+		loggingStart = System.nanoTime();
+	}
+
+	void endLogging() {
+		if( handling )
+			loggingNanos += System.nanoTime() - loggingStart;
+	}
+
+	/**
+	 * Called at the end of every paint of the {@link Chalkboard}.
+	 */
+	void painted(long start, long end) {
+		if( pendingSince == 0 )
+			return;
+		long paintNanos = end - start;
+		long total = queueNanos + end - pendingSince;
+		long gcNanos = (gcMillis() - gcMillisStart) * 1_000_000L;
+		long handler = handlerNanos - loggingNanos;
+		keyToPixel.record(total);
+		recentKeyToPixel.record(total, end);
+		queueTimes.record(queueNanos);
+		handlerTimes.record(handler);
+		loggingTimes.record(loggingNanos);
+		paintTimes.record(paintNanos);
+		if( total >= thresholdNanos ) {
+			long other = total - queueNanos - handlerNanos - paintNanos;
+			Cause cause = Cause.OTHER;
+			long worst = other;
+			if( queueNanos > worst ) { cause = Cause.QUEUE; worst = queueNanos; }
+			if( handler > worst ) { cause = Cause.HANDLER; worst = handler; }
+			if( loggingNanos > worst ) { cause = Cause.LOGGING; worst = loggingNanos; }
+			if( paintNanos > worst ) { cause = Cause.PAINT; worst = paintNanos; }
+			if( gcNanos > worst ) { cause = Cause.GC; worst = gcNanos; }
+			slowKeys[ cause.ordinal() ]++;
+		}
+		pendingSince = 0;
+	}
+
+	/**
+	 * @return A one line summary of the last 30 to 60 seconds, as shown by
+	 *         the overlay.
+	 */
+	public String getSummary() {
+		LatencyHistogram keys = recentKeyToPixel.get();
+		LatencyHistogram heartbeats = recentHeartbeatDelays.get();
+		return String.format("key-to-pixel p50 %.1f ms  p99 %.1f ms  max %.1f ms   EDT wait p99 %.1f ms   stalls %d",
+				keys.getValueAtPercentile(50) / 1e6, keys.getValueAtPercentile(99) / 1e6, keys.getMax() / 1e6,
+				heartbeats.getValueAtPercentile(99) / 1e6, stalls);
+	}
+
+	/**
+	 * @return The most common cause of slow keystrokes so far, or
+	 *         <code>null</code> if there have not been any.
+	 */
+	public Cause getWorstCause() {
+		Cause worst = null;
+		for( Cause cause : Cause.values() )
+			if( slowKeys[cause.ordinal()] > 0 && (worst == null || slowKeys[cause.ordinal()] > slowKeys[worst.ordinal()]) )
+				worst = cause;
+		return worst;
+	}
+
+	/**
+	 * Writes a report of everything measured since the game started.
+	 */
+	public void export(Appendable out) throws IOException {
+		out.append( String.format("-- Input latency (threshold %.0f ms) --\n\n", thresholdNanos / 1e6) );
+		long slow = 0;
+		for( long count : slowKeys )
+			slow += count;
+		out.append( String.format("%d keystrokes, %d slow, %d painted along with an earlier keystroke\n",
+				keyToPixel.getTotalCount(), slow, coalescedKeys) );
+		for( Cause cause : Cause.values() )
+			out.append( String.format("  %5d slow because of %s\n", slowKeys[cause.ordinal()], cause) );
+		out.append( String.format("%d EDT stalls (heartbeats waiting at least the threshold), %d long event dispatches\n",
+				stalls, longDispatches) );
+		if( longestDispatchEvent != null )
+			out.append( String.format("longest dispatch: %.1f ms, %s\n", longestDispatch / 1e6, longestDispatchEvent) );
+		out.append('\n');
+		keyToPixel.export(out, "Keystroke to pixel");
+		queueTimes.export(out, "Waiting in the event queue");
+		handlerTimes.export(out, "Key handling (excluding logging)");
+		loggingTimes.export(out, "Logging");
+		paintTimes.export(out, "Painting");
+		heartbeatDelays.export(out, "EDT heartbeat delay");
+		dispatchTimes.export(out, "Event dispatch");
+	}
+
+	/**
+	 * @return A component which shows {@link #getSummary()} in its top left
+	 *         corner, e.g. for use as a glass pane. It is only updated (four
+	 *         times a second) while it is showing.
+	 */
+	@SuppressWarnings("serial")
+	public JComponent createOverlay() {
+		JComponent overlay = new JComponent() {
+			private final Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+			private final Timer timer = new Timer(250, e -> repaint(0, 0, getWidth(), 40));
+
+			public void addNotify() {
+				super.addNotify();
+				timer.start();
+			}
+
+			public void removeNotify() {
+				timer.stop();
+				super.removeNotify();
+			}
+
+			protected void paintComponent(Graphics g) {
+				Cause cause = getWorstCause();
+				g.setFont(font);
+				g.setColor( new Color(0, 0, 0, 160) );
+				g.fillRect(0, 0, getWidth(), 36);
+				g.setColor(Color.WHITE);
+				g.drawString(getSummary(), 6, 14);
+				g.drawString("slow keystrokes mostly from: " + (cause == null ? "(none yet)" : cause.toString()), 6, 30);
+			}
+		};
+		overlay.setOpaque(false);
+		return overlay;
+	}
+}
@@ -0,0 +1,182 @@
+package com.mathhead200.math_game;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A fixed size histogram of nanosecond latencies, in the style of
+ * HdrHistogram: values are counted in log-linear buckets, so every recorded
+ * value is kept to within 1/64 (about 1.6%) of its true value, from 1 ns up to
+ * {@link #getHighestTrackableValue()}.
+ *
+ * {@link #record(long)} is a few shifts and an array increment; it never
+ * allocates, so it can be called from the input path. Not thread safe.
+ */
+public class LatencyHistogram {
+
+	public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 3_600_000_000_000L; // 1 hour in ns
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // values below this are counted exactly
+	private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+	private final long highestTrackableValue;
+	private final long[] counts;
+	private long totalCount = 0;
+	private long sum = 0;
+	private long min = Long.MAX_VALUE;
+	private long max = 0;
+
+	public LatencyHistogram(long highestTrackableValue) {
+		if( highestTrackableValue < SUB_BUCKET_COUNT )
+			throw new IllegalArgumentException("highestTrackableValue must be at least " + SUB_BUCKET_COUNT + ": " + highestTrackableValue);
+		this.highestTrackableValue = highestTrackableValue;
+		this.counts = new long[ indexOf(highestTrackableValue) + 1 ];
+	}
+
+	public LatencyHistogram() {
+		this(DEFAULT_HIGHEST_TRACKABLE_VALUE);
+	}
+
+	/**
+	 * Values below {@link #SUB_BUCKET_COUNT} each get their own bucket; above
+	 * that, each power of 2 is split into {@link #SUB_BUCKET_HALF_COUNT} equal
+	 * buckets.
+	 */
+	private static int indexOf(long value) {
+		if( value < SUB_BUCKET_COUNT )
+			return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+		return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+	}
+
+	/**
+	 * @return The smallest value counted in the bucket at <code>index</code>.
+	 */
+	private static long lowestValueAt(int index) {
+		if( index < SUB_BUCKET_COUNT )
+			return index;
+		int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+		long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+		return subBucket << shift;
+	}
+
+	/**
+	 * @return The largest value counted in the bucket at <code>index</code>.
+	 */
+	private static long highestValueAt(int index) {
+		return lowestValueAt(index + 1) - 1;
+	}
+
+	public long getHighestTrackableValue() {
+		return highestTrackableValue;
+	}
+
+	/**
+	 * Counts one value. Negative values are counted as 0, and values above
+	 * {@link #getHighestTrackableValue()} as that value (though
+	 * {@link #getMax()} is still exact.)
+	 */
+	public void record(long value) {
+		if( value < 0 )
+			value = 0;
+		counts[ indexOf(value < highestTrackableValue ? value : highestTrackableValue) ]++;
+		totalCount++;
+		sum += value;
+		if( value < min )
+			min = value;
+		if( value > max )
+			max = value;
+	}
+
+	/**
+	 * Adds all of the values counted by another histogram to this one.
+	 */
+	public void add(LatencyHistogram other) {
+		if( other.highestTrackableValue != highestTrackableValue )
+			throw new IllegalArgumentException("histograms must have the same highest trackable value: "
+					+ highestTrackableValue + ", " + other.highestTrackableValue);
+		for( int i = 0; i < counts.length; i++ )
+			counts[i] += other.counts[i];
+		totalCount += other.totalCount;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		totalCount = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * @return The smallest value recorded, or 0 if none have been.
+	 */
+	public long getMin() {
+		return totalCount == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return totalCount == 0 ? 0 : (double) sum / totalCount;
+	}
+
+	/**
+	 * @param percentile Between 0 and 100.
+	 * @return The value that <code>percentile</code>% of the recorded values
+	 *         are less than or equal to (to within the precision of this
+	 *         histogram), or 0 if no values have been recorded.
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if( percentile < 0 || percentile > 100 )
+			throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+		if( totalCount == 0 )
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+		long count = 0;
+		for( int i = 0; i < counts.length; i++ ) {
+			count += counts[i];
+			if( count >= target )
+				return Math.min( highestValueAt(i), max );
+		}
+		return max;
+	}
+
+	/**
+	 * Writes a summary line, followed by the cumulative distribution (one line
+	 * per non-empty bucket), with latencies in milliseconds.
+	 */
+	public void export(Appendable out, String name) throws IOException {
+		out.append( String.format("%s: %d values, mean %.1f ms, p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms\n",
+				name, totalCount, getMean() / 1e6, getValueAtPercentile(50) / 1e6, getValueAtPercentile(90) / 1e6,
+				getValueAtPercentile(99) / 1e6, max / 1e6) );
+		if( totalCount == 0 ) {
+			out.append('\n');
+			return;
+		}
+		out.append( String.format("%14s  %10s  %10s\n", "Value (ms)", "Percentile", "TotalCount") );
+		long count = 0;
+		for( int i = 0; i < counts.length; i++ ) {
+			if( counts[i] == 0 )
+				continue;
+			count += counts[i];
+			out.append( String.format("%14.3f  %10.5f  %10d\n", Math.min(highestValueAt(i), max) / 1e6, (double) count / totalCount, count) );
+		}
+		out.append('\n');
+	}
+
+	public String toString() {
+		return String.format("%d values, p50 %d ns, p90 %d ns, p99 %d ns, max %d ns",
+				totalCount, getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), max);
+	}
+}
@@ -0,0 +1,204 @@
+package com.mathhead200.math_game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the points, accuracy and completion times of many concurrent
+ * sessions for classroom competitions.
+ *
+ * Scoring is contention free: each session keeps the {@link Player} returned
+ * by {@link #register(String)}, and updates its {@link LongAdder}s directly.
+ * Rankings are computed from a snapshot which is rebuilt by at most one reader
+ * at a time, and at most once every {@link #getRefreshNanos()}, so readers may
+ * poll as often as they like without slowing down the writers.
+ */
+public class Leaderboard {
+
+	public static final long DEFAULT_REFRESH_NANOS = 50_000_000L; // 50 ms
+
+	public static class Player {
+		private final String name;
+		private final LongAdder points = new LongAdder();
+		private final LongAdder correctCount = new LongAdder();
+		private final LongAdder incorrectCount = new LongAdder();
+
+		private Player(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @param points The change in the player's points; i.e. the points of the
+		 *               problem they got correct.
+		 */
+		public void correct(int points) {
+			this.points.add(points);
+			correctCount.increment();
+		}
+
+		/**
+		 * @param points The change in the player's points; i.e. minus the loss
+		 *               they actually suffered (which is never negative.)
+		 */
+		public void incorrect(int points) {
+			this.points.add(points);
+			incorrectCount.increment();
+		}
+	}
+
+	public static class Standing {
+		public final String player;
+		public final long points;
+		public final long correctCount;
+		public final long incorrectCount;
+
+		private Standing(Player player) {
+			this.player = player.name;
+			this.points = player.points.sum();
+			this.correctCount = player.correctCount.sum();
+			this.incorrectCount = player.incorrectCount.sum();
+		}
+
+		public double getAccuracy() {
+			long total = correctCount + incorrectCount;
+			return total == 0 ? 0 : (double) correctCount / total;
+		}
+
+		public String toString() {
+			return String.format("%s %d %.0f%%", player, points, getAccuracy() * 100);
+		}
+	}
+
+	public static class Completion implements Comparable<Completion> {
+		public final String player;
+		public final String level;
+		public final long millis;
+		private final long sequence;
+
+		private Completion(String player, String level, long millis, long sequence) {
+			this.player = player;
+			this.level = level;
+			this.millis = millis;
+			this.sequence = sequence;
+		}
+
+		public int compareTo(Completion that) {
+			int c = Long.compare(this.millis, that.millis);
+			return c != 0 ? c : Long.compare(this.sequence, that.sequence);
+		}
+
+		public String toString() {
+			return String.format("%s %d:%02d", player, millis / 60000, millis / 1000 % 60);
+		}
+	}
+
+	private static final Comparator<Standing> BY_POINTS = (a, b) -> {
+		int c = Long.compare(a.points, b.points);
+		return c != 0 ? c : b.player.compareTo(a.player);
+	};
+
+	private final int capacity;
+	private final long refreshNanos;
+	private final ConcurrentMap<String, Player> players = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ConcurrentSkipListSet<Completion>> completions = new ConcurrentHashMap<>();
+	private final AtomicLong completionSequence = new AtomicLong();
+
+	private final AtomicBoolean refreshing = new AtomicBoolean(false);
+	private volatile List<Standing> topPoints = Collections.emptyList();
+	private volatile long topPointsTime;
+
+	/**
+	 * @param capacity The number of places (K) kept in each ranking.
+	 */
+	public Leaderboard(int capacity, long refreshNanos) {
+		if( capacity <= 0 )
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		this.capacity = capacity;
+		this.refreshNanos = refreshNanos;
+		this.topPointsTime = System.nanoTime() - refreshNanos;
+	}
+
+	public Leaderboard(int capacity) {
+		this(capacity, DEFAULT_REFRESH_NANOS);
+	}
+
+	public Leaderboard() {
+		this(10);
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getRefreshNanos() {
+		return refreshNanos;
+	}
+
+	/**
+	 * @return The (possibly already existing) player with the given name.
+	 */
+	public Player register(String name) {
+		return players.computeIfAbsent(name, Player::new);
+	}
+
+	public void completed(Player player, String level, long millis) {
+		ConcurrentSkipListSet<Completion> times = completions.computeIfAbsent( level, k -> new ConcurrentSkipListSet<>() );
+		times.add( new Completion(player.name, level, millis, completionSequence.getAndIncrement()) );
+		while( times.size() > capacity )
+			times.pollLast();
+	}
+
+	/**
+	 * @return The top players by points, best first. The result may be up to
+	 *         {@link #getRefreshNanos()} old.
+	 */
+	public List<Standing> getTopPoints() {
+		long now = System.nanoTime();
+		if( now - topPointsTime >= refreshNanos && refreshing.compareAndSet(false, true) ) {
+			try {
+				PriorityQueue<Standing> heap = new PriorityQueue<>(capacity + 1, BY_POINTS);
+				for( Player player : players.values() ) {
+					heap.add( new Standing(player) );
+					if( heap.size() > capacity )
+						heap.poll(); // drop the lowest
+				}
+				ArrayList<Standing> top = new ArrayList<>(heap);
+				top.sort( Collections.reverseOrder(BY_POINTS) );
+				topPoints = Collections.unmodifiableList(top);
+				topPointsTime = now;
+			} finally {
+				refreshing.set(false);
+			}
+		}
+		return topPoints;
+	}
+
+	/**
+	 * @return The fastest completions of the given level, fastest first.
+	 */
+	public List<Completion> getFastestTimes(String level) {
+		ConcurrentSkipListSet<Completion> times = completions.get(level);
+		if( times == null )
+			return Collections.emptyList();
+		ArrayList<Completion> fastest = new ArrayList<>(capacity);
+		for( Completion completion : times ) {
+			if( fastest.size() == capacity )
+				break;
+			fastest.add(completion);
+		}
+		return Collections.unmodifiableList(fastest);
+	}
+}
@@ -0,0 +1,132 @@
+package com.mathhead200.math_game;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The levels of the game, and the {@link ProblemSet} configuration of each
+ * level at each {@link Difficulty}.
+ */
+public enum Level {
+	ADDITION("Addition", '+', weights(),
+			additionRanges(), new int[] {10, 20, 25, 20, 10}, new double[] {1.25, 2.0, 3.0, 4.0, 5.0}),
+	SUBTRACTION("Subtraction", '-', weights(),
+			additionRanges(), new int[] {10, 20, 25, 20, 10}, new double[] {1.25, 2.0, 3.0, 4.0, 5.0}),
+	LEVEL_1("Level 1", '+', weights('-', 0.5),
+			additionRanges(), new int[] {10, 20, 25, 20, 10}, new double[] {1.25, 2.0, 3.0, 4.0, 5.0}),
+	MULTIPLICATION("Multiplication", '*', weights(),
+			multiplicationRanges(), new int[] {10, 20, 25, 20, 10}, new double[] {1.25, 2.0, 3.0, 4.0, 5.0}),
+	DIVISION("Division", '/', weights(),
+			multiplicationRanges(), new int[] {10, 20, 25, 20, 10}, new double[] {2, 2.0, 3.0, 4.0, 5.0}),
+	LEVEL_2("Level 2", '+', weights('-', 0.1, '*', 0.4, '/', 0.4),
+			multiplicationRanges(), new int[] {10, 20, 30, 30, 10}, new double[] {2, 3, 5, 5, 5});
+	
+	private final String displayName;
+	private final char defaultOp;
+	private final Map<Character, Double> weights;
+	private final int[][] ranges; // {min1, max1, min2, max2} for each difficulty
+	private final int[] approxSizes;
+	private final double[] failMultipliers;
+	
+	private Level(String displayName, char defaultOp, Map<Character, Double> weights, int[][] ranges, int[] approxSizes, double[] failMultipliers) {
+		this.displayName = displayName;
+		this.defaultOp = defaultOp;
+		this.weights = weights;
+		this.ranges = ranges;
+		this.approxSizes = approxSizes;
+		this.failMultipliers = failMultipliers;
+	}
+	
+	private static Map<Character, Double> weights(Object... opWeightPairs) {
+		TreeMap<Character, Double> weights = new TreeMap<>();
+		for( int i = 0; i < opWeightPairs.length; i += 2 )
+			weights.put( (Character) opWeightPairs[i], (Double) opWeightPairs[i + 1] );
+		return Collections.unmodifiableMap(weights);
+	}
+	
+	private static int[][] additionRanges() {
+		return new int[][] {
+			{1, 12, 1, 12},
+			{1, 99, 1, 99},
+			{1, 999, 1, 999},
+			{1, 9999, 1, 9999},
+			{1, 9999999, 1, 9999999}
+		};
+	}
+	
+	private static int[][] multiplicationRanges() {
+		return new int[][] {
+			{1, 6, 1, 6},
+			{1, 12, 1, 12},
+			{1, 99, 1, 99},
+			{1, 999, 1, 99},
+			{1, 9999, 1, 9999}
+		};
+	}
+	
+	public char getDefaultOp() {
+		return defaultOp;
+	}
+	
+	public Map<Character, Double> getWeights() {
+		return weights;
+	}
+	
+	public int getMin1(Difficulty difficulty) {
+		return ranges[difficulty.ordinal()][0];
+	}
+	
+	public int getMax1(Difficulty difficulty) {
+		return ranges[difficulty.ordinal()][1];
+	}
+	
+	public int getMin2(Difficulty difficulty) {
+		return ranges[difficulty.ordinal()][2];
+	}
+	
+	public int getMax2(Difficulty difficulty) {
+		return ranges[difficulty.ordinal()][3];
+	}
+	
+	public int getApproxSize(Difficulty difficulty) {
+		return approxSizes[difficulty.ordinal()];
+	}
+	
+	public double getFailMultiplier(Difficulty difficulty) {
+		return failMultipliers[difficulty.ordinal()];
+	}
+	
+	public ProblemSet newProblemSet(Difficulty difficulty) {
+		int[] r = ranges[difficulty.ordinal()];
+		return new ProblemSet(r[0], r[1], r[2], r[3], defaultOp, weights, getApproxSize(difficulty), getFailMultiplier(difficulty));
+	}
+	
+	/**
+	 * @return A problem set which always generates the same problems for the
+	 *         same <code>seed</code>.
+	 */
+	public ProblemSet newProblemSet(Difficulty difficulty, long seed) {
+		return newProblemSet( difficulty, RandomSource.seeded(seed) );
+	}
+	
+	/**
+	 * @return A problem set which draws its problems from <code>random</code>.
+	 */
+	ProblemSet newProblemSet(Difficulty difficulty, RandomSource random) {
+		int[] r = ranges[difficulty.ordinal()];
+		return new ProblemSet(r[0], r[1], r[2], r[3], defaultOp, weights, getApproxSize(difficulty), getFailMultiplier(difficulty), random);
+	}
+	
+	/**
+	 * @return The title used for this level in the game log, e.g.
+	 *         <code>"-- Addition, Easy --"</code>.
+	 */
+	public String getTitle(Difficulty difficulty) {
+		return "-- " + displayName + ", " + difficulty + " --";
+	}
+	
+	public String toString() {
+		return displayName;
+	}
+}
@@ -0,0 +1,699 @@
+package com.mathhead200.math_game;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Aggregates the text logs saved by the game (see {@link MathGameGUI}), e.g. a
+ * whole district's worth of them: the error rate of each fact (i.e. each
+ * distinct problem), and how many games of each level were completed and how
+ * long they took.
+ *
+ * The logs are parsed straight from their bytes, without decoding them or
+ * creating a String per line; facts are counted by their
+ * {@link MathProblem#key(int, char, int) key} in an open addressing table of
+ * primitive counters. Files are split into chunks (at the start of a game, so
+ * no game is split between chunks), which are memory mapped and parsed in
+ * parallel by a fork/join task per range of chunks, each with its own
+ * counters, which are added together as the tasks join. Small files are read
+ * rather than mapped, since mapping costs more than reading them.
+ *
+ * Usage: <code>java com.mathhead200.math_game.LogAnalyzer [-top &lt;facts&gt;]
+ * [-min &lt;attempts&gt;] [-csv &lt;facts.csv&gt;] &lt;log file or directory&gt;...</code>
+ */
+public class LogAnalyzer {
+
+	/** Files are split into chunks of about this many bytes. */
+	public static final int CHUNK_SIZE = 32 << 20;
+	/** Files smaller than this are read rather than memory mapped. */
+	public static final int MIN_MAP_SIZE = 256 << 10;
+	private static final long MAX_SECONDS = 7 * 24 * 3600; // for the completion time histograms
+	private static final byte[] COMPLETED = "COMPLETED ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] INCOMPLETE = "INCOMPLETE ".getBytes(StandardCharsets.US_ASCII);
+	private static final String[] TITLES; // of every level and difficulty, then "other"
+	private static final byte[][] TITLE_BYTES;
+	static {
+		Level[] levels = Level.values();
+		Difficulty[] difficulties = Difficulty.values();
+		TITLES = new String[levels.length * difficulties.length + 1];
+		TITLE_BYTES = new byte[TITLES.length - 1][];
+		int i = 0;
+		for( Level level : levels ) {
+			for( Difficulty difficulty : difficulties ) {
+				TITLES[i] = level.getTitle(difficulty);
+				TITLE_BYTES[i] = TITLES[i].getBytes(StandardCharsets.UTF_8);
+				i++;
+			}
+		}
+		TITLES[i] = "(other)";
+	}
+
+	/**
+	 * The number of attempts and errors of each fact, in an open addressing
+	 * table keyed by {@link MathProblem#key(int, char, int)}. Each slot is the
+	 * key followed by the counts (attempts in the high 32 bits, errors in the
+	 * low 32 bits), so counting an answer touches a single cache line. A slot
+	 * is empty if its counts are 0.
+	 */
+	public static class FactTable {
+		private long[] slots;
+		private int size = 0;
+
+		public FactTable(int capacity) {
+			capacity = Integer.highestOneBit( Math.max(capacity, 16) * 2 - 1 );
+			slots = new long[capacity * 2];
+		}
+
+		public FactTable() {
+			this(1024);
+		}
+
+		public void add(long key, long attempts, long errors) {
+			int i = indexOf(key);
+			if( slots[i + 1] == 0 ) {
+				if( size + 1 > slots.length / 4 ) { // load factor <= 1/2
+					grow();
+					i = indexOf(key);
+				}
+				slots[i] = key;
+				size++;
+			}
+			slots[i + 1] += attempts << 32 | errors;
+		}
+
+		public void add(FactTable other) {
+			for( int i = 0; i < other.slots.length; i += 2 )
+				if( other.slots[i + 1] != 0 )
+					add( other.slots[i], other.slots[i + 1] >>> 32, other.slots[i + 1] & 0xFFFFFFFFL );
+		}
+
+		private void grow() {
+			long[] slots = this.slots;
+			this.slots = new long[slots.length * 2];
+			for( int i = 0; i < slots.length; i += 2 ) {
+				if( slots[i + 1] != 0 ) {
+					int j = indexOf( slots[i] );
+					this.slots[j] = slots[i];
+					this.slots[j + 1] = slots[i + 1];
+				}
+			}
+		}
+
+		/**
+		 * @return The index of the key's slot, or of the empty slot it would go in.
+		 */
+		private int indexOf(long key) {
+			int mask = slots.length - 2;
+			int i = (MathProblem.hash(key) << 1) & mask;
+			while( slots[i + 1] != 0 && slots[i] != key )
+				i = (i + 2) & mask;
+			return i;
+		}
+
+		/**
+		 * @return The number of distinct facts.
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return The keys of every fact, in no particular order.
+		 */
+		public long[] keys() {
+			long[] keys = new long[size];
+			int n = 0;
+			for( int i = 0; i < slots.length; i += 2 )
+				if( slots[i + 1] != 0 )
+					keys[n++] = slots[i];
+			return keys;
+		}
+
+		public long getAttempts(long key) {
+			return slots[ indexOf(key) + 1 ] >>> 32;
+		}
+
+		public long getErrors(long key) {
+			return slots[ indexOf(key) + 1 ] & 0xFFFFFFFFL;
+		}
+	}
+
+	/**
+	 * Everything counted in some chunks of the logs.
+	 */
+	public static class Report {
+		public final FactTable facts = new FactTable();
+		public long files = 0;
+		public long bytes = 0;
+		public long answers = 0;
+		public long errors = 0;
+		/** Lines which were not recognized. */
+		public long skipped = 0;
+		// by title (i.e. level and difficulty), indexed like TITLES
+		public final long[] games = new long[TITLES.length];
+		public final long[] completed = new long[TITLES.length];
+		public final long[] incomplete = new long[TITLES.length];
+		public final long[] titleAnswers = new long[TITLES.length];
+		public final long[] titleErrors = new long[TITLES.length];
+		private final LatencyHistogram[] completionSeconds = new LatencyHistogram[TITLES.length]; // created as needed
+
+		void add(Report other) {
+			facts.add(other.facts);
+			files += other.files;
+			bytes += other.bytes;
+			answers += other.answers;
+			errors += other.errors;
+			skipped += other.skipped;
+			for( int t = 0; t < TITLES.length; t++ ) {
+				games[t] += other.games[t];
+				completed[t] += other.completed[t];
+				incomplete[t] += other.incomplete[t];
+				titleAnswers[t] += other.titleAnswers[t];
+				titleErrors[t] += other.titleErrors[t];
+				if( other.completionSeconds[t] != null )
+					getCompletionSeconds(t).add( other.completionSeconds[t] );
+			}
+		}
+
+		private LatencyHistogram getCompletionSeconds(int title) {
+			if( completionSeconds[title] == null )
+				completionSeconds[title] = new LatencyHistogram(MAX_SECONDS);
+			return completionSeconds[title];
+		}
+
+		/**
+		 * @return The titles (i.e. levels and difficulties) counted by index, the
+		 *         last being any other title.
+		 */
+		public static String[] getTitles() {
+			return TITLES.clone();
+		}
+
+		/**
+		 * @return How long the completed games of a title took, in seconds; or
+		 *         <code>null</code> if none were completed.
+		 */
+		public LatencyHistogram getCompletionSeconds(String title) {
+			int t = Arrays.asList(TITLES).indexOf(title);
+			return t < 0 ? null : completionSeconds[t];
+		}
+
+		/**
+		 * Prints the totals, each title's games, each operator's error rate, and
+		 * the <code>top</code> facts with the highest error rates (of those with
+		 * at least <code>minAttempts</code> attempts.)
+		 */
+		public void print(PrintStream out, int top, long minAttempts) {
+			long totalGames = 0, totalCompleted = 0, totalIncomplete = 0;
+			for( int t = 0; t < TITLES.length; t++ ) {
+				totalGames += games[t];
+				totalCompleted += completed[t];
+				totalIncomplete += incomplete[t];
+			}
+			out.printf("%,d files (%,.1f MB): %,d games (%,d completed, %,d incomplete), %,d answers (%s incorrect), %,d facts, %,d lines skipped%n%n",
+					files, bytes / 1e6, totalGames, totalCompleted, totalIncomplete, answers, percent(errors, answers), facts.size(), skipped);
+
+			out.printf("%-36s %10s %10s %10s %12s %10s %9s %9s%n",
+					"level", "games", "completed", "incomplete", "answers", "incorrect", "min p50", "min p90");
+			for( int t = 0; t < TITLES.length; t++ ) {
+				if( games[t] == 0 && titleAnswers[t] == 0 )
+					continue;
+				LatencyHistogram seconds = completionSeconds[t];
+				out.printf("%-36s %,10d %,10d %,10d %,12d %10s %9s %9s%n", TITLES[t], games[t], completed[t], incomplete[t],
+						titleAnswers[t], percent(titleErrors[t], titleAnswers[t]),
+						seconds == null ? "-" : String.format("%.1f", seconds.getValueAtPercentile(50) / 60.0),
+						seconds == null ? "-" : String.format("%.1f", seconds.getValueAtPercentile(90) / 60.0));
+			}
+
+			long[] keys = facts.keys();
+			long[] operatorAttempts = new long[4];
+			long[] operatorErrors = new long[4];
+			for( long key : keys ) {
+				int o = (int) (key >>> 62);
+				operatorAttempts[o] += facts.getAttempts(key);
+				operatorErrors[o] += facts.getErrors(key);
+			}
+			out.println();
+			for( int o = 0; o < 4; o++ )
+				if( operatorAttempts[o] != 0 )
+					out.printf("%c  %,12d answers  %s incorrect%n", MathProblem.operator(o), operatorAttempts[o], percent(operatorErrors[o], operatorAttempts[o]));
+
+			List<Long> missed = new ArrayList<>();
+			for( long key : keys )
+				if( facts.getAttempts(key) >= minAttempts && facts.getErrors(key) > 0 )
+					missed.add(key);
+			missed.sort( (a, b) -> Double.compare(errorRate(b), errorRate(a)) );
+			out.printf("%nmost missed facts (of %,d with at least %,d attempts):%n", missed.size(), minAttempts);
+			for( long key : missed.subList(0, Math.min(top, missed.size())) )
+				out.printf("  %-24s %,10d attempts  %s incorrect%n", MathProblem.toString(key), facts.getAttempts(key), percent(facts.getErrors(key), facts.getAttempts(key)));
+		}
+
+		private double errorRate(long key) {
+			return (double) facts.getErrors(key) / facts.getAttempts(key);
+		}
+
+		/**
+		 * Writes every fact's attempts and errors as CSV.
+		 */
+		public void writeCsv(Path path) throws IOException {
+			try( BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8) ) {
+				out.write("operand1,operator,operand2,attempts,errors\n");
+				for( long key : facts.keys() )
+					out.write( MathProblem.keyOperand1(key) + "," + MathProblem.keyOperator(key) + "," + MathProblem.keyOperand2(key) + "," + facts.getAttempts(key) + "," + facts.getErrors(key) + "\n" );
+			}
+		}
+	}
+
+	private static String percent(long count, long total) {
+		return total == 0 ? "-" : String.format("%.1f%%", 100.0 * count / total);
+	}
+
+	private static class Chunk {
+		final Path path;
+		final long fileSize;
+		final long start;
+		final long end;
+
+		Chunk(Path path, long fileSize, long start, long end) {
+			this.path = path;
+			this.fileSize = fileSize;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private final ForkJoinPool pool;
+
+	public LogAnalyzer(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public LogAnalyzer() {
+		this( ForkJoinPool.commonPool() );
+	}
+
+	/**
+	 * Analyzes every file in <code>paths</code>, and every file under the
+	 * directories in <code>paths</code>.
+	 */
+	public Report analyze(List<Path> paths) throws IOException {
+		List<Chunk> chunks = new ArrayList<>();
+		for( Path path : paths ) {
+			List<Path> files;
+			if( Files.isDirectory(path) ) {
+				try( Stream<Path> walk = Files.walk(path) ) {
+					files = walk.filter(Files::isRegularFile).sorted().collect( Collectors.toList() );
+				}
+			} else {
+				files = Arrays.asList(path);
+			}
+			for( Path file : files ) {
+				long size = Files.size(file);
+				long start = 0;
+				do {
+					long end = Math.min(size, start + CHUNK_SIZE);
+					chunks.add( new Chunk(file, size, start, end) );
+					start = end;
+				} while( start < size );
+			}
+		}
+		long[] offsets = new long[chunks.size() + 1]; // of each chunk, as if the files were concatenated
+		for( int i = 0; i < chunks.size(); i++ )
+			offsets[i + 1] = offsets[i] + chunks.get(i).end - chunks.get(i).start;
+		try {
+			return pool.invoke( new AnalyzeTask(chunks, offsets, 0, chunks.size()) );
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class AnalyzeTask extends RecursiveTask<Report> {
+		private final List<Chunk> chunks;
+		private final long[] offsets;
+		private final int from;
+		private final int to;
+
+		AnalyzeTask(List<Chunk> chunks, long[] offsets, int from, int to) {
+			this.chunks = chunks;
+			this.offsets = offsets;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected Report compute() {
+			if( to - from > 1 && offsets[to] - offsets[from] > CHUNK_SIZE ) {
+				int middle = (from + to) >>> 1;
+				AnalyzeTask other = new AnalyzeTask(chunks, offsets, middle, to);
+				other.fork();
+				Report report = new AnalyzeTask(chunks, offsets, from, middle).compute();
+				report.add( other.join() );
+				return report;
+			}
+
+			Report report = new Report();
+			Parser parser = new Parser(report);
+			ByteBuffer small = null; // reused for the files which are read rather than mapped
+			try {
+				for( int i = from; i < to; i++ ) {
+					Chunk chunk = chunks.get(i);
+					try( FileChannel channel = FileChannel.open(chunk.path, StandardOpenOption.READ) ) {
+						ByteBuffer buffer;
+						long offset = Math.max(0, chunk.start - 1); // from the byte before, to tell if chunk.start begins a line
+						if( chunk.fileSize < MIN_MAP_SIZE ) {
+							if( small == null )
+								small = ByteBuffer.allocate(MIN_MAP_SIZE);
+							small.clear();
+							while( small.position() < chunk.fileSize && channel.read(small) >= 0 )
+								;
+							small.flip();
+							buffer = small;
+						} else {
+							// to the end of the file (if possible) in case the last game runs past the end of the chunk
+							long length = Math.min( chunk.fileSize - offset, Integer.MAX_VALUE );
+							buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+						}
+						parser.parse( buffer, chunk.start == 0, (int) (chunk.end - offset) );
+					}
+					if( chunk.start == 0 ) {
+						report.files++;
+						report.bytes += chunk.fileSize;
+					}
+				}
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return report;
+		}
+	}
+
+	/**
+	 * Parses lines straight from their bytes, into a {@link Report}. A mapped
+	 * buffer is copied into a window (in bulk, which is much faster than
+	 * reading it a byte at a time) a window at a time; a heap buffer is parsed
+	 * in place.
+	 */
+	static class Parser {
+		static final int WINDOW_SIZE = 256 << 10;
+
+		private final Report report;
+		private final byte[] window = new byte[WINDOW_SIZE];
+		private ByteBuffer buffer; // what is left of it to copy into the window, or null
+		private byte[] bytes; // the window, or the heap buffer's array
+		private int base; // the index in the buffer of bytes[0]
+		private int position; // the start of the next line, in bytes
+		private int filled;
+		// the current line, in bytes, without the line terminator
+		private int lineStart;
+		private int lineEnd;
+
+		Parser(Report report) {
+			this.report = report;
+		}
+
+		/**
+		 * Parses the games in <code>buffer</code> which start before
+		 * <code>chunkEnd</code>. If not <code>first</code>, the first byte of the
+		 * buffer is the one before the chunk, and the chunk's first game begins
+		 * with the first header line after it.
+		 */
+		void parse(ByteBuffer buffer, boolean first, int chunkEnd) {
+			if( buffer.hasArray() ) {
+				this.buffer = null;
+				bytes = buffer.array();
+				position = buffer.arrayOffset() + buffer.position();
+				filled = buffer.arrayOffset() + buffer.limit();
+				base = -position;
+			} else {
+				this.buffer = buffer;
+				bytes = window;
+				position = filled = 0;
+				base = buffer.position();
+			}
+
+			int title = TITLES.length - 1; // until the first header
+			boolean started = first;
+			if( !first && !nextLine() ) // the rest of the line before the chunk
+				return;
+			while( nextLine() ) {
+				byte[] b = bytes;
+				int i = lineStart;
+				int end = lineEnd;
+				if( isHeader(b, i, end) ) {
+					if( base + i >= chunkEnd )
+						return; // the next chunk's game
+					started = true;
+					title = matchTitle(b, i, end);
+					report.games[title]++;
+				} else if( !started ) {
+					if( base + i >= chunkEnd )
+						return; // no game starts in this chunk
+				} else if( end == i ) {
+					// blank line
+				} else if( startsWith(b, i, end, COMPLETED) ) {
+					report.completed[title]++;
+					long seconds = parseDuration(b, i + COMPLETED.length, end);
+					if( seconds >= 0 )
+						report.getCompletionSeconds(title).record( Math.min(seconds, MAX_SECONDS) );
+				} else if( startsWith(b, i, end, INCOMPLETE) ) {
+					report.incomplete[title]++;
+				} else if( !parseAnswer(b, i, end, title) ) {
+					report.skipped++;
+				}
+			}
+		}
+
+		/**
+		 * Finds the next line, copying more of the buffer into the window if
+		 * need be.
+		 *
+		 * @return <code>false</code> at the end of the buffer.
+		 */
+		private boolean nextLine() {
+			int i = position;
+			for( ; ; ) {
+				while( i < filled && bytes[i] != '\n' )
+					i++;
+				if( i < filled || buffer == null || !buffer.hasRemaining() )
+					break;
+				if( position == 0 && filled == bytes.length ) // a line longer than the window; take it as 2 lines
+					break;
+				// keep the start of the line, and fill the rest of the window
+				System.arraycopy(bytes, position, bytes, 0, filled - position);
+				base += position;
+				i -= position;
+				filled -= position;
+				position = 0;
+				int n = Math.min( bytes.length - filled, buffer.remaining() );
+				buffer.get(bytes, filled, n);
+				filled += n;
+			}
+			if( position >= filled )
+				return false;
+			lineStart = position;
+			lineEnd = i;
+			position = i < filled ? i + 1 : i;
+			if( lineEnd > lineStart && bytes[lineEnd - 1] == '\r' )
+				lineEnd--;
+			return true;
+		}
+
+		/**
+		 * Parses an answer line, as written by
+		 * {@link MathGameGUI#formatLogLine(int, int, char, int, String, boolean)},
+		 * e.g. "  3.  7 + 5 = 12   &#x2713;", and counts it.
+		 *
+		 * @return <code>false</code> if it is not an answer line.
+		 */
+		private boolean parseAnswer(byte[] b, int i, int end, int title) {
+			// the verdict: U+2713 or U+2717 in UTF-8, at the end of the line
+			if( end - i < 3 || b[end - 3] != (byte) 0xE2 || b[end - 2] != (byte) 0x9C )
+				return false;
+			byte verdict = b[end - 1];
+			if( verdict != (byte) 0x93 && verdict != (byte) 0x97 )
+				return false;
+
+			// the problem number
+			while( i < end && b[i] == ' ' )
+				i++;
+			int digits = i;
+			while( i < end && isDigit(b[i]) )
+				i++;
+			if( i == digits || i >= end || b[i] != '.' )
+				return false;
+			i++;
+			while( i < end && b[i] == ' ' )
+				i++;
+
+			// the operands and operator
+			int operand1End = skipInt(b, i, end);
+			if( operand1End < 0 )
+				return false;
+			int operand1 = parseInt(b, i, operand1End);
+			i = operand1End;
+			if( i + 3 > end || b[i] != ' ' )
+				return false;
+			char operator;
+			switch( b[++i] ) {
+			case '+':
+				operator = MathProblem.PLUS;
+				break;
+			case '-':
+				operator = MathProblem.MINUS;
+				break;
+			case '*':
+				operator = MathProblem.TIMES;
+				break;
+			case '/':
+				operator = MathProblem.DIVIDE;
+				break;
+			case (byte) 0xC3: // U+00D7 or U+00F7 in UTF-8
+				if( b[++i] == (byte) 0x97 )
+					operator = MathProblem.TIMES;
+				else if( b[i] == (byte) 0xB7 )
+					operator = MathProblem.DIVIDE;
+				else
+					return false;
+				break;
+			default:
+				return false;
+			}
+			i++;
+			if( i >= end || b[i] != ' ' )
+				return false;
+			int operand2End = skipInt(b, ++i, end);
+			if( operand2End < 0 )
+				return false;
+			int operand2 = parseInt(b, i, operand2End);
+
+			boolean incorrect = verdict == (byte) 0x97;
+			report.facts.add( MathProblem.key(operand1, operator, operand2), 1, incorrect ? 1 : 0 );
+			report.answers++;
+			report.titleAnswers[title]++;
+			if( incorrect ) {
+				report.errors++;
+				report.titleErrors[title]++;
+			}
+			return true;
+		}
+	}
+
+	private static boolean isHeader(byte[] b, int i, int end) {
+		return end - i >= 3 && b[i] == '-' && b[i + 1] == '-' && b[i + 2] == ' ';
+	}
+
+	private static boolean startsWith(byte[] b, int i, int end, byte[] prefix) {
+		if( end - i < prefix.length )
+			return false;
+		for( int j = 0; j < prefix.length; j++ )
+			if( b[i + j] != prefix[j] )
+				return false;
+		return true;
+	}
+
+	private static int matchTitle(byte[] b, int i, int end) {
+		for( int t = 0; t < TITLE_BYTES.length; t++ )
+			if( startsWith(b, i, end, TITLE_BYTES[t]) && (i + TITLE_BYTES[t].length == end || b[i + TITLE_BYTES[t].length] == ' ') )
+				return t;
+		return TITLES.length - 1;
+	}
+
+	/**
+	 * Parses "... (in M minutes and S seconds)".
+	 *
+	 * @return The seconds, or -1 if they could not be parsed.
+	 */
+	private static long parseDuration(byte[] b, int i, int end) {
+		while( i < end && b[i] != '(' )
+			i++;
+		long minutes = -1;
+		for( ; i < end; i++ ) {
+			if( isDigit(b[i]) ) {
+				long value = 0;
+				for( ; i < end && isDigit(b[i]); i++ )
+					value = value * 10 + (b[i] - '0');
+				if( minutes >= 0 )
+					return minutes * 60 + value;
+				minutes = value;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	/**
+	 * @return The index after the int (which fits an int) at <code>i</code>, or
+	 *         -1 if there is none.
+	 */
+	private static int skipInt(byte[] b, int i, int end) {
+		if( i < end && b[i] == '-' )
+			i++;
+		int digits = i;
+		while( i < end && isDigit(b[i]) )
+			i++;
+		return i == digits || i - digits > 9 ? -1 : i; // at most 9 digits always fits
+	}
+
+	/**
+	 * Parses the int in <code>[i, end)</code>, as found by
+	 * {@link #skipInt(byte[], int, int)}.
+	 */
+	private static int parseInt(byte[] b, int i, int end) {
+		boolean negative = b[i] == '-';
+		if( negative )
+			i++;
+		int value = 0;
+		for( ; i < end; i++ )
+			value = value * 10 + (b[i] - '0');
+		return negative ? -value : value;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int top = 25;
+		long minAttempts = 20;
+		Path csv = null;
+		List<Path> paths = new ArrayList<>();
+		for( int a = 0; a < args.length; a++ ) {
+			if( args[a].equals("-top") && a + 1 < args.length )
+				top = Integer.parseInt(args[++a]);
+			else if( args[a].equals("-min") && a + 1 < args.length )
+				minAttempts = Long.parseLong(args[++a]);
+			else if( args[a].equals("-csv") && a + 1 < args.length )
+				csv = Paths.get(args[++a]);
+			else
+				paths.add( Paths.get(args[a]) );
+		}
+		if( paths.isEmpty() ) {
+			System.err.println("usage: java " + LogAnalyzer.class.getName()
+					+ " [-top <facts>] [-min <attempts>] [-csv <facts.csv>] <log file or directory>...");
+			System.exit(1);
+		}
+
+		long start = System.nanoTime();
+		Report report = new LogAnalyzer().analyze(paths);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		report.print(System.out, top, minAttempts);
+		System.out.printf("%nanalyzed in %.3f s: %,.0f MB/s%n", seconds, report.bytes / 1e6 / seconds);
+		if( csv != null )
+			report.writeCsv(csv);
+	}
+}
@@ -1,19 +1,34 @@
 package com.mathhead200.math_game;
 
+import java.awt.EventQueue;
+
+import javax.management.JMException;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
 public class MathGame {
+	
+	/** System.nanoTime() when the game was launched (i.e. this class was loaded.) */
+	static final long START_NANOS = System.nanoTime();
 
 	public static void main(String[] args) {
+		EventQueue.invokeLater( () -> {
+			try {
+				UIManager.setLookAndFeel( UIManager.getSystemLookAndFeelClassName() );
+			} catch(ClassNotFoundException | InstantiationException | IllegalAccessException | UnsupportedLookAndFeelException e) {
+				e.printStackTrace();
+			}
+			
+			MathGameGUI gui = new MathGameGUI();
+			gui.setVisible(true);
+		});
+		
+		// not needed for the first frame, so done on this thread while the EDT builds it
 		try {
-			UIManager.setLookAndFeel( UIManager.getSystemLookAndFeelClassName() );
-		} catch(ClassNotFoundException | InstantiationException | IllegalAccessException | UnsupportedLookAndFeelException e) {
+			GameMetrics.getInstance().register();
+		} catch(JMException e) {
 			e.printStackTrace();
 		}
-		
-		MathGameGUI gui = new MathGameGUI();
-		gui.setVisible(true);
 	}
 
 }
@@ -2,25 +2,35 @@ package com.mathhead200.math_game;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.Graphics;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.TreeMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -38,19 +48,52 @@ public class MathGameGUI extends JFrame implements ActionListener, WindowListene
 	private static final DateFormat DATE_FORMAT = new SimpleDateFormat();
 	
 	private ProblemSet problemSet = null;
+	private String title = null;
 	private long timestamp;
-	private StringWriter writer = new StringWriter();
-	private int savedChars = 0;
-	private JFileChooser fileChooser = new JFileChooser();
+	private long problemTimestamp; // System.nanoTime() when the current problem was shown
+	private Level level = null;
+	private Difficulty difficulty = null;
+	private final LatencyHistogram[] levelLatencies = new LatencyHistogram[ Level.values().length ];
+	private final LatencyHistogram[] operatorLatencies = new LatencyHistogram[4]; // by MathProblem.operatorIndex(...)
+	private final AnswerHistory history = new AnswerHistory();
+	private Leaderboard leaderboard = new Leaderboard();
+	private Leaderboard.Player player = leaderboard.register( System.getProperty("user.name") );
+	private SessionJournal journal;
+	private long savedChars = 0;
+	private BinarySessionLog.Writer binaryLog = null; // only if the mathgame.binaryLog property names a file
+	private Path recordingsPath = null; // only if the mathgame.recordings property names a file
+	private SessionRecording recording = null;
+	private Checkpointer checkpointer;
+	private Checkpointer.Orphan resumable = null; // left by a game which was not closed properly
+	private JFileChooser fileChooser = null; // slow to create (it scans the file system), so created on first use
+	private InputLatencyMonitor latencyMonitor = new InputLatencyMonitor();
+	private boolean firstFramePainted = false;
+	private RaceServer raceServer = null; // only while hosting a race
+	private RaceClient raceClient = null; // only while in a race
+	private boolean racing = false; // whether the problem set is the race's
+	private final Map<Integer, RaceLane> raceLanes = new HashMap<>(); // the other players, by id
 	
 	private Chalkboard chalkboard;
 	private GameProgressBar progressBar = new GameProgressBar(100);
 	private JLabel leftLabel = new JLabel();
 	private JLabel rightLabel = new JLabel();
+	private JPanel racePanel = new JPanel( new GridLayout(1, 0, 8, 0) );
 	
 	private JMenuItem saveItem = new JMenuItem("Save");
+	private JMenuItem bestTimesItem = new JMenuItem("Best Times");
+	private JMenuItem answerStatisticsItem = new JMenuItem("Answer Statistics");
+	private JMenuItem exportTimesItem = new JMenuItem("Export Answer Times");
 	private JMenuItem exitItem = new JMenuItem("Exit");
 	
+	private JMenuBar menuBar = new JMenuBar();
+	private JCheckBoxMenuItem latencyOverlayItem = new JCheckBoxMenuItem("Input Latency Overlay");
+	private JMenuItem exportLatencyItem = new JMenuItem("Export Input Latency Report");
+	
+	private JMenuItem hostRaceItem = new JMenuItem("Host a Race");
+	private JMenuItem joinRaceItem = new JMenuItem("Join a Race...");
+	private JMenuItem startRaceItem = new JMenuItem("Start the Race");
+	private JMenuItem leaveRaceItem = new JMenuItem("Leave the Race");
+	
 	private JMenuItem additionItem = new JMenuItem("Addition (+)");
 	private JMenuItem subtractionItem = new JMenuItem("Subtraction (-)");
 	private JMenuItem level1Item = new JMenuItem("Level 1 (+|-)");
@@ -64,108 +107,694 @@ public class MathGameGUI extends JFrame implements ActionListener, WindowListene
 	private JRadioButtonMenuItem veryHardItem = new JRadioButtonMenuItem("Very Hard");
 	private JRadioButtonMenuItem ultimateItem = new JRadioButtonMenuItem("Ultimate");
 	
+	/**
+	 * Another player's progress in the race: a small progress bar over their
+	 * name.
+	 */
+	private static class RaceLane extends JPanel {
+		final String name;
+		final GameProgressBar progressBar = new GameProgressBar(100);
+		final JLabel label;
+		
+		RaceLane(String name, JComponent style) {
+			super( new BorderLayout() );
+			this.name = name;
+			this.label = new JLabel(name, JLabel.CENTER);
+			Dimension dim = new Dimension(24, 200);
+			progressBar.setMinimumSize(dim);
+			progressBar.setPreferredSize(dim);
+			progressBar.setBorder( BorderFactory.createEmptyBorder(4, 4, 4, 4) );
+			progressBar.setBackground( style.getBackground().darker() );
+			label.setFont( style.getFont().deriveFont((float) 12) );
+			label.setForeground( style.getForeground() );
+			setOpaque(false);
+			add(progressBar, BorderLayout.CENTER);
+			add(label, BorderLayout.PAGE_END);
+		}
+	}
+	
 	
 	private String getIncompleteProblemSetFooter() {
 		if( this.problemSet == null )
 			return "";
-		StringWriter writer = new StringWriter();
-		long duration = System.currentTimeMillis() - timestamp;
-		long sec = duration / 1000;
+		return formatIncompleteLine( progressBar.getPercentage(), this.problemSet.getCorrectCount(), this.problemSet.getIncorrectCount(),
+				System.currentTimeMillis() - timestamp );
+	}
+	
+	static String formatTitleLine(String title, long startMillis) {
+		synchronized( DATE_FORMAT ) {
+			return String.format( "%s (started %s)\n", title, DATE_FORMAT.format(new Date(startMillis)) );
+		}
+	}
+	
+	static String formatCompletedLine(int correctCount, int incorrectCount, long durationMillis) {
+		long sec = durationMillis / 1000;
 		long min = sec / 60;
 		sec %= 60;
-		writer.write( String.format("INCOMPLETE %.0f%% %d\u2713 %d\u2717 (duration: %d minutes and %d seconds)\n\n",
-				progressBar.getPercentage() * 100, this.problemSet.getCorrectCount(), this.problemSet.getIncorrectCount(), min, sec) );
-		return writer.toString();
+		return String.format("COMPLETED 100%% %d\u2713 %d\u2717 (in %d minutes and %d seconds)\n\n", correctCount, incorrectCount, min, sec);
+	}
+	
+	/**
+	 * @param progress The points, as a fraction of the goal.
+	 */
+	static String formatIncompleteLine(double progress, int correctCount, int incorrectCount, long durationMillis) {
+		long sec = durationMillis / 1000;
+		long min = sec / 60;
+		sec %= 60;
+		return String.format("INCOMPLETE %.0f%% %d\u2713 %d\u2717 (duration: %d minutes and %d seconds)\n\n",
+				progress * 100, correctCount, incorrectCount, min, sec);
+	}
+	
+	static String formatLogLine(int problemNumber, int operand1, char operator, int operand2, String guess, boolean correct) {
+		String prStr = String.format("%d %c %d = %s", operand1, operator, operand2, guess);
+		return String.format("%3d.  %-30s  %c\n", problemNumber, prStr, correct ? '\u2713' : '\u2717');
+	}
+	
+	static String formatLogLine(int problemNumber, MathProblem pr, String guess, boolean correct) {
+		return formatLogLine(problemNumber, pr.operand1, pr.operator, pr.operand2, guess, correct);
+	}
+	
+	/**
+	 * Records how long the current problem took to answer.
+	 */
+	private void recordAnswerTime(long nanos) {
+		if( level != null )
+			levelLatencies[ level.ordinal() ].record(nanos);
+		operatorLatencies[ MathProblem.operatorIndex(problemSet.getCurrentProblem().operator) ].record(nanos);
+	}
+	
+	private void logBinary(boolean correct, long nanos) {
+		if( binaryLog == null )
+			return;
+		try {
+			binaryLog.append( problemSet.getCurrentProblemNumber(), problemSet.getCurrentProblem(),
+					chalkboard.getGuessValue(), correct, nanos );
+		} catch(IOException e) {
+			e.printStackTrace();
+			closeBinaryLog();
+		}
+	}
+	
+	/**
+	 * Records the start of the current game in the binary log.
+	 */
+	private void logBinaryStarted() {
+		if( binaryLog == null || level == null )
+			return;
+		try {
+			binaryLog.started( level, difficulty, problemSet.getSeed(), timestamp );
+		} catch(IOException e) {
+			e.printStackTrace();
+			closeBinaryLog();
+		}
+	}
+	
+	/**
+	 * Records the end of the current game (which flushes the binary log.)
+	 */
+	private void logBinaryEnded(boolean completed, long durationMillis) {
+		if( binaryLog == null || problemSet == null )
+			return;
+		try {
+			binaryLog.ended( completed, completed ? 1 : progressBar.getPercentage(),
+					problemSet.getCorrectCount(), problemSet.getIncorrectCount(), durationMillis );
+		} catch(IOException e) {
+			e.printStackTrace();
+			closeBinaryLog();
+		}
+	}
+	
+	private void closeBinaryLog() {
+		if( binaryLog == null )
+			return;
+		logBinaryEnded( false, System.currentTimeMillis() - timestamp ); // the game in progress, if any
+		try {
+			binaryLog.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		binaryLog = null;
+	}
+	
+	private void recordAnswer(boolean correct) {
+		if( recording != null )
+			recording.answered( chalkboard.getGuessValue(), correct, problemSet );
+	}
+	
+	/**
+	 * Appends the recording of the current game, if any, to the recordings file.
+	 */
+	private void saveRecording() {
+		if( recording == null )
+			return;
+		try {
+			recording.appendTo(recordingsPath);
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		recording = null;
 	}
 	
 	private void nextProblem() {
+		if( racing )
+			sendRaceProgress();
 		progressBar.setValue( problemSet.getPoints() );
+		GameMetrics.getInstance().progress( problemSet.getPoints(), problemSet.getGoal() );
 		if( problemSet.hasNext() ) {
-			MathProblem problem = problemSet.next();
-			chalkboard.setGuess("");
-			chalkboard.setTopOperand( Integer.toString(problem.operand1) );
-			chalkboard.setOperator(problem.operator);
-			chalkboard.setBottomOperand( Integer.toString(problem.operand2) );
-			chalkboard.setResult( Integer.toString(problem.result) );
-			rightLabel.setText( String.format("(%,d / %,d points)", progressBar.getValue(), progressBar.getMax()) );
+			showProblem( problemSet.next() );
 		} else {
 			timestamp = System.currentTimeMillis() - timestamp;
 			long sec = timestamp / 1000;
 			long min = sec / 60;
 			sec %= 60;
-			writer.write( String.format("COMPLETED 100%% %d\u2713 %d\u2717 (in %d minutes and %d seconds)\n\n",
-					problemSet.getCorrectCount(), problemSet.getIncorrectCount(), min, sec) );
+			journal.write( formatCompletedLine(problemSet.getCorrectCount(), problemSet.getIncorrectCount(), timestamp) );
+			logBinaryEnded(true, timestamp);
+			leaderboard.completed(player, title, timestamp);
+			saveRecording();
 			
 			problemSet = null;
+			chalkboard.beginUpdate();
 			chalkboard.setGuess(min + ":" + sec);
 			chalkboard.setTopOperand("Congrats");
 			chalkboard.setBottomOperand("You Win!");
 			chalkboard.setResult(null);
+			chalkboard.endUpdate();
 			rightLabel.setText( String.format("(%d / %d points)", progressBar.getValue(), progressBar.getMax()) );
 		}
+		checkpoint();
+	}
+	
+	private void showProblem(MathProblem problem) {
+		GameMetrics.getInstance().problemGenerated();
+		chalkboard.setProblem( Integer.toString(problem.operand1), problem.operator, Integer.toString(problem.operand2), problem.result );
+		problemTimestamp = System.nanoTime();
+		rightLabel.setText( String.format("(%,d / %,d points)", progressBar.getValue(), progressBar.getMax()) );
+	}
+	
+	/**
+	 * Publishes the state of the game to the checkpointer (which writes it in
+	 * the background), or clears the checkpoint if there is nothing to lose.
+	 */
+	private void checkpoint() {
+		if( problemSet != null )
+			checkpointer.update( new Checkpointer.Checkpoint(level, difficulty, problemSet, System.currentTimeMillis() - timestamp, journal, savedChars) );
+		else if( savedChars != journal.getLength() )
+			checkpointer.update( new Checkpointer.Checkpoint(journal, savedChars) );
+		else
+			checkpointer.clear();
+	}
+	
+	/**
+	 * Offers to resume the game (and recover the unsaved log) from a
+	 * checkpoint left by a game which was not closed properly.
+	 */
+	private void resume(Checkpointer.Orphan orphan) {
+		Checkpointer.Checkpoint checkpoint = orphan.checkpoint;
+		String log = null;
+		try {
+			log = checkpoint.restoreLog();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		boolean unsaved = log != null && log.length() > checkpoint.savedLength;
+		if( checkpoint.level == null && !unsaved ) {
+			discard(orphan);
+			return;
+		}
+		String message = checkpoint.level != null
+				? "The last game was not closed properly. Would you like to resume it?\n" + checkpoint
+				: "The last game was not closed properly. Would you like to recover the problems which were not saved?";
+		if( JOptionPane.YES_OPTION != JOptionPane.showConfirmDialog(this, message, "Resume?", JOptionPane.YES_NO_OPTION) ) {
+			discard(orphan);
+			return;
+		}
+		
+		if( log != null ) {
+			journal.write(log);
+			savedChars = Math.min( checkpoint.savedLength, log.length() );
+		}
+		discard(orphan);
+		if( checkpoint.level != null ) {
+			level = checkpoint.level;
+			difficulty = checkpoint.difficulty;
+			selectDifficulty(difficulty);
+			problemSet = checkpoint.restoreProblemSet();
+			title = level.getTitle(difficulty);
+			timestamp = System.currentTimeMillis() - checkpoint.elapsedMillis;
+			logBinaryStarted();
+			progressBar.reset( 0, problemSet.getGoal(), problemSet.getPoints() );
+			leftLabel.setText(title);
+			if( problemSet.getCurrentProblem() != null ) {
+				GameMetrics.getInstance().progress( problemSet.getPoints(), problemSet.getGoal() );
+				showProblem( problemSet.getCurrentProblem() );
+			} else {
+				nextProblem();
+			}
+		}
+		checkpoint();
+	}
+	
+	/**
+	 * Deletes a checkpoint left by another game, and its journal.
+	 */
+	private static void discard(Checkpointer.Orphan orphan) {
+		try {
+			Files.deleteIfExists(orphan.checkpoint.journalPath);
+			orphan.delete();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
 	}
 	
 	private void initProblemSet(ProblemSet problemSet, String message) {
-		writer.write( getIncompleteProblemSetFooter() );
+		journal.write( getIncompleteProblemSetFooter() );
+		logBinaryEnded( false, System.currentTimeMillis() - timestamp );
 		timestamp = System.currentTimeMillis();
-		writer.write(String.format( "%s (started %s)\n", message, DATE_FORMAT.format(new Date(timestamp)) ));
+		journal.write( formatTitleLine(message, timestamp) );
 		
 		this.problemSet = problemSet;
-		progressBar.setMax( problemSet.getGoal() );
-		progressBar.setValue(0);
-		progressBar.setValue(0); // to remove the highlighting
+		logBinaryStarted();
+		this.title = message;
+		progressBar.reset( 0, problemSet.getGoal(), 0 );
 		leftLabel.setText(message);
 		nextProblem();
 	}
 	
-	private void save() {
-		if( fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION ) {
-			File file = fileChooser.getSelectedFile();
-			if( file.exists() && JOptionPane.YES_OPTION != JOptionPane.showConfirmDialog( this,
-					"File \"" + file + "\" already exists. Are you sure you want to overwrite it?",
-					"Overwirte?", JOptionPane.YES_NO_OPTION) )
-			{
-				return; // do not save
+	private Difficulty getSelectedDifficulty() {
+		if( mediumItem.isSelected() )
+			return Difficulty.MEDIUM;
+		if( hardItem.isSelected() )
+			return Difficulty.HARD;
+		if( veryHardItem.isSelected() )
+			return Difficulty.VERY_HARD;
+		if( ultimateItem.isSelected() )
+			return Difficulty.ULTIMATE;
+		return Difficulty.EASY;
+	}
+	
+	private void selectDifficulty(Difficulty difficulty) {
+		JRadioButtonMenuItem[] difficultyItems = {easyItem, mediumItem, hardItem, veryHardItem, ultimateItem};
+		difficultyItems[ difficulty.ordinal() ].setSelected(true);
+	}
+	
+	private void initProblemSet(Level level) {
+		racing = false;
+		Difficulty difficulty = getSelectedDifficulty();
+		initProblemSet( level, difficulty, level.newProblemSet(difficulty) );
+	}
+	
+	private void initProblemSet(Level level, Difficulty difficulty, ProblemSet problemSet) {
+		this.level = level;
+		this.difficulty = difficulty;
+		saveRecording();
+		if( recordingsPath != null )
+			recording = new SessionRecording(level, difficulty, problemSet);
+		initProblemSet( problemSet, level.getTitle(difficulty) );
+	}
+	
+	private void showBestTimes() {
+		if( title == null ) {
+			JOptionPane.showMessageDialog(this, "Choose a level to start.", "Best Times", JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		StringBuilder message = new StringBuilder(title).append('\n');
+		int place = 1;
+		for( Leaderboard.Completion completion : leaderboard.getFastestTimes(title) )
+			message.append( String.format("%2d.  %s\n", place++, completion) );
+		if( place == 1 )
+			message.append("(not completed yet)");
+		JOptionPane.showMessageDialog(this, message.toString(), "Best Times", JOptionPane.INFORMATION_MESSAGE);
+	}
+	
+	/**
+	 * Shows the error rate and average answer time of each operator, and the
+	 * most missed facts, from the answer history.
+	 */
+	private void showAnswerStatistics() {
+		if( history.size() == 0 ) {
+			JOptionPane.showMessageDialog(this, "No problems have been answered yet.", "Answer Statistics", JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+		StringBuilder message = new StringBuilder( history.aggregate().toString() ).append("\n\n");
+		AnswerHistory.Groups operators = history.byOperator();
+		for( int o = 0; o < 4; o++ ) {
+			AnswerHistory.Aggregate aggregate = operators.get(o);
+			if( aggregate != null )
+				message.append( String.format("%c  %s\n", MathProblem.operator(o), aggregate) );
+		}
+		AnswerHistory.Groups facts = history.byFact();
+		message.append("\nMost missed:\n");
+		int shown = 0;
+		for( long fact : facts.byErrorRate(2) ) {
+			if( shown == 10 || facts.getErrors(fact) == 0 )
+				break;
+			message.append( String.format("%s  %s\n", MathProblem.toString(fact), facts.get(fact)) );
+			shown++;
+		}
+		if( shown == 0 )
+			message.append("(none)");
+		JOptionPane.showMessageDialog(this, message.toString(), "Answer Statistics", JOptionPane.INFORMATION_MESSAGE);
+	}
+	
+	/**
+	 * Asks the user where to save something, and to confirm overwriting it.
+	 * 
+	 * @return The file chosen, or <code>null</code> to not save.
+	 */
+	private File chooseSaveFile() {
+		if( fileChooser == null )
+			fileChooser = new JFileChooser();
+		if( fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION )
+			return null;
+		File file = fileChooser.getSelectedFile();
+		if( file.exists() && JOptionPane.YES_OPTION != JOptionPane.showConfirmDialog( this,
+				"File \"" + file + "\" already exists. Are you sure you want to overwrite it?",
+				"Overwirte?", JOptionPane.YES_NO_OPTION) )
+		{
+			return null; // do not save
+		}
+		return file;
+	}
+	
+	private void exportAnswerTimes() {
+		File file = chooseSaveFile();
+		if( file != null ) {
+			try( Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8) ) {
+				out.write("-- Answer times by level --\n\n");
+				for( Level level : Level.values() )
+					levelLatencies[ level.ordinal() ].export(out, level.toString());
+				out.write("-- Answer times by operator --\n\n");
+				char[] operators = {MathProblem.PLUS, MathProblem.MINUS, MathProblem.TIMES, MathProblem.DIVIDE};
+				for( char operator : operators )
+					operatorLatencies[ MathProblem.operatorIndex(operator) ].export(out, Character.toString(operator));
+			} catch (IOException ex) {
+				JOptionPane.showMessageDialog(this, ex.getMessage(), ex.getClass().getName(), JOptionPane.ERROR_MESSAGE);
 			}
-			try( Writer fileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) ) {
-				StringBuffer buffer = writer.getBuffer();
-				for( int i = 0; i < buffer.length(); i++ )
-					fileWriter.write( buffer.charAt(i) );
-				fileWriter.write( getIncompleteProblemSetFooter() );
-				fileWriter.flush();
-				savedChars = buffer.length();
+		}
+	}
+	
+	private void exportLatencyReport() {
+		File file = chooseSaveFile();
+		if( file != null ) {
+			try( Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8) ) {
+				latencyMonitor.export(out);
 			} catch (IOException ex) {
 				JOptionPane.showMessageDialog(this, ex.getMessage(), ex.getClass().getName(), JOptionPane.ERROR_MESSAGE);
 			}
 		}
 	}
 	
+	private void save() {
+		save( () -> {} );
+	}
+	
+	/**
+	 * Saves the log, as it is now, to a file the user chooses. The file is
+	 * written by the journal's background thread; <code>andThen</code> is run
+	 * on the EDT once it has been (or the save failed, or the user chose not
+	 * to save.)
+	 */
+	private void save(Runnable andThen) {
+		File file = chooseSaveFile();
+		if( file == null ) {
+			andThen.run();
+			return;
+		}
+		long length = journal.getLength();
+		journal.copyTo( file.toPath(), getIncompleteProblemSetFooter() ).whenComplete( (result, failure) -> EventQueue.invokeLater(() -> {
+			if( failure != null ) {
+				JOptionPane.showMessageDialog(this, failure.getMessage(), failure.getClass().getName(), JOptionPane.ERROR_MESSAGE);
+			} else {
+				savedChars = length;
+				checkpoint();
+			}
+			andThen.run();
+		}));
+	}
+	
+	/**
+	 * Hosts a race on this computer (on the <code>mathgame.racePort</code>
+	 * property, or {@link RaceServer#DEFAULT_PORT}), and joins it.
+	 */
+	private void hostRace() {
+		try {
+			raceServer = new RaceServer( Integer.getInteger("mathgame.racePort", RaceServer.DEFAULT_PORT) );
+			joinRace( new InetSocketAddress(InetAddress.getLoopbackAddress(), raceServer.getPort()) );
+			String host;
+			try {
+				host = InetAddress.getLocalHost().getHostAddress();
+			} catch(IOException e) {
+				host = "this computer's address";
+			}
+			JOptionPane.showMessageDialog(this,
+					"Other players can join at " + host + ":" + raceServer.getPort() + "\nChoose Race > Start the Race when everyone has joined.",
+					"Host a Race", JOptionPane.INFORMATION_MESSAGE);
+		} catch(IOException e) {
+			leaveRace();
+			JOptionPane.showMessageDialog(this, "Could not host a race: " + e.getMessage(), "Host a Race", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+	
+	/**
+	 * Asks for the address (<code>host[:port]</code>) of a race, and joins it.
+	 */
+	private void joinRace() {
+		String address = JOptionPane.showInputDialog(this, "The host's address (e.g. 192.168.1.2:" + RaceServer.DEFAULT_PORT + "):",
+				"Join a Race", JOptionPane.QUESTION_MESSAGE);
+		if( address == null || address.trim().isEmpty() )
+			return;
+		address = address.trim();
+		int port = RaceServer.DEFAULT_PORT;
+		int colon = address.lastIndexOf(':');
+		try {
+			if( colon >= 0 && address.indexOf(':') == colon ) { // not an IPv6 address
+				port = Integer.parseInt( address.substring(colon + 1) );
+				address = address.substring(0, colon);
+			}
+			joinRace( InetSocketAddress.createUnresolved(address, port) ); // resolved by the client's thread
+		} catch(IOException | IllegalArgumentException e) {
+			leaveRace();
+			JOptionPane.showMessageDialog(this, "Could not join the race: " + e.getMessage(), "Join a Race", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+	
+	/**
+	 * Starts joining the race at <code>address</code>; the connection is made
+	 * in the background, and a failure is reported by the listener.
+	 */
+	private void joinRace(InetSocketAddress address) throws IOException {
+		RaceListener listener = new RaceListener();
+		raceClient = listener.client = new RaceClient( address, System.getProperty("user.name"), listener );
+		updateRaceMenu();
+	}
+	
+	/**
+	 * Starts the race (if hosting): every player plays the chosen level, at
+	 * the selected difficulty, with the same problems.
+	 */
+	private void startRace() {
+		Level level = (Level) JOptionPane.showInputDialog(this, "Level:", "Start the Race", JOptionPane.QUESTION_MESSAGE, null,
+				Level.values(), this.level != null ? this.level : Level.LEVEL_2);
+		if( level != null && raceServer != null )
+			raceServer.startRace( level, getSelectedDifficulty(), ThreadLocalRandom.current().nextLong() );
+	}
+	
+	private void leaveRace() {
+		racing = false;
+		if( raceClient != null ) {
+			raceClient.close();
+			raceClient = null;
+		}
+		if( raceServer != null ) {
+			raceServer.close();
+			raceServer = null;
+		}
+		raceLanes.clear();
+		racePanel.removeAll();
+		racePanel.revalidate();
+		racePanel.repaint();
+		updateRaceMenu();
+	}
+	
+	private void updateRaceMenu() {
+		hostRaceItem.setEnabled( raceClient == null );
+		joinRaceItem.setEnabled( raceClient == null );
+		startRaceItem.setEnabled( raceServer != null );
+		leaveRaceItem.setEnabled( raceClient != null );
+	}
+	
+	private void sendRaceProgress() {
+		raceClient.progress( problemSet.getPoints(), problemSet.getCorrectCount(), problemSet.getIncorrectCount() );
+	}
+	
+	/**
+	 * Hands the race's messages to the EDT, and ignores those of a race which
+	 * has since been left.
+	 */
+	private class RaceListener implements RaceClient.Listener {
+		RaceClient client;
+		
+		public void welcome(int playerId) {
+			// the client keeps the id
+		}
+		
+		public void joined(int playerId, String name) {
+			EventQueue.invokeLater(() -> {
+				if( raceClient != client || playerId == client.getPlayerId() )
+					return;
+				RaceLane lane = new RaceLane(name, chalkboard);
+				if( racing )
+					lane.progressBar.reset( 0, problemSet != null ? problemSet.getGoal() : progressBar.getMax(), 0 );
+				raceLanes.put(playerId, lane);
+				racePanel.add(lane);
+				racePanel.revalidate();
+			});
+		}
+		
+		public void left(int playerId) {
+			EventQueue.invokeLater(() -> {
+				RaceLane lane;
+				if( raceClient != client || (lane = raceLanes.remove(playerId)) == null )
+					return;
+				racePanel.remove(lane);
+				racePanel.revalidate();
+				racePanel.repaint();
+			});
+		}
+		
+		public void started(Level level, Difficulty difficulty, long seed) {
+			EventQueue.invokeLater(() -> {
+				if( raceClient != client )
+					return;
+				selectDifficulty(difficulty);
+				racing = true;
+				ProblemSet problemSet = level.newProblemSet(difficulty, seed);
+				for( RaceLane lane : raceLanes.values() ) {
+					lane.label.setText(lane.name);
+					lane.progressBar.reset( 0, problemSet.getGoal(), 0 );
+				}
+				initProblemSet(level, difficulty, problemSet);
+			});
+		}
+		
+		public void progress(int playerId, int points, int correctCount, int incorrectCount) {
+			EventQueue.invokeLater(() -> {
+				RaceLane lane;
+				if( raceClient == client && (lane = raceLanes.get(playerId)) != null )
+					lane.progressBar.setValue(points);
+			});
+		}
+		
+		public void finished(int playerId, int place, long millis) {
+			EventQueue.invokeLater(() -> {
+				if( raceClient != client )
+					return;
+				if( playerId == client.getPlayerId() ) {
+					rightLabel.setText( String.format("(#%d of %d)", place, raceLanes.size() + 1) );
+				} else {
+					RaceLane lane = raceLanes.get(playerId);
+					if( lane != null )
+						lane.label.setText("#" + place + " " + lane.name);
+				}
+			});
+		}
+		
+		public void connectFailed(IOException e) {
+			EventQueue.invokeLater(() -> {
+				if( raceClient != client )
+					return;
+				leaveRace();
+				JOptionPane.showMessageDialog(MathGameGUI.this, "Could not join the race: " + e.getMessage(), "Join a Race", JOptionPane.ERROR_MESSAGE);
+			});
+		}
+		
+		public void disconnected() {
+			EventQueue.invokeLater(() -> {
+				if( raceClient != client )
+					return; // left on purpose
+				leaveRace();
+				JOptionPane.showMessageDialog(MathGameGUI.this, "The connection to the race was lost.", "Race", JOptionPane.WARNING_MESSAGE);
+			});
+		}
+	}
+	
 	
 	public MathGameGUI() {
 		super("Math Game");
+		try {
+			journal = SessionJournal.createTemporary();
+		} catch(IOException e) {
+			throw new UncheckedIOException("could not create the game log", e);
+		}
+		GameMetrics.getInstance().setJournal(journal);
+		// each game has a checkpoint of its own, named after this one
+		Path checkpointPath = Paths.get( System.getProperty("mathgame.checkpoint",
+				Paths.get(System.getProperty("java.io.tmpdir"), "Math Game.checkpoint").toString()) );
+		try {
+			resumable = Checkpointer.findOrphan(checkpointPath);
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		try {
+			checkpointer = Checkpointer.create(checkpointPath, journal);
+		} catch(IOException e) {
+			throw new UncheckedIOException("could not create the checkpoint", e);
+		}
+		String binaryLogPath = System.getProperty("mathgame.binaryLog");
+		if( binaryLogPath != null ) {
+			try {
+				binaryLog = new BinarySessionLog.Writer( Paths.get(binaryLogPath) );
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+		String recordingsPath = System.getProperty("mathgame.recordings");
+		if( recordingsPath != null )
+			this.recordingsPath = Paths.get(recordingsPath);
+		for( int i = 0; i < levelLatencies.length; i++ )
+			levelLatencies[i] = new LatencyHistogram();
+		for( int i = 0; i < operatorLatencies.length; i++ )
+			operatorLatencies[i] = new LatencyHistogram();
 		JPanel panel = new JPanel( new BorderLayout() );
 		
 		chalkboard = new Chalkboard(8, 5, 16) {
 			public void correct() {
 				if( problemSet == null )
 					return;
-				MathProblem pr = problemSet.getCurrentProblem();
-				String prStr = String.format("%d %c %d = %s", pr.operand1, pr.operator, pr.operand2, getGuess());
-				writer.write( String.format("%3d.  %-30s  \u2713\n", problemSet.getCurrentProblemNumber(), prStr) );
+				long nanos = System.nanoTime() - problemTimestamp;
+				recordAnswerTime(nanos);
+				latencyMonitor.beginLogging();
+				journal.write( formatLogLine(problemSet.getCurrentProblemNumber(), problemSet.getCurrentProblem(), getGuess(), true) );
+				logBinary(true, nanos);
+				latencyMonitor.endLogging();
+				history.append( problemSet.getCurrentProblem(), getGuessValue(), true, nanos );
+				int points = problemSet.getPoints();
 				problemSet.correct();
+				GameMetrics.getInstance().answered(true);
+				recordAnswer(true);
+				player.correct( problemSet.getPoints() - points );
 				nextProblem();
 			}
 			
 			public void incorrect() {
-				if( problemSet == null || chalkboard.getGuess().trim().length() == 0 )
+				if( problemSet == null || isGuessEmpty() )
 					return;
-				MathProblem pr = problemSet.getCurrentProblem();
-				String prStr = String.format("%d %c %d = %s", pr.operand1, pr.operator, pr.operand2, getGuess());
-				writer.write( String.format("%3d.  %-30s  \u2717\n", problemSet.getCurrentProblemNumber(), prStr) );
+				long nanos = System.nanoTime() - problemTimestamp;
+				recordAnswerTime(nanos);
+				latencyMonitor.beginLogging();
+				journal.write( formatLogLine(problemSet.getCurrentProblemNumber(), problemSet.getCurrentProblem(), getGuess(), false) );
+				logBinary(false, nanos);
+				latencyMonitor.endLogging();
+				history.append( problemSet.getCurrentProblem(), getGuessValue(), false, nanos );
+				int points = problemSet.getPoints();
 				problemSet.incorrect();
+				GameMetrics.getInstance().answered(false);
+				recordAnswer(false);
+				player.incorrect( problemSet.getPoints() - points );
 				nextProblem();
 			}
 		};
+		chalkboard.setInputLatencyMonitor(latencyMonitor);
 		Border border = chalkboard.getBorder();
 		chalkboard.setBorder(null);
 		chalkboard.setTopOperand("Math");
@@ -194,15 +823,22 @@ public class MathGameGUI extends JFrame implements ActionListener, WindowListene
 		panel.add(labelPanel, BorderLayout.PAGE_START);
 		panel.add(progressBar, BorderLayout.LINE_START);
 		panel.add(chalkboard, BorderLayout.CENTER);
+		racePanel.setBorder( BorderFactory.createEmptyBorder(0, 0, 16, 16) );
+		racePanel.setOpaque(false);
+		panel.add(racePanel, BorderLayout.LINE_END);
 		
-		JMenuBar menuBar = new JMenuBar();
 		JMenu fileMenu = new JMenu("File");
 		JMenu levelMenu = new JMenu("Level");
 		JMenu difficultyMenu = new JMenu("Difficulty");
+		JMenu raceMenu = new JMenu("Race");
 		menuBar.add(fileMenu);
 		menuBar.add(levelMenu);
 		menuBar.add(difficultyMenu);
+		menuBar.add(raceMenu);
 		fileMenu.add(saveItem);
+		fileMenu.add(bestTimesItem);
+		fileMenu.add(answerStatisticsItem);
+		fileMenu.add(exportTimesItem);
 		fileMenu.addSeparator();
 		fileMenu.add(exitItem);
 		levelMenu.add(additionItem);
@@ -217,7 +853,16 @@ public class MathGameGUI extends JFrame implements ActionListener, WindowListene
 		difficultyMenu.add(hardItem);
 		difficultyMenu.add(veryHardItem);
 		difficultyMenu.add(ultimateItem);
+		raceMenu.add(hostRaceItem);
+		raceMenu.add(joinRaceItem);
+		raceMenu.add(startRaceItem);
+		raceMenu.addSeparator();
+		raceMenu.add(leaveRaceItem);
+		updateRaceMenu();
 		saveItem.addActionListener(this);
+		bestTimesItem.addActionListener(this);
+		answerStatisticsItem.addActionListener(this);
+		exportTimesItem.addActionListener(this);
 		exitItem.addActionListener(this);
 		additionItem.addActionListener(this);
 		subtractionItem.addActionListener(this);
@@ -228,6 +873,10 @@ public class MathGameGUI extends JFrame implements ActionListener, WindowListene
 		easyItem.addActionListener(this);
 		mediumItem.addActionListener(this);
 		hardItem.addActionListener(this);
+		hostRaceItem.addActionListener(this);
+		joinRaceItem.addActionListener(this);
+		startRaceItem.addActionListener(this);
+		leaveRaceItem.addActionListener(this);
 		ButtonGroup difficultyGroup = new ButtonGroup();
 		difficultyGroup.add(easyItem);
 		difficultyGroup.add(mediumItem);
@@ -246,6 +895,44 @@ public class MathGameGUI extends JFrame implements ActionListener, WindowListene
 		pack();
 		setLocationRelativeTo(null);
 	}
+	
+	/**
+	 * Finishes everything not needed to show the first frame, once it has been
+	 * shown: the Debug menu, and the input latency monitor and its overlay.
+	 */
+	private void finishStartup() {
+		long millis = (System.nanoTime() - MathGame.START_NANOS) / 1_000_000;
+		long jvmMillis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+		GameMetrics.getInstance().firstFrame(jvmMillis);
+		if( Boolean.getBoolean("mathgame.startupReport") )
+			System.err.printf("time to first frame: %d ms since the JVM started, %d ms since main%n", jvmMillis, millis);
+		
+		JMenu debugMenu = new JMenu("Debug");
+		debugMenu.add(latencyOverlayItem);
+		debugMenu.add(exportLatencyItem);
+		latencyOverlayItem.addActionListener(this);
+		exportLatencyItem.addActionListener(this);
+		menuBar.add(debugMenu);
+		menuBar.revalidate();
+		setGlassPane( latencyMonitor.createOverlay() );
+		latencyMonitor.install();
+		
+		if( resumable != null ) {
+			resume(resumable);
+			resumable = null;
+		}
+		
+		if( Boolean.getBoolean("mathgame.exitAfterFirstFrame") ) // e.g. to train a class data sharing archive
+			dispatchEvent( new WindowEvent(this, WindowEvent.WINDOW_CLOSING) );
+	}
+	
+	public void paint(Graphics g) {
+		super.paint(g);
+		if( !firstFramePainted ) {
+			firstFramePainted = true;
+			EventQueue.invokeLater(this::finishStartup);
+		}
+	}
 
 	
 	public void actionPerformed(ActionEvent e) {
@@ -253,96 +940,69 @@ public class MathGameGUI extends JFrame implements ActionListener, WindowListene
 			
 			save();
 		
+		} else if( e.getSource() == bestTimesItem ) {
+			
+			showBestTimes();
+			
+		} else if( e.getSource() == answerStatisticsItem ) {
+			
+			showAnswerStatistics();
+			
+		} else if( e.getSource() == exportTimesItem ) {
+			
+			exportAnswerTimes();
+			
 		} else if( e.getSource() == exitItem ) {
 			
 			dispatchEvent( new WindowEvent(this, WindowEvent.WINDOW_CLOSING) );
 		
+		} else if( e.getSource() == latencyOverlayItem ) {
+			
+			getGlassPane().setVisible( latencyOverlayItem.isSelected() );
+			
+		} else if( e.getSource() == exportLatencyItem ) {
+			
+			exportLatencyReport();
+			
 		} else if( e.getSource() == additionItem ) {
 			
-			if( easyItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 12, 1, 12, '+', new TreeMap<>(), 10, 1.25), "-- Addition, Easy --" );
-			else if( mediumItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 99, 1, 99, '+', new TreeMap<>(), 20, 2.0), "-- Addition, Medium --" );
-			else if( hardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 999, 1, 999, '+', new TreeMap<>(), 25, 3.0), "-- Addition, Hard --" );
-			else if( veryHardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 9999, 1, 9999, '+', new TreeMap<>(), 20, 4.0), "-- Addition, Very Hard --" );
-			else if( ultimateItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 9999999, 1, 9999999, '+', new TreeMap<>(), 10, 5.0), "-- Addition, Ultimate --" );
+			initProblemSet(Level.ADDITION);
 			
 		} else if( e.getSource() == subtractionItem ) {
 			
-			if( easyItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 12, 1, 12, '-', new TreeMap<>(), 10, 1.25), "-- Subtraction, Easy --" );
-			else if( mediumItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 99, 1, 99, '-', new TreeMap<>(), 20, 2.0), "-- Subtraction, Medium --" );
-			else if( hardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 999, 1, 999, '-', new TreeMap<>(), 25, 3.0), "-- Subtraction, Hard --" );
-			else if( veryHardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 9999, 1, 9999, '-', new TreeMap<>(), 20, 4.0), "-- Subtraction, Very Hard --" );
-			else if( ultimateItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 9999999, 1, 9999999, '-', new TreeMap<>(), 10, 5.0), "-- Subtraction, Ultimate --" );
+			initProblemSet(Level.SUBTRACTION);
 			
 		} else if( e.getSource() == level1Item ) {
 			
-			TreeMap<Character, Double> weights = new TreeMap<>();
-			weights.put('-', 0.5);
-			
-			if( easyItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 12, 1, 12, '+', weights, 10, 1.25), "-- Level 1, Easy --" );
-			else if( mediumItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 99, 1, 99, '+', weights, 20, 2.0), "-- Level 1, Medium --" );
-			else if( hardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 999, 1, 999, '+', weights, 25, 3.0), "-- Level 1, Hard --" );
-			else if( veryHardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 9999, 1, 9999, '+', weights, 20, 4.0), "-- Level 1, Very Hard --" );
-			else if( ultimateItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 9999999, 1, 9999999, '+', weights, 10, 5.0), "-- Level 1, Ultimate --" );
+			initProblemSet(Level.LEVEL_1);
 			
 		} else if( e.getSource() == multiplicationItem ) {
 			
-			if( easyItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 6, 1, 6, '*', new TreeMap<>(), 10, 1.25), "-- Multiplication, Easy --" );
-			else if( mediumItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 12, 1, 12, '*', new TreeMap<>(), 20, 2.0), "-- Multiplication, Medium --" );
-			else if( hardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 99, 1, 99, '*', new TreeMap<>(), 25, 3.0), "-- Multiplication, Hard --" );
-			else if( veryHardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 999, 1, 99, '*', new TreeMap<>(), 20, 4.0), "-- Multiplication, Very Hard --" );
-			else if( ultimateItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 9999, 1, 9999, '*', new TreeMap<>(), 10, 5.0), "-- Multiplication, Ultimate --" );
+			initProblemSet(Level.MULTIPLICATION);
 			
 		} else if( e.getSource() == divisionItem ) {
 			
-			if( easyItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 6, 1, 6, '/', new TreeMap<>(), 10, 2), "-- Division, Easy --" );
-			else if( mediumItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 12, 1, 12, '/', new TreeMap<>(), 20, 2.0), "-- Division, Medium --" );
-			else if( hardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 99, 1, 99, '/', new TreeMap<>(), 25, 3.0), "-- Division, Hard --" );
-			else if( veryHardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 999, 1, 99, '/', new TreeMap<>(), 20, 4.0), "-- Division, Very Hard --" );
-			else if( ultimateItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 9999, 1, 9999, '/', new TreeMap<>(), 10, 5.0), "-- Division, Ultimate --" );
-			
+			initProblemSet(Level.DIVISION);
 			
 		} else if( e.getSource() == level2Item ) {
 			
-			TreeMap<Character, Double> weights = new TreeMap<>();
-			weights.put('-', 0.1);
-			weights.put('*', 0.4);
-			weights.put('/', 0.4);
-			
-			if( easyItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 6, 1, 6, '+', weights, 10, 2), "-- Level 2, Easy --" );
-			else if( mediumItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 12, 1, 12, '+', weights, 20, 3), "-- Level 2, Medium --" );
-			else if( hardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 99, 1, 99, '+', weights, 30, 5), "-- Level 2, Hard --" );
-			else if( veryHardItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 999, 1, 99, '+', weights, 30, 5), "-- Level 2, Very Hard --" );
-			else if( ultimateItem.isSelected() )
-				initProblemSet( new ProblemSet(1, 9999, 1, 9999, '+', weights, 10, 5), "-- Level 2, Ultimate --" );
+			initProblemSet(Level.LEVEL_2);
+			
+		} else if( e.getSource() == hostRaceItem ) {
+			
+			hostRace();
+			
+		} else if( e.getSource() == joinRaceItem ) {
+			
+			joinRace();
+			
+		} else if( e.getSource() == startRaceItem ) {
+			
+			startRace();
+			
+		} else if( e.getSource() == leaveRaceItem ) {
+			
+			leaveRace();
 			
 		} else if( e.getSource() == easyItem ) {
 			
@@ -364,15 +1024,22 @@ public class MathGameGUI extends JFrame implements ActionListener, WindowListene
 	}
 
 	public void windowClosing(WindowEvent e) {
-		while( savedChars != writer.getBuffer().length() ) {
+		confirmClose();
+	}
+	
+	/**
+	 * Closes the window, once the user has saved (or chosen not to save) the
+	 * problems which have not been.
+	 */
+	private void confirmClose() {
+		if( savedChars != journal.getLength() ) {
 			int confirmResult = JOptionPane.showConfirmDialog( this,
 					"Some of the problems you have done have not been saved. Would you like to save them now?",
 					"Save before exiting?", JOptionPane.YES_NO_CANCEL_OPTION );
 			if( confirmResult == JOptionPane.YES_OPTION ) {
-				save();
-			} else if( confirmResult == JOptionPane.NO_OPTION ) {
-				break;
-			} else /* if( confirmResult == JOptionPane.CANCEL_OPTION ) */ {
+				save(this::confirmClose); // and ask again, if that did not save them
+				return;
+			} else if( confirmResult != JOptionPane.NO_OPTION ) /* CANCEL_OPTION */ {
 				return; // without disposing
 			}
 		}
@@ -380,6 +1047,15 @@ public class MathGameGUI extends JFrame implements ActionListener, WindowListene
 	}
 
 	public void windowClosed(WindowEvent e) {
+		leaveRace();
+		checkpointer.close();
+		try {
+			journal.close();
+		} catch(IOException ex) {
+			ex.printStackTrace();
+		}
+		closeBinaryLog();
+		saveRecording();
 		System.exit(0);
 	}
 
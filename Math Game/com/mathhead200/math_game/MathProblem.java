@@ -5,6 +5,8 @@ public class MathProblem {
 	public static final char MINUS = '-';
 	public static final char TIMES = '\u00D7';
 	public static final char DIVIDE = '\u00F7';
+	/** The value of a guess which is not a number (see {@link #parseGuess(CharSequence)}.) */
+	public static final int NO_GUESS = Integer.MIN_VALUE;
 	
 	public final int operand1;
 	public final char operator;
@@ -12,21 +14,24 @@ public class MathProblem {
 	public final int result;
 	public final int points;
 	
+	/**
+	 * @throws ArithmeticException If the result does not fit in an int.
+	 */
 	public MathProblem(int operand1, char operator, int operand2) {
 		this.operand1 = operand1;
-		this.operator = (operator == '*' ? TIMES : operator == '/' ? DIVIDE : operator);
+		this.operator = canonicalOperator(operator);
 		this.operand2 = operand2;
 		
 		if( this.operator == PLUS ) {
-			result = operand1 + operand2;
+			result = Math.addExact(operand1, operand2);
 			points = result;
 		} else if( this.operator == MINUS ) {
 			if( operand2 > operand1 )
 				throw new IllegalArgumentException("for '-', operand1 must be greater then or equal to operand2: " + operand1 + " - " + operand2);
-			result = operand1 - operand2;
+			result = Math.subtractExact(operand1, operand2);
 			points = operand1;
 		} else if( this.operator == TIMES ) {
-			result = operand1 * operand2;
+			result = Math.multiplyExact(operand1, operand2);
 			points = result;
 		} else if( this.operator == DIVIDE ) {
 			if( operand1 % operand2 != 0  )
@@ -38,6 +43,132 @@ public class MathProblem {
 		}
 	}
 	
+	/**
+	 * Trusted constructor for problems whose result and points have already
+	 * been computed (e.g. by {@link ProblemSet#generate}).
+	 */
+	MathProblem(int operand1, char operator, int operand2, int result, int points) {
+		this.operand1 = operand1;
+		this.operator = operator;
+		this.operand2 = operand2;
+		this.result = result;
+		this.points = points;
+	}
+	
+	static char canonicalOperator(char operator) {
+		return operator == '*' ? TIMES : operator == '/' ? DIVIDE : operator;
+	}
+	
+	/**
+	 * @return The guess as an int, or {@link #NO_GUESS} if it is not an int
+	 *         written the way {@link Integer#toString(int)} writes it (e.g.
+	 *         "012", "-" or "-0"); so a guess parses to the result exactly when
+	 *         the {@link Chalkboard} scores it as correct, which compares the
+	 *         chars.
+	 */
+	public static int parseGuess(CharSequence guess) {
+		return parseGuess( guess.toString().toCharArray(), guess.length() );
+	}
+	
+	/**
+	 * The same as {@link #parseGuess(CharSequence)}, for the first
+	 * <code>length</code> chars of <code>guess</code>.
+	 */
+	static int parseGuess(char[] guess, int length) {
+		boolean negative = length > 0 && guess[0] == '-';
+		int i = negative ? 1 : 0;
+		if( i == length || (guess[i] == '0' && (negative || length - i > 1)) )
+			return NO_GUESS; // empty, or not canonical
+		long limit = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+		long value = 0;
+		for( ; i < length; i++ ) {
+			char c = guess[i];
+			if( c < '0' || c > '9' || (value = value * 10 + (c - '0')) > limit )
+				return NO_GUESS;
+		}
+		return (int) (negative ? -value : value);
+	}
+	
+	/**
+	 * Packs a problem into a <code>long</code>: the operator in the top 2 bits,
+	 * and the low 31 bits of each operand below it. Equal problems always have
+	 * equal keys, and problems with non-negative operands have unique keys.
+	 */
+	public static long key(int operand1, char operator, int operand2) {
+		return (long) operatorIndex(operator) << 62 | (operand1 & 0x7FFFFFFFL) << 31 | (operand2 & 0x7FFFFFFFL);
+	}
+	
+	/**
+	 * The inverse of {@link #key(int, char, int)}, for operands in
+	 * [-2<sup>30</sup>, 2<sup>30</sup>).
+	 */
+	static int keyOperand1(long key) {
+		return (int) (key << 2 >> 33);
+	}
+	
+	/**
+	 * @see #keyOperand1(long)
+	 */
+	static char keyOperator(long key) {
+		return operator( (int) (key >>> 62) );
+	}
+	
+	/**
+	 * @see #keyOperand1(long)
+	 */
+	static int keyOperand2(long key) {
+		return (int) (key << 33 >> 33);
+	}
+	
+	/**
+	 * @return The problem with the given key, e.g. "7 &times; 8".
+	 */
+	static String toString(long key) {
+		return keyOperand1(key) + " " + keyOperator(key) + " " + keyOperand2(key);
+	}
+	
+	/**
+	 * @return The operator with the given {@link #operatorIndex(char) index}.
+	 */
+	static char operator(int index) {
+		switch( index ) {
+		case 0:
+			return PLUS;
+		case 1:
+			return MINUS;
+		case 2:
+			return TIMES;
+		case 3:
+			return DIVIDE;
+		default:
+			throw new IllegalArgumentException("unrecognized operator index: " + index);
+		}
+	}
+	
+	/**
+	 * @return 0, 1, 2 or 3 for {@link #PLUS}, {@link #MINUS}, {@link #TIMES}
+	 *         or {@link #DIVIDE} respectively.
+	 */
+	static int operatorIndex(char operator) {
+		operator = canonicalOperator(operator);
+		if( operator == PLUS )
+			return 0;
+		if( operator == MINUS )
+			return 1;
+		if( operator == TIMES )
+			return 2;
+		if( operator == DIVIDE )
+			return 3;
+		throw new IllegalArgumentException("unrecognized operator: " + operator);
+	}
+	
+	/**
+	 * @see #key(int, char, int)
+	 */
+	public long key() {
+		return key(operand1, operator, operand2);
+	}
+	
 	public String toString() {
 		return String.format("%d %c %d = %d", operand1, operator, operand2, result);
 	}
@@ -52,4 +183,16 @@ public class MathProblem {
 		    && operator == prob.operator
 		    && operand2 == prob.operand2;
 	}
+	
+	public int hashCode() {
+		return hash( key() );
+	}
+	
+	/**
+	 * Mixes a {@link #key()} so that its low bits depend on both operands.
+	 */
+	static int hash(long key) {
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ key >>> 32);
+	}
 }
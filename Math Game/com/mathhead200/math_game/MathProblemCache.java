@@ -0,0 +1,146 @@
+package com.mathhead200.math_game;
+
+/**
+ * Canonical, shared {@link MathProblem} instances, so that a problem set which
+ * keeps generating the same problems does not keep creating new objects.
+ *
+ * If the problem set can only generate a small number of distinct problems
+ * (e.g. Easy Multiplication has 12 &times; 12), every problem is kept forever
+ * in an open addressing table indexed by {@link MathProblem#key()}, and
+ * looking one up allocates nothing. Larger domains fall back to a bounded
+ * table of recently used problems: each key hashes to a bucket of
+ * {@value #WAYS} slots, and a miss replaces a slot of its bucket picked by
+ * the CLOCK algorithm (an approximation of LRU, which skips slots hit since
+ * the hand last passed.) Looking up a cached problem allocates nothing there
+ * either, and a miss allocates only the new problem.
+ *
+ * Not thread safe, but the problems it returns are immutable and may be
+ * shared freely.
+ */
+public class MathProblemCache {
+
+	/** The largest domain kept in full, without eviction. */
+	public static final int MAX_TABLE_DOMAIN = 1 << 16;
+	public static final int DEFAULT_LRU_CAPACITY = 4096;
+	/** The slots of each bucket of an LRU cache. */
+	public static final int WAYS = 4;
+
+	private final MathProblem[] table; // or null if this cache is an LRU
+	private final int mask;
+	private final int maxTableSize;
+	private int tableSize = 0;
+	// if this cache is an LRU: the buckets of slots, and their CLOCK state
+	private final MathProblem[] slots;
+	private final boolean[] referenced;
+	private final byte[] hands; // by bucket
+	private final int bucketMask;
+	private int slotCount = 0; // filled
+
+	/**
+	 * @param domainSize The (maximum) number of distinct problems which will be
+	 *                   looked up.
+	 */
+	public MathProblemCache(long domainSize, int lruCapacity) {
+		if( domainSize <= 0 )
+			throw new IllegalArgumentException("domainSize must be positive: " + domainSize);
+		if( domainSize <= MAX_TABLE_DOMAIN ) {
+			int capacity = Integer.highestOneBit( (int) domainSize * 2 - 1 ) << 1; // load factor <= 1/2
+			table = new MathProblem[capacity];
+			mask = capacity - 1;
+			maxTableSize = capacity - capacity / 4;
+			slots = null;
+			referenced = null;
+			hands = null;
+			bucketMask = 0;
+		} else {
+			if( lruCapacity <= 0 )
+				throw new IllegalArgumentException("lruCapacity must be positive: " + lruCapacity);
+			table = null;
+			mask = 0;
+			maxTableSize = 0;
+			int buckets = Integer.highestOneBit( Math.max(1, (lruCapacity + WAYS - 1) / WAYS * 2 - 1) ); // rounded to a power of 2
+			slots = new MathProblem[buckets * WAYS];
+			referenced = new boolean[buckets * WAYS];
+			hands = new byte[buckets];
+			bucketMask = buckets - 1;
+		}
+	}
+
+	public MathProblemCache(long domainSize) {
+		this(domainSize, DEFAULT_LRU_CAPACITY);
+	}
+
+	/**
+	 * @return <code>true</code> if every problem is kept, i.e. the domain
+	 *         was small enough for the table.
+	 */
+	public boolean isBounded() {
+		return table != null;
+	}
+
+	/**
+	 * @return The number of problems currently cached.
+	 */
+	public int size() {
+		return table != null ? tableSize : slotCount;
+	}
+
+	/**
+	 * @return The shared instance of <code>operand1 operator operand2</code>,
+	 *         creating it (with the given, already computed, result and points)
+	 *         if it is not cached.
+	 */
+	MathProblem get(int operand1, char operator, int operand2, int result, int points) {
+		long key = MathProblem.key(operand1, operator, operand2);
+		if( table != null ) {
+			for( int i = MathProblem.hash(key) & mask; ; i = (i + 1) & mask ) {
+				MathProblem problem = table[i];
+				if( problem == null ) {
+					problem = new MathProblem(operand1, operator, operand2, result, points);
+					if( tableSize < maxTableSize ) { // only if the domain was underestimated
+						table[i] = problem;
+						tableSize++;
+					}
+					return problem;
+				}
+				if( problem.operand1 == operand1 && problem.operator == operator && problem.operand2 == operand2 )
+					return problem;
+			}
+		} else {
+			int bucket = MathProblem.hash(key) & bucketMask;
+			int first = bucket * WAYS;
+			int empty = -1;
+			for( int i = first; i < first + WAYS; i++ ) {
+				MathProblem problem = slots[i];
+				if( problem == null ) {
+					empty = i;
+				} else if( problem.operand1 == operand1 && problem.operator == operator && problem.operand2 == operand2 ) {
+					referenced[i] = true;
+					return problem;
+				}
+			}
+			MathProblem problem = new MathProblem(operand1, operator, operand2, result, points);
+			int slot = empty >= 0 ? empty : evict(bucket);
+			if( slots[slot] == null )
+				slotCount++;
+			slots[slot] = problem;
+			referenced[slot] = false;
+			return problem;
+		}
+	}
+
+	/**
+	 * @return The slot of the full <code>bucket</code> to replace: the first,
+	 *         from its hand, which has not been hit since the hand passed it.
+	 */
+	private int evict(int bucket) {
+		int first = bucket * WAYS;
+		int hand = hands[bucket];
+		while( referenced[first + hand] ) {
+			referenced[first + hand] = false;
+			hand = (hand + 1) % WAYS;
+		}
+		hands[bucket] = (byte) ((hand + 1) % WAYS);
+		return first + hand;
+	}
+}
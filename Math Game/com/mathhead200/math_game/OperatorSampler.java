@@ -0,0 +1,82 @@
+package com.mathhead200.math_game;
+
+import java.util.Map;
+
+/**
+ * Draws operators from a weighted operator mix in constant time, using Vose's
+ * alias method.
+ *
+ * Each operator in <code>weights</code> is drawn with the probability of its
+ * weight, and <code>defaultOp</code> is drawn with whatever probability is
+ * left over (<code>1 - sum(weights)</code>), just as {@link ProblemSet} has
+ * always done.
+ */
+public class OperatorSampler {
+
+	private final char[] operators;
+	private final double[] probability;
+	private final int[] alias;
+
+	public OperatorSampler(Map<Character, Double> weights, char defaultOp) {
+		int n = weights.size() + 1;
+		operators = new char[n];
+		probability = new double[n];
+		alias = new int[n];
+
+		double[] p = new double[n];
+		double weightSum = 0;
+		int i = 0;
+		for( Map.Entry<Character, Double> entry : weights.entrySet() ) {
+			double weight = entry.getValue();
+			if( weight < 0 )
+				throw new IllegalArgumentException("weights must not be negative: " + entry.getKey() + "=" + weight);
+			operators[i] = entry.getKey();
+			p[i++] = weight;
+			weightSum += weight;
+		}
+		operators[i] = defaultOp;
+		p[i] = weightSum < 1 ? 1 - weightSum : 0;
+		double total = weightSum < 1 ? 1 : weightSum;
+
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int smallSize = 0;
+		int largeSize = 0;
+		for( i = 0; i < n; i++ ) {
+			alias[i] = i;
+			if( (p[i] = p[i] * n / total) < 1 )
+				small[smallSize++] = i;
+			else
+				large[largeSize++] = i;
+		}
+		while( smallSize > 0 && largeSize > 0 ) {
+			int s = small[--smallSize];
+			int l = large[--largeSize];
+			probability[s] = p[s];
+			alias[s] = l;
+			if( (p[l] = (p[l] + p[s]) - 1) < 1 )
+				small[smallSize++] = l;
+			else
+				large[largeSize++] = l;
+		}
+		// anything left over is (within rounding error) exactly 1
+		while( largeSize > 0 )
+			probability[large[--largeSize]] = 1;
+		while( smallSize > 0 )
+			probability[small[--smallSize]] = 1;
+	}
+
+	char next(RandomSource random) {
+		double u = random.nextDouble() * operators.length;
+		int i = Math.min( (int) u, operators.length - 1 );
+		return u - i < probability[i] ? operators[i] : operators[alias[i]];
+	}
+
+	/**
+	 * @return The number of columns in the alias table; i.e. the number of
+	 *         weighted operators plus one for the default operator.
+	 */
+	public int size() {
+		return operators.length;
+	}
+}
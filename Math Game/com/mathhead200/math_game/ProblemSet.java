@@ -3,44 +3,83 @@ package com.mathhead200.math_game;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Random;
-import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class ProblemSet implements Iterator<MathProblem> {
 	
-	private static final int MIN_GOAL = 50;
+	static final int MIN_GOAL = 50;
 	
 	private int min1;
 	private int range1;
 	private int min2;
 	private int range2;
-	private char defaultOp;
-	private TreeMap<Character, Double> weights;
+	private OperatorSampler operators;
+	private MathProblemCache problems;
 	private int goal;
 	
 	private double approxPointsPer;
 	private int loss;
 	
-	private Random random = new Random();
+	private final RandomSource random;
+	private long generated = 0; // problems drawn from random, so its state can be restored (see restore(...))
 	private int points = 0;
 	private int correctCount = 0;
 	private int incorrectCount = 0;
 	private MathProblem currProb = null;
 	private int currProbNum = 0;
 	
+	// single element scratch space used by next() to call generate(...)
+	private final int[] nextOperand1 = new int[1];
+	private final char[] nextOperator = new char[1];
+	private final int[] nextOperand2 = new int[1];
+	private final int[] nextResult = new int[1];
+	private final int[] nextPoints = new int[1];
+	
+	/**
+	 * A problem set with a random seed.
+	 * 
+	 * @throws IllegalArgumentException If a problem from these ranges could
+	 *                                  overflow an int.
+	 */
 	public ProblemSet(int min1, int max1, int min2, int max2, char defaultOp, Map<Character, Double> weights, int approxSize, double failMultiplier) {
+		this( min1, max1, min2, max2, defaultOp, weights, approxSize, failMultiplier, ThreadLocalRandom.current().nextLong() );
+	}
+	
+	/**
+	 * A problem set which generates exactly the same problems as any other
+	 * problem set with the same configuration and <code>seed</code>.
+	 * 
+	 * @throws IllegalArgumentException If a problem from these ranges could
+	 *                                  overflow an int.
+	 */
+	public ProblemSet(int min1, int max1, int min2, int max2, char defaultOp, Map<Character, Double> weights, int approxSize, double failMultiplier, long seed) {
+		this( min1, max1, min2, max2, defaultOp, weights, approxSize, failMultiplier, RandomSource.seeded(seed) );
+	}
+	
+	/**
+	 * A problem set which draws its problems from <code>random</code> (which
+	 * must be deterministic for its seed; see {@link RandomSource}.)
+	 * 
+	 * @throws IllegalArgumentException If a problem from these ranges could
+	 *                                  overflow an int.
+	 */
+	ProblemSet(int min1, int max1, int min2, int max2, char defaultOp, Map<Character, Double> weights, int approxSize, double failMultiplier, RandomSource random) {
+		this.random = random;
+		checkRange(min1, max1, min2, max2, defaultOp);
+		for( char op : weights.keySet() )
+			checkRange(min1, max1, min2, max2, op);
 		this.min1 = min1;
 		this.range1 = max1 - min1 + 1;
 		this.min2 = min2;
 		this.range2 = max2 - min2 + 1;
 		
-		this.defaultOp = defaultOp;
-		this.weights = new TreeMap<Character, Double>();
 		double weightSum = 0;
-		for( char op : weights.keySet() )
-			this.weights.put( op, weightSum += weights.get(op) );
+		for( double weight : weights.values() )
+			weightSum += weight;
 		if( weightSum > 1 )
 			throw new IllegalArgumentException("sum of weights must not be greater then 1: " + weightSum);
+		this.operators = new OperatorSampler(weights, defaultOp);
+		this.problems = new MathProblemCache( (long) range1 * range2 * operators.size() );
 		
 		double freqAdd = 0.0;
 		if( defaultOp == '+' || defaultOp == '-' )
@@ -56,16 +95,74 @@ public class ProblemSet implements Iterator<MathProblem> {
 			freqMul += weights.get('*');
 		if( weights.containsKey('/') )
 			freqMul += weights.get('/');
-		double approxPointsPerAdd = (min1 + max1 + min2 + max2) / 2.0;
-		double approxPointsPerMul = (min1 + max1) * (min2 + max2) / 4.0;
+		double approxPointsPerAdd = ((double) min1 + max1 + min2 + max2) / 2.0;
+		double approxPointsPerMul = ((double) min1 + max1) * ((double) min2 + max2) / 4.0;
 		approxPointsPer = freqAdd * approxPointsPerAdd + freqMul * approxPointsPerMul;
-		double expectedSize = approxSize * approxPointsPer;
+		this.goal = goal(approxPointsPer, approxSize);
+		this.loss = loss(approxPointsPer, failMultiplier);
+	}
+	
+	/**
+	 * @return The goal of a problem set of about <code>approxSize</code>
+	 *         problems, worth <code>approxPointsPer</code> points each: a
+	 *         multiple of a resolution of at least {@link #MIN_GOAL} points.
+	 */
+	static int goal(double approxPointsPer, int approxSize) {
 		int goalResolution = MIN_GOAL * (int) Math.ceil( 2 * approxPointsPer / MIN_GOAL );
-		this.goal = goalResolution * (int) Math.ceil(expectedSize / goalResolution);
-		
-		loss = (int) Math.round(failMultiplier * approxPointsPer);
+		return goalResolution * (int) Math.ceil(approxSize * approxPointsPer / goalResolution);
+	}
+	
+	/**
+	 * @return The points lost for an incorrect answer:
+	 *         <code>failMultiplier</code> problems' worth of points, rounded to
+	 *         one significant figure.
+	 */
+	static int loss(double approxPointsPer, double failMultiplier) {
+		int loss = (int) Math.round(failMultiplier * approxPointsPer);
+		if( loss <= 0 )
+			return 0;
 		int mostSigPlace = (int) Math.pow( 10, (int) Math.log10(loss) );
-		loss = (int) Math.round((double) loss / mostSigPlace) * mostSigPlace;
+		return (int) Math.round((double) loss / mostSigPlace) * mostSigPlace;
+	}
+	
+	/**
+	 * A new game of the same configuration as <code>parent</code>, drawing
+	 * from <code>random</code>. The operator table is immutable, so it is
+	 * shared.
+	 */
+	private ProblemSet(ProblemSet parent, RandomSource random) {
+		this.random = random;
+		this.min1 = parent.min1;
+		this.range1 = parent.range1;
+		this.min2 = parent.min2;
+		this.range2 = parent.range2;
+		this.operators = parent.operators;
+		this.problems = new MathProblemCache( (long) range1 * range2 * operators.size() );
+		this.goal = parent.goal;
+		this.approxPointsPer = parent.approxPointsPer;
+		this.loss = parent.loss;
+	}
+
+	/**
+	 * Checks, once up front, that no problem generate(...) could make with the
+	 * given operator overflows an int, so that generating problems needs no
+	 * checks at all.
+	 */
+	private static void checkRange(int min1, int max1, int min2, int max2, char op) {
+		if( min1 > max1 || min2 > max2 )
+			throw new IllegalArgumentException("min must not be greater then max: [" + min1 + ", " + max1 + "], [" + min2 + ", " + max2 + "]");
+		if( (long) max1 - min1 + 1 > Integer.MAX_VALUE || (long) max2 - min2 + 1 > Integer.MAX_VALUE )
+			throw new IllegalArgumentException("range is too wide for an int: [" + min1 + ", " + max1 + "], [" + min2 + ", " + max2 + "]");
+		op = MathProblem.canonicalOperator(op);
+		long[] corners;
+		if( op == MathProblem.PLUS || op == MathProblem.MINUS )
+			corners = new long[] { (long) min1 + min2, (long) max1 + max2 };
+		else
+			corners = new long[] { (long) min1 * min2, (long) min1 * max2, (long) max1 * min2, (long) max1 * max2 };
+		for( long corner : corners )
+			if( corner < Integer.MIN_VALUE || corner > Integer.MAX_VALUE )
+				throw new IllegalArgumentException("problems with '" + op + "' from [" + min1 + ", " + max1 + "] and ["
+						+ min2 + ", " + max2 + "] overflow an int");
 	}
 
 	public boolean hasNext() {
@@ -76,30 +173,142 @@ public class ProblemSet implements Iterator<MathProblem> {
 		if( !hasNext() )
 			throw new NoSuchElementException("this problem set has been completed");
 		
-		int num1 = min1 + random.nextInt(range1);
-		int num2 = min2 + random.nextInt(range2);
-		
-		Character operator = null;
-		double omega = random.nextDouble();
-		for( char op : weights.keySet() )
-			if( omega < weights.get(op) ) {
-				operator = op;
-				break;
-			}
-		if( operator == null )
-			operator = defaultOp;
-		
-		if( operator == '-' )
-			currProb = new MathProblem(num1 + num2, operator, num1);
-		else if( operator == '/')
-			currProb = new MathProblem(num1 * num2, operator, num1);
-		else
-			currProb = new MathProblem(num1, operator, num2);
+		generate(nextOperand1, nextOperator, nextOperand2, nextResult, nextPoints, 0, 1);
+		currProb = problems.get(nextOperand1[0], nextOperator[0], nextOperand2[0], nextResult[0], nextPoints[0]);
 		
 		currProbNum++;
 		return currProb;
 	}
 	
+	/**
+	 * Generates <code>count</code> problems from this problem set straight into
+	 * the given arrays, starting at index <code>offset</code>. Problem
+	 * <code>i</code> is <code>operand1[i] operator[i] operand2[i] = result[i]</code>,
+	 * and is worth <code>points[i]</code>; the values are exactly those of the
+	 * {@link MathProblem} {@link #next()} would have created.
+	 * 
+	 * This does not create any objects, and does not change the state of the
+	 * game (points, counts, or the current problem.)
+	 */
+	public void generate(int[] operand1, char[] operator, int[] operand2, int[] result, int[] points, int offset, int count) {
+		if( offset < 0 || count < 0 )
+			throw new IndexOutOfBoundsException("offset and count must not be negative: " + offset + ", " + count);
+		
+		for( int i = offset, end = offset + count; i < end; i++ ) {
+			int num1 = min1 + random.nextInt(range1);
+			int num2 = min2 + random.nextInt(range2);
+			char op = MathProblem.canonicalOperator( operators.next(random) );
+			
+			if( op == MathProblem.MINUS ) {
+				operand1[i] = num1 + num2;
+				operator[i] = MathProblem.MINUS;
+				operand2[i] = num1;
+				result[i] = num2;
+				points[i] = num1 + num2;
+			} else if( op == MathProblem.DIVIDE ) {
+				operand1[i] = num1 * num2;
+				operator[i] = MathProblem.DIVIDE;
+				operand2[i] = num1;
+				result[i] = num2;
+				points[i] = num1 * num2;
+			} else if( op == MathProblem.PLUS ) {
+				operand1[i] = num1;
+				operator[i] = MathProblem.PLUS;
+				operand2[i] = num2;
+				result[i] = points[i] = num1 + num2;
+			} else if( op == MathProblem.TIMES ) {
+				operand1[i] = num1;
+				operator[i] = MathProblem.TIMES;
+				operand2[i] = num2;
+				result[i] = points[i] = num1 * num2;
+			} else {
+				throw new IllegalArgumentException("unrecognized operator: " + op);
+			}
+		}
+		generated += count;
+	}
+	
+	/**
+	 * Splits off a new problem set of the same configuration, with its own
+	 * generator, and its own (new) game. Problem sets are not thread safe, but
+	 * each one split off can be used by a different thread, without contending
+	 * with any of the others.
+	 * 
+	 * The new problem set's generator is {@link RandomSource#split() split}
+	 * from this one's, and its seed drawn from this one's stream, so a
+	 * problem set, and everything split from it (in the same order), always
+	 * generates the same problems for the same seed; and (with the default
+	 * generator) each split problem set can still be reproduced on its own
+	 * from its {@link #getSeed()}.
+	 */
+	public ProblemSet split() {
+		return new ProblemSet( this, random.split() );
+	}
+	
+	/**
+	 * Starts a new game, with the given goal and loss, continuing this problem
+	 * set's stream of problems (see {@link GoalCalibrator}.)
+	 */
+	void restart(int goal, int loss) {
+		this.goal = goal;
+		this.loss = loss;
+		points = 0;
+		correctCount = 0;
+		incorrectCount = 0;
+		currProb = null;
+		currProbNum = 0;
+	}
+	
+	/**
+	 * @return The number of problems drawn from this problem set's generator
+	 *         (by {@link #next()} and {@link #generate}); with the seed, this
+	 *         is the generator's state, as long as nothing has been split off.
+	 */
+	long getGenerated() {
+		return generated;
+	}
+	
+	/**
+	 * Restores a game saved by {@link Checkpointer}, onto a new problem set of
+	 * the same level and seed: the generator is brought back to the same state
+	 * (by regenerating the first <code>generated</code> problems), and then the
+	 * score, counts and current problem are restored.
+	 * 
+	 * So this takes time proportional to <code>generated</code> (the
+	 * generator's state is not saved, since {@link RandomSource} does not
+	 * expose it); with the batch generator that is about 10 milliseconds per
+	 * hundred thousand problems, far more than any class plays.
+	 * 
+	 * @param current If the last problem generated has not been answered yet.
+	 */
+	void restore(long generated, int points, int correctCount, int incorrectCount, int currProbNum, boolean current) {
+		if( this.generated != 0 )
+			throw new IllegalStateException("the problem set has already been started");
+		if( generated < (current ? 1 : 0) )
+			throw new IllegalArgumentException("no problem has been generated to be current: " + generated);
+		int[] operand1 = new int[1024];
+		char[] operator = new char[1024];
+		int[] operand2 = new int[1024];
+		int[] result = new int[1024];
+		int[] problemPoints = new int[1024];
+		for( long skip = current ? generated - 1 : generated; skip > 0; skip -= operand1.length )
+			generate(operand1, operator, operand2, result, problemPoints, 0, (int) Math.min(skip, operand1.length));
+		this.points = points;
+		this.correctCount = correctCount;
+		this.incorrectCount = incorrectCount;
+		this.currProb = null;
+		if( current )
+			next();
+		this.currProbNum = currProbNum;
+	}
+	
+	/**
+	 * @return The seed this problem set was created with.
+	 */
+	public long getSeed() {
+		return random.getSeed();
+	}
+	
 	public int getGoal() {
 		return goal;
 	}
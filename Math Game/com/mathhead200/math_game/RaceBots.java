@@ -0,0 +1,198 @@
+package com.mathhead200.math_game;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Races bots against each other through a {@link RaceServer} on the loopback
+ * interface, and reports how long progress updates took to reach the other
+ * players (from just before a bot sends its progress, to when each other bot
+ * reads it), and checks that every bot was given the same problems.
+ *
+ * Usage: <code>java com.mathhead200.math_game.RaceBots [&lt;players&gt;
+ * [&lt;level&gt; &lt;difficulty&gt; [&lt;answers per second&gt;]]]</code>,
+ * where each bot answers about <code>answers per second</code> problems a
+ * second, 90% of them correctly.
+ */
+public class RaceBots {
+
+	public static final int DEFAULT_PLAYERS = 32;
+	public static final double DEFAULT_ANSWERS_PER_SECOND = 10;
+	private static final double ACCURACY = 0.9;
+	private static final int CHECKED_PROBLEMS = 20; // the problems compared between bots
+	private static final long MAX_LATENCY = 60_000_000_000L; // 1 minute in ns
+
+	private final ConcurrentHashMap<Integer, Bot> bots = new ConcurrentHashMap<>();
+	private final CountDownLatch finished;
+
+	private RaceBots(int players) {
+		finished = new CountDownLatch(players);
+	}
+
+	private class Bot implements RaceClient.Listener {
+		final String name;
+		final SplittableRandom random;
+		RaceClient client;
+		volatile int id = 0;
+		final CountDownLatch welcomed = new CountDownLatch(1);
+		volatile int playersKnown = 0;
+		volatile ProblemSet problemSet = null;
+		final long[] problems = new long[CHECKED_PROBLEMS]; // keys of the first problems
+		int answers = 0;
+		// when each answer's progress was sent, by answers mod the length
+		final AtomicLongArray sentNanos = new AtomicLongArray(1024);
+		// confined to the client's thread
+		final LatencyHistogram latencies = new LatencyHistogram(MAX_LATENCY);
+		volatile int place = 0;
+
+		Bot(String name, long seed) {
+			this.name = name;
+			this.random = new SplittableRandom(seed);
+		}
+
+		/**
+		 * Answers the current problem, and sends the progress.
+		 */
+		void answer() {
+			ProblemSet problemSet = this.problemSet;
+			if( problemSet == null || !problemSet.hasNext() || client == null )
+				return;
+			MathProblem problem = problemSet.next();
+			if( answers < CHECKED_PROBLEMS )
+				problems[answers] = problem.key();
+			if( random.nextDouble() < ACCURACY )
+				problemSet.correct();
+			else
+				problemSet.incorrect();
+			answers++;
+			sentNanos.set( answers % sentNanos.length(), System.nanoTime() );
+			client.progress( problemSet.getPoints(), problemSet.getCorrectCount(), problemSet.getIncorrectCount() );
+		}
+
+		public void welcome(int playerId) {
+			id = playerId;
+			bots.put(playerId, this);
+			welcomed.countDown();
+		}
+
+		public void joined(int playerId, String name) {
+			playersKnown++;
+		}
+
+		public void left(int playerId) {
+			playersKnown--;
+		}
+
+		public void started(Level level, Difficulty difficulty, long seed) {
+			problemSet = level.newProblemSet(difficulty, seed);
+		}
+
+		public void progress(int playerId, int points, int correctCount, int incorrectCount) {
+			long now = System.nanoTime();
+			Bot sender = bots.get(playerId);
+			int answers = correctCount + incorrectCount;
+			if( sender != null && answers > 0 )
+				latencies.record( Math.min(now - sender.sentNanos.get(answers % sender.sentNanos.length()), MAX_LATENCY) );
+		}
+
+		public void finished(int playerId, int place, long millis) {
+			if( playerId == id ) {
+				this.place = place;
+				RaceBots.this.finished.countDown();
+			}
+		}
+
+		public void connectFailed(IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+
+		public void disconnected() {
+			// the race is over
+		}
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int players = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PLAYERS;
+		Level level = args.length > 2 ? Level.valueOf( args[1].toUpperCase(Locale.ROOT) ) : Level.LEVEL_2;
+		Difficulty difficulty = args.length > 2 ? Difficulty.valueOf( args[2].toUpperCase(Locale.ROOT) ) : Difficulty.MEDIUM;
+		double answersPerSecond = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_ANSWERS_PER_SECOND;
+		if( players < 1 || args.length == 2 || args.length > 4 ) {
+			System.err.println("usage: java " + RaceBots.class.getName() + " [<players> [<level> <difficulty> [<answers per second>]]]");
+			System.exit(1);
+		}
+
+		RaceBots race = new RaceBots(players);
+		long seed = ThreadLocalRandom.current().nextLong();
+		List<Bot> bots = new ArrayList<>();
+		ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+		try( RaceServer server = new RaceServer( new InetSocketAddress(InetAddress.getLoopbackAddress(), 0) ) ) {
+			InetSocketAddress address = new InetSocketAddress( InetAddress.getLoopbackAddress(), server.getPort() );
+			for( int i = 0; i < players; i++ ) {
+				Bot bot = race.new Bot("bot" + (i + 1), seed + i);
+				bot.client = new RaceClient(address, bot.name, bot);
+				bots.add(bot);
+			}
+			for( Bot bot : bots ) {
+				bot.welcomed.await();
+				while( bot.playersKnown < players )
+					Thread.sleep(1);
+			}
+
+			System.out.printf("%d bots racing %s, answering about %.1f problems/s each (seed %d)%n",
+					players, level.getTitle(difficulty), answersPerSecond, seed);
+			long start = System.nanoTime();
+			server.startRace(level, difficulty, seed);
+			long period = (long) (1e9 / answersPerSecond);
+			for( Bot bot : bots )
+				executor.scheduleAtFixedRate( bot::answer, ThreadLocalRandom.current().nextLong(period), period, TimeUnit.NANOSECONDS );
+			boolean done = race.finished.await(10, TimeUnit.MINUTES);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			executor.shutdownNow();
+			Thread.sleep(100); // for the last updates to arrive
+
+			LatencyHistogram latencies = new LatencyHistogram(MAX_LATENCY);
+			long answers = 0;
+			for( Bot bot : bots ) {
+				bot.client.close();
+				answers += bot.answers;
+			}
+			Thread.sleep(100);
+			for( Bot bot : bots )
+				latencies.add(bot.latencies);
+			System.out.printf("%s in %.1f s: %,d answers, %,d progress updates delivered (%,.0f/s)%n",
+					done ? "finished" : "NOT FINISHED", seconds, answers, latencies.getTotalCount(), latencies.getTotalCount() / seconds);
+			System.out.printf("update latency: p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+					latencies.getValueAtPercentile(50) / 1e6, latencies.getValueAtPercentile(90) / 1e6,
+					latencies.getValueAtPercentile(99) / 1e6, latencies.getMax() / 1e6);
+
+			bots.sort( (a, b) -> Integer.compare(a.place == 0 ? Integer.MAX_VALUE : a.place, b.place == 0 ? Integer.MAX_VALUE : b.place) );
+			System.out.print("places:");
+			for( Bot bot : bots.subList(0, Math.min(5, bots.size())) )
+				System.out.print("  " + bot.place + ". " + bot.name);
+			System.out.println(bots.size() > 5 ? "  ..." : "");
+
+			boolean identical = true;
+			for( Bot bot : bots ) {
+				int n = Math.min( Math.min(bot.answers, bots.get(0).answers), CHECKED_PROBLEMS );
+				identical &= Arrays.equals( Arrays.copyOf(bot.problems, n), Arrays.copyOf(bots.get(0).problems, n) );
+			}
+			System.out.println( identical ? "every bot was given the same problems" : "FAILED: the bots were given different problems" );
+			if( !done || !identical )
+				System.exit(1);
+		}
+	}
+}
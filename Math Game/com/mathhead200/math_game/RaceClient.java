@@ -0,0 +1,256 @@
+package com.mathhead200.math_game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A player's connection to a {@link RaceServer}.
+ *
+ * Nothing the caller does blocks: the client's own thread resolves the
+ * host, connects (giving up after {@link #CONNECT_TIMEOUT_MILLIS}), and then
+ * reads and writes with a {@link Selector}, calling the {@link Listener} as
+ * messages arrive (so a GUI should hand them to the EDT.) Progress is handed
+ * to that thread to send; if the server is not keeping up, only the latest
+ * progress is sent, since it replaces any before it.
+ */
+public class RaceClient implements Closeable {
+
+	public static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * Called on the client's thread as each message arrives.
+	 */
+	public interface Listener {
+		/** This client has joined the race as <code>playerId</code>. */
+		void welcome(int playerId);
+
+		/** A player (possibly this one) has joined. */
+		void joined(int playerId, String name);
+
+		void left(int playerId);
+
+		/** The race has started; play <code>level.newProblemSet(difficulty, seed)</code>. */
+		void started(Level level, Difficulty difficulty, long seed);
+
+		/** Another player has answered a problem. */
+		void progress(int playerId, int points, int correctCount, int incorrectCount);
+
+		/** A player (possibly this one) has reached the goal. */
+		void finished(int playerId, int place, long millis);
+
+		/** The server could not be reached; nothing else will be called. */
+		void connectFailed(IOException e);
+
+		/** The connection has been closed, by either end. */
+		void disconnected();
+	}
+
+	private final InetSocketAddress address;
+	private final Listener listener;
+	private final Selector selector;
+	private final SocketChannel channel;
+	private final SelectionKey key;
+	private volatile boolean closed = false;
+	private volatile int playerId = 0;
+	// the latest progress, until the client's thread sends it
+	private final Object progressLock = new Object();
+	private boolean progressPending = false;
+	private int points;
+	private int correctCount;
+	private int incorrectCount;
+	// confined to the client's thread
+	private final ByteBuffer in = RaceProtocol.newBuffer(4 * RaceProtocol.MAX_FRAME_SIZE);
+	private final ByteBuffer out = RaceProtocol.newBuffer(RaceProtocol.MAX_FRAME_SIZE);
+
+	/**
+	 * Starts connecting (on the client's own thread) to the server at
+	 * <code>address</code>, which may be unresolved, and joining its race as
+	 * <code>name</code>. If that fails,
+	 * {@link Listener#connectFailed(IOException)} is called.
+	 */
+	public RaceClient(InetSocketAddress address, String name, Listener listener) throws IOException {
+		this.address = address;
+		this.listener = listener;
+		this.selector = Selector.open();
+		try {
+			this.channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			this.key = channel.register(selector, 0);
+		} catch(IOException e) {
+			selector.close();
+			throw e;
+		}
+		RaceProtocol.putJoin( out, RaceProtocol.encodeName(name) ); // sent as soon as the connection is made
+		Thread thread = new Thread(this::run, "RaceClient " + name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return The id of this player, or 0 until the server has welcomed them.
+	 */
+	public int getPlayerId() {
+		return playerId;
+	}
+
+	/**
+	 * Sends this player's progress to the others (from the client's thread.)
+	 */
+	public void progress(int points, int correctCount, int incorrectCount) {
+		synchronized( progressLock ) {
+			this.points = points;
+			this.correctCount = correctCount;
+			this.incorrectCount = incorrectCount;
+			progressPending = true;
+		}
+		selector.wakeup();
+	}
+
+	private void run() {
+		boolean connected = false;
+		try {
+			connect();
+			connected = true;
+			while( !closed ) {
+				if( out.position() == 0 )
+					takeProgress();
+				if( out.position() > 0 )
+					flush();
+				key.interestOps( out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ );
+				selector.select();
+				selector.selectedKeys().clear();
+				if( !read() )
+					break;
+			}
+		} catch(IOException e) {
+			if( !connected && !closed ) {
+				closeQuietly();
+				listener.connectFailed(e);
+				return;
+			}
+			// closed by either end
+		} finally {
+			closeQuietly();
+		}
+		listener.disconnected();
+	}
+
+	private void connect() throws IOException {
+		InetSocketAddress address = this.address;
+		if( address.isUnresolved() ) {
+			address = new InetSocketAddress( address.getHostString(), address.getPort() );
+			if( address.isUnresolved() )
+				throw new UnknownHostException( address.getHostString() );
+		}
+		long deadline = System.nanoTime() + CONNECT_TIMEOUT_MILLIS * 1_000_000L;
+		if( !channel.connect(address) ) {
+			key.interestOps(SelectionKey.OP_CONNECT);
+			while( !channel.finishConnect() ) {
+				long remaining = (deadline - System.nanoTime()) / 1_000_000;
+				if( closed )
+					throw new IOException("closed");
+				if( remaining <= 0 )
+					throw new SocketTimeoutException("could not connect to " + address + " in " + CONNECT_TIMEOUT_MILLIS / 1000 + " s");
+				selector.select(remaining);
+				selector.selectedKeys().clear();
+			}
+		}
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+	}
+
+	private void takeProgress() {
+		synchronized( progressLock ) {
+			if( progressPending ) {
+				RaceProtocol.putClientProgress(out, points, correctCount, incorrectCount);
+				progressPending = false;
+			}
+		}
+	}
+
+	private void flush() throws IOException {
+		out.flip();
+		channel.write(out);
+		out.compact();
+	}
+
+	/**
+	 * Reads, and dispatches, whatever messages have arrived.
+	 *
+	 * @return <code>false</code> if the server has closed the connection.
+	 */
+	private boolean read() throws IOException {
+		int count;
+		while( (count = channel.read(in)) > 0 ) {
+			in.flip();
+			int size;
+			while( (size = RaceProtocol.frameSize(in)) > 0 ) {
+				int next = in.position() + size;
+				byte type = in.get();
+				int length = in.get() & 0xFF;
+				dispatch(type, length, in);
+				in.position(next);
+			}
+			in.compact();
+		}
+		return count >= 0;
+	}
+
+	private void dispatch(byte type, int length, ByteBuffer in) {
+		switch( type ) {
+		case RaceProtocol.WELCOME:
+			playerId = in.getInt();
+			listener.welcome(playerId);
+			break;
+		case RaceProtocol.PLAYER:
+			listener.joined( in.getInt(), RaceProtocol.decodeName(in, length - 4) );
+			break;
+		case RaceProtocol.LEFT:
+			listener.left( in.getInt() );
+			break;
+		case RaceProtocol.START:
+			int level = in.get();
+			int difficulty = in.get();
+			long seed = in.getLong();
+			if( level >= 0 && level < Level.values().length && difficulty >= 0 && difficulty < Difficulty.values().length )
+				listener.started( Level.values()[level], Difficulty.values()[difficulty], seed );
+			break;
+		case RaceProtocol.PROGRESS:
+			listener.progress( in.getInt(), in.getInt(), in.getInt(), in.getInt() );
+			break;
+		case RaceProtocol.FINISHED:
+			listener.finished( in.getInt(), in.getInt(), in.getLong() );
+			break;
+		default:
+			// from a newer server; skip it
+		}
+	}
+
+	private void closeQuietly() {
+		try {
+			channel.close();
+		} catch(IOException e) {
+			// already closed
+		}
+		try {
+			selector.close();
+		} catch(IOException e) {
+			// already closed
+		}
+	}
+
+	/**
+	 * Leaves the race.
+	 */
+	public void close() {
+		closed = true;
+		selector.wakeup();
+	}
+}
@@ -0,0 +1,116 @@
+package com.mathhead200.math_game;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The binary messages between a {@link RaceServer} and its
+ * {@link RaceClient}s. Each message is a frame: a byte type, a byte payload
+ * length, then the payload, so no message is more than 257 bytes and most
+ * are under 20.
+ *
+ * <pre>
+ * client to server:
+ *   JOIN      name (UTF-8, at most 64 bytes)
+ *   PROGRESS  int points, int correct count, int incorrect count
+ *
+ * server to client:
+ *   WELCOME   int player id (of the client)
+ *   PLAYER    int player id, name (UTF-8), for each player who has joined
+ *   LEFT      int player id
+ *   START     byte level, byte difficulty, long seed
+ *   PROGRESS  int player id, int points, int correct count, int incorrect count
+ *   FINISHED  int player id, int place, long milliseconds since the start
+ * </pre>
+ *
+ * All values are little-endian. Every player of a race plays
+ * {@link Level#newProblemSet(Difficulty, long)} with the seed sent in
+ * <code>START</code>, so they all get exactly the same problems.
+ */
+final class RaceProtocol {
+
+	static final byte JOIN = 1;
+	static final byte CLIENT_PROGRESS = 2;
+
+	static final byte WELCOME = 16;
+	static final byte PLAYER = 17;
+	static final byte LEFT = 18;
+	static final byte START = 19;
+	static final byte PROGRESS = 20;
+	static final byte FINISHED = 21;
+
+	static final int HEADER_SIZE = 2;
+	static final int MAX_FRAME_SIZE = HEADER_SIZE + 255;
+	static final int MAX_NAME_BYTES = 64;
+
+	private RaceProtocol() {
+	}
+
+	static ByteBuffer newBuffer(int capacity) {
+		return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	static byte[] encodeName(String name) {
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if( bytes.length <= MAX_NAME_BYTES )
+			return bytes;
+		// truncate at a character boundary
+		int length = MAX_NAME_BYTES;
+		while( length > 0 && (bytes[length] & 0xC0) == 0x80 )
+			length--;
+		byte[] truncated = new byte[length];
+		System.arraycopy(bytes, 0, truncated, 0, length);
+		return truncated;
+	}
+
+	static String decodeName(ByteBuffer buffer, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	static void putJoin(ByteBuffer buffer, byte[] name) {
+		buffer.put(JOIN).put( (byte) name.length ).put(name);
+	}
+
+	static void putClientProgress(ByteBuffer buffer, int points, int correctCount, int incorrectCount) {
+		buffer.put(CLIENT_PROGRESS).put( (byte) 12 ).putInt(points).putInt(correctCount).putInt(incorrectCount);
+	}
+
+	static void putWelcome(ByteBuffer buffer, int playerId) {
+		buffer.put(WELCOME).put( (byte) 4 ).putInt(playerId);
+	}
+
+	static void putPlayer(ByteBuffer buffer, int playerId, byte[] name) {
+		buffer.put(PLAYER).put( (byte) (4 + name.length) ).putInt(playerId).put(name);
+	}
+
+	static void putLeft(ByteBuffer buffer, int playerId) {
+		buffer.put(LEFT).put( (byte) 4 ).putInt(playerId);
+	}
+
+	static void putStart(ByteBuffer buffer, Level level, Difficulty difficulty, long seed) {
+		buffer.put(START).put( (byte) 10 ).put( (byte) level.ordinal() ).put( (byte) difficulty.ordinal() ).putLong(seed);
+	}
+
+	static void putProgress(ByteBuffer buffer, int playerId, int points, int correctCount, int incorrectCount) {
+		buffer.put(PROGRESS).put( (byte) 16 ).putInt(playerId).putInt(points).putInt(correctCount).putInt(incorrectCount);
+	}
+
+	static void putFinished(ByteBuffer buffer, int playerId, int place, long millis) {
+		buffer.put(FINISHED).put( (byte) 16 ).putInt(playerId).putInt(place).putLong(millis);
+	}
+
+	/**
+	 * @return The size of the complete frame at the start of
+	 *         <code>buffer</code> (between its position and limit), or 0 if it
+	 *         is not all there yet.
+	 */
+	static int frameSize(ByteBuffer buffer) {
+		if( buffer.remaining() < HEADER_SIZE )
+			return 0;
+		int size = HEADER_SIZE + (buffer.get(buffer.position() + 1) & 0xFF);
+		return buffer.remaining() < size ? 0 : size;
+	}
+}
@@ -0,0 +1,405 @@
+package com.mathhead200.math_game;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Hosts a race: every player plays the same seeded problem set, and each
+ * player's progress is pushed to all of the others as it happens, using the
+ * messages described in {@link RaceProtocol}.
+ *
+ * Everything is done by one thread, with a {@link Selector}: accepting
+ * players, reading their progress, and writing it to everyone else. A
+ * progress update is relayed as soon as it is read, straight from the
+ * selector loop (with TCP_NODELAY), and only waits for the selector (i.e.
+ * registers for OP_WRITE) if a player's socket buffer is full. So the
+ * latency of an update is a few system calls, however many players there are.
+ * A player who falls too far behind is disconnected, rather than letting
+ * their backlog grow.
+ *
+ * Usage: <code>java com.mathhead200.math_game.RaceServer [port]</code>,
+ * then <code>start &lt;level&gt; &lt;difficulty&gt; [seed]</code> (e.g.
+ * <code>start level_2 medium</code>) to start a race, or <code>quit</code>.
+ */
+public class RaceServer implements Closeable {
+
+	public static final int DEFAULT_PORT = 4201;
+	/** A player whose unsent messages reach this many bytes is disconnected. */
+	public static final int MAX_PENDING_BYTES = 64 << 10;
+
+	private static class Player {
+		final SocketChannel channel;
+		final SelectionKey key;
+		final ByteBuffer in = RaceProtocol.newBuffer(4 * RaceProtocol.MAX_FRAME_SIZE);
+		ByteBuffer out = RaceProtocol.newBuffer(1024);
+		int id = 0; // until they join
+		byte[] name;
+		int points = 0;
+		int correctCount = 0;
+		int incorrectCount = 0;
+		boolean finished = false;
+		boolean closed = false;
+
+		Player(SocketChannel channel, SelectionKey key) {
+			this.channel = channel;
+			this.key = key;
+		}
+	}
+
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final Thread thread;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // to run on the selector thread
+	private volatile boolean closed = false;
+	private volatile int playerCount = 0;
+	// confined to the selector thread
+	private final List<Player> players = new ArrayList<>();
+	private final ByteBuffer message = RaceProtocol.newBuffer(RaceProtocol.MAX_FRAME_SIZE);
+	private int nextPlayerId = 1;
+	private Level level = null; // of the race in progress, if any
+	private Difficulty difficulty;
+	private long seed;
+	private int goal;
+	private long startNanos;
+	private int finishedCount;
+
+	/**
+	 * Starts a server (on its own thread) listening on <code>address</code>.
+	 */
+	public RaceServer(InetSocketAddress address) throws IOException {
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(address, 128);
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		thread = new Thread(this::run, "RaceServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts a server listening on every interface, so players on the LAN can
+	 * join.
+	 */
+	public RaceServer(int port) throws IOException {
+		this( new InetSocketAddress(port) );
+	}
+
+	public int getPort() throws IOException {
+		return ( (InetSocketAddress) serverChannel.getLocalAddress() ).getPort();
+	}
+
+	/**
+	 * @return The number of players who have joined (and not left.)
+	 */
+	public int getPlayerCount() {
+		return playerCount;
+	}
+
+	/**
+	 * Starts a race for every player who has joined (and any who join later.)
+	 */
+	public void startRace(Level level, Difficulty difficulty, long seed) {
+		int goal = level.newProblemSet(difficulty, seed).getGoal();
+		execute( () -> {
+			this.level = level;
+			this.difficulty = difficulty;
+			this.seed = seed;
+			this.goal = goal;
+			startNanos = System.nanoTime();
+			finishedCount = 0;
+			message.clear();
+			RaceProtocol.putStart(message, level, difficulty, seed);
+			message.flip();
+			for( Player player : players ) {
+				player.points = player.correctCount = player.incorrectCount = 0;
+				player.finished = false;
+				if( player.id != 0 )
+					send(player, message);
+			}
+		});
+	}
+
+	private void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	private void run() {
+		try {
+			while( !closed ) {
+				selector.select();
+				Runnable task;
+				while( (task = tasks.poll()) != null )
+					task.run();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while( keys.hasNext() ) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if( !key.isValid() )
+						continue;
+					if( key.isAcceptable() ) {
+						accept();
+					} else {
+						Player player = (Player) key.attachment();
+						if( key.isReadable() )
+							read(player);
+						if( !player.closed && key.isWritable() )
+							flush(player);
+					}
+				}
+				removeClosed();
+			}
+		} catch(IOException e) {
+			if( !closed )
+				e.printStackTrace();
+		} finally {
+			for( Player player : players )
+				closeQuietly(player.channel);
+			closeQuietly(serverChannel);
+			closeQuietly(selector);
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if( channel == null )
+			return;
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+		Player player = new Player(channel, key);
+		key.attach(player);
+		players.add(player);
+	}
+
+	private void read(Player player) {
+		try {
+			if( player.channel.read(player.in) < 0 ) {
+				disconnect(player);
+				return;
+			}
+		} catch(IOException e) {
+			disconnect(player);
+			return;
+		}
+		ByteBuffer in = player.in;
+		in.flip();
+		int size;
+		while( !player.closed && (size = RaceProtocol.frameSize(in)) > 0 ) {
+			int next = in.position() + size;
+			byte type = in.get();
+			int length = in.get() & 0xFF;
+			handle(player, type, length);
+			in.position(next);
+		}
+		in.compact();
+	}
+
+	private void handle(Player player, byte type, int length) {
+		ByteBuffer in = player.in;
+		if( type == RaceProtocol.JOIN && player.id == 0 && length <= RaceProtocol.MAX_NAME_BYTES ) {
+			player.name = new byte[length];
+			in.get(player.name);
+			join(player);
+		} else if( type == RaceProtocol.CLIENT_PROGRESS && player.id != 0 && length >= 12 ) {
+			player.points = in.getInt();
+			player.correctCount = in.getInt();
+			player.incorrectCount = in.getInt();
+			message.clear();
+			RaceProtocol.putProgress(message, player.id, player.points, player.correctCount, player.incorrectCount);
+			message.flip();
+			broadcast(player);
+			if( level != null && !player.finished && player.points >= goal ) {
+				player.finished = true;
+				message.clear();
+				RaceProtocol.putFinished(message, player.id, ++finishedCount, (System.nanoTime() - startNanos) / 1_000_000);
+				message.flip();
+				broadcast(null);
+			}
+		} else {
+			disconnect(player); // not speaking the protocol
+		}
+	}
+
+	private void join(Player player) {
+		player.id = nextPlayerId++;
+		playerCount++;
+		message.clear();
+		RaceProtocol.putWelcome(message, player.id);
+		message.flip();
+		send(player, message);
+		// tell the new player about everyone (including themself), and everyone about the new player
+		for( Player other : players ) {
+			if( other.id == 0 || other.closed )
+				continue;
+			message.clear();
+			RaceProtocol.putPlayer(message, other.id, other.name);
+			message.flip();
+			send(player, message);
+		}
+		message.clear();
+		RaceProtocol.putPlayer(message, player.id, player.name);
+		message.flip();
+		broadcast(player);
+		if( level != null ) { // a race is in progress, so join it, then catch up
+			message.clear();
+			RaceProtocol.putStart(message, level, difficulty, seed);
+			message.flip();
+			send(player, message);
+			for( Player other : players ) {
+				if( other.id == 0 || other.closed || other == player )
+					continue;
+				message.clear();
+				RaceProtocol.putProgress(message, other.id, other.points, other.correctCount, other.incorrectCount);
+				message.flip();
+				send(player, message);
+			}
+		}
+	}
+
+	/**
+	 * Sends <code>message</code> to every player who has joined, except
+	 * <code>except</code>.
+	 */
+	private void broadcast(Player except) {
+		for( int i = 0; i < players.size(); i++ ) {
+			Player player = players.get(i);
+			if( player != except && player.id != 0 )
+				send(player, message);
+		}
+	}
+
+	/**
+	 * Writes <code>message</code> (leaving its position as it was) to the
+	 * player, or queues whatever the socket will not take yet.
+	 */
+	private void send(Player player, ByteBuffer message) {
+		if( player.closed )
+			return;
+		if( player.out.remaining() < message.remaining() ) {
+			if( player.out.capacity() >= MAX_PENDING_BYTES ) {
+				disconnect(player); // too far behind
+				return;
+			}
+			ByteBuffer out = RaceProtocol.newBuffer( player.out.capacity() * 2 );
+			player.out.flip();
+			out.put(player.out);
+			player.out = out;
+		}
+		int position = message.position();
+		player.out.put(message);
+		message.position(position);
+		flush(player);
+	}
+
+	private void flush(Player player) {
+		try {
+			player.out.flip();
+			player.channel.write(player.out);
+			player.out.compact();
+		} catch(IOException e) {
+			disconnect(player);
+			return;
+		}
+		int ops = player.out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+		if( player.key.interestOps() != ops )
+			player.key.interestOps(ops);
+	}
+
+	/**
+	 * Closes the player's connection; they are removed (and everyone told) by
+	 * {@link #removeClosed()}, so the list of players is not changed while it
+	 * is being iterated.
+	 */
+	private void disconnect(Player player) {
+		if( player.closed )
+			return;
+		player.closed = true;
+		player.key.cancel();
+		closeQuietly(player.channel);
+	}
+
+	private void removeClosed() {
+		for( int i = 0; i < players.size(); i++ ) {
+			Player player = players.get(i);
+			if( !player.closed )
+				continue;
+			players.remove(i);
+			if( player.id != 0 ) {
+				playerCount--;
+				message.clear();
+				RaceProtocol.putLeft(message, player.id);
+				message.flip();
+				broadcast(null); // which may close more players, which are removed in turn
+			}
+			i = -1;
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch(IOException e) {
+			// already closed
+		}
+	}
+
+	/**
+	 * Disconnects every player, and stops listening.
+	 */
+	public void close() {
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join(1000);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		try( RaceServer server = new RaceServer(port) ) {
+			System.out.println("Math Game race server listening on port " + server.getPort());
+			System.out.println("commands: start <level> <difficulty> [seed], quit");
+			BufferedReader in = new BufferedReader( new InputStreamReader(System.in, StandardCharsets.UTF_8) );
+			String line;
+			while( (line = in.readLine()) != null ) {
+				String[] words = line.trim().split("\\s+");
+				try {
+					if( words[0].equalsIgnoreCase("start") && (words.length == 3 || words.length == 4) ) {
+						Level level = Level.valueOf( words[1].toUpperCase(Locale.ROOT) );
+						Difficulty difficulty = Difficulty.valueOf( words[2].toUpperCase(Locale.ROOT) );
+						long seed = words.length == 4 ? Long.parseLong(words[3]) : ThreadLocalRandom.current().nextLong();
+						server.startRace(level, difficulty, seed);
+						System.out.println("started " + level.getTitle(difficulty) + " for " + server.getPlayerCount() + " players (seed " + seed + ")");
+					} else if( words[0].equalsIgnoreCase("quit") ) {
+						break;
+					} else if( !words[0].isEmpty() ) {
+						System.out.println("commands: start <level> <difficulty> [seed], quit");
+					}
+				} catch(IllegalArgumentException e) {
+					System.out.println("error: " + e.getMessage());
+				}
+			}
+		}
+	}
+}
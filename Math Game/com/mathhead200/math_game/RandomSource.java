@@ -0,0 +1,75 @@
+package com.mathhead200.math_game;
+
+import java.util.SplittableRandom;
+
+/**
+ * The generator a {@link ProblemSet} draws its problems from: just the
+ * methods problem sets need (the tree targets Java 8, so there is no
+ * <code>RandomGenerator</code> to use instead.)
+ *
+ * The default, {@link #seeded(long)}, is a {@link SplittableRandom}. Any
+ * other implementation must be deterministic for its seed, since games are
+ * replayed and restored by regenerating their problems from the seed.
+ */
+interface RandomSource {
+
+	/**
+	 * @return The seed this source was created with.
+	 */
+	long getSeed();
+
+	int nextInt(int bound);
+
+	long nextLong();
+
+	long nextLong(long bound);
+
+	double nextDouble();
+
+	/**
+	 * @return A new, independent source, seeded from this one; so a seed, and
+	 *         the order things are split from it, fix every stream.
+	 */
+	RandomSource split();
+
+	/**
+	 * @return A {@link SplittableRandom} source.
+	 */
+	static RandomSource seeded(long seed) {
+		return new Splittable(seed);
+	}
+
+	final class Splittable implements RandomSource {
+		private final long seed;
+		private final SplittableRandom random;
+
+		Splittable(long seed) {
+			this.seed = seed;
+			this.random = new SplittableRandom(seed);
+		}
+
+		public long getSeed() {
+			return seed;
+		}
+
+		public int nextInt(int bound) {
+			return random.nextInt(bound);
+		}
+
+		public long nextLong() {
+			return random.nextLong();
+		}
+
+		public long nextLong(long bound) {
+			return random.nextLong(bound);
+		}
+
+		public double nextDouble() {
+			return random.nextDouble();
+		}
+
+		public RandomSource split() {
+			return new Splittable( random.nextLong() );
+		}
+	}
+}
@@ -0,0 +1,260 @@
+package com.mathhead200.math_game;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An append-only log of a game, streamed to a file as it is written.
+ *
+ * {@link #write(String)} only queues the record; a background thread encodes
+ * queued records in batches and writes them through a {@link FileChannel}.
+ * The queue is bounded, so memory use does not grow with the length of the
+ * session, and saving the log is just a copy of the (already written) file,
+ * which {@link #copyTo(Path, String)} also leaves to the background thread.
+ */
+public class SessionJournal implements Closeable {
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String CLOSE = new String("CLOSE"); // compared by identity
+
+	/**
+	 * A copy of the journal, queued to be made by the background thread once
+	 * every record queued before it has been written.
+	 */
+	private static class Copy {
+		final Path target;
+		final String trailer;
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		Copy(Path target, String trailer) {
+			this.target = target;
+			this.trailer = trailer;
+		}
+	}
+
+	private final Path path;
+	private final boolean temporary;
+	private final FileChannel channel;
+	private final BlockingQueue<Object> queue; // of records (Strings), Copys, and CLOSE
+	private final Thread writerThread;
+
+	private volatile long length = 0; // chars written by the owning thread (read by GameMetrics)
+	private long queued = 0; // records queued by the owning thread
+	private final Object lock = new Object();
+	private long persisted = 0; // records written to the file; guarded by lock
+	private volatile IOException failure = null; // written under lock
+
+	/**
+	 * @param path The file to write the journal to (it is truncated.)
+	 * @param temporary If <code>true</code>, the file is deleted when the
+	 *                  journal is closed.
+	 */
+	public SessionJournal(Path path, boolean temporary, int queueCapacity) throws IOException {
+		this.path = path;
+		this.temporary = temporary;
+		this.channel = FileChannel.open( path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.writerThread = new Thread(this::writeLoop, "SessionJournal " + path.getFileName());
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	public SessionJournal(Path path, boolean temporary) throws IOException {
+		this(path, temporary, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Creates a journal in a new temporary file, which is deleted when the
+	 * journal is closed.
+	 */
+	public static SessionJournal createTemporary() throws IOException {
+		File file = File.createTempFile("Math Game ", ".log");
+		file.deleteOnExit();
+		return new SessionJournal(file.toPath(), true);
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * @return The number of chars written to this journal so far.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Queues a record to be appended to the file. This only blocks if the
+	 * background writer has fallen a whole queue behind.
+	 */
+	public void write(String record) {
+		if( record.isEmpty() || failure != null )
+			return; // a failure is reported by the next flush()
+		try {
+			queue.put(record);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		length += record.length();
+		queued++;
+	}
+
+	/**
+	 * Waits until everything written so far has been written to the file.
+	 *
+	 * @throws IOException If the background writer failed.
+	 */
+	public void flush() throws IOException {
+		synchronized(lock) {
+			while( persisted < queued && failure == null ) {
+				try {
+					lock.wait();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted while flushing the journal", e);
+				}
+			}
+			if( failure != null )
+				throw failure;
+		}
+	}
+
+	/**
+	 * Flushes the journal, and then copies it to the given file.
+	 */
+	public void copyTo(Path target) throws IOException {
+		flush();
+		Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Copies the journal, as it is now (i.e. every record written so far, but
+	 * none written later), followed by <code>trailer</code>, to the given file,
+	 * in the background.
+	 *
+	 * @return A future completed once the copy has been made, or
+	 *         exceptionally if it could not be.
+	 */
+	public CompletableFuture<Void> copyTo(Path target, String trailer) {
+		Copy copy = new Copy(target, trailer);
+		if( failure != null ) {
+			copy.done.completeExceptionally(failure);
+			return copy.done;
+		}
+		try {
+			queue.put(copy);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			copy.done.completeExceptionally(e);
+		}
+		return copy.done;
+	}
+
+	private void writeLoop() {
+		CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		ArrayList<Object> batch = new ArrayList<>();
+		try {
+			while( true ) {
+				batch.add( queue.take() );
+				queue.drainTo(batch);
+				boolean closing = false;
+				int records = 0;
+				for( Object record : batch ) {
+					if( record == CLOSE ) {
+						closing = true;
+						continue;
+					}
+					if( record instanceof Copy ) {
+						drain(buffer);
+						copy( (Copy) record );
+						continue;
+					}
+					records++;
+					CharBuffer chars = CharBuffer.wrap( (String) record );
+					encoder.reset();
+					CoderResult result;
+					while( (result = encoder.encode(chars, buffer, true)).isOverflow() )
+						drain(buffer);
+					if( result.isError() )
+						result.throwException();
+				}
+				drain(buffer);
+				synchronized(lock) {
+					persisted += records;
+					lock.notifyAll();
+				}
+				batch.clear();
+				if( closing )
+					return;
+			}
+		} catch(IOException e) {
+			synchronized(lock) {
+				failure = e;
+				lock.notifyAll();
+			}
+			// and fail any copies still waiting
+			queue.drainTo(batch);
+			for( Object record : batch )
+				if( record instanceof Copy )
+					( (Copy) record ).done.completeExceptionally(e);
+		} catch(InterruptedException e) {
+			// closed
+		}
+	}
+
+	private void copy(Copy copy) {
+		try {
+			Files.copy(path, copy.target, StandardCopyOption.REPLACE_EXISTING);
+			if( !copy.trailer.isEmpty() )
+				Files.write( copy.target, copy.trailer.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND );
+			copy.done.complete(null);
+		} catch(IOException | RuntimeException e) {
+			copy.done.completeExceptionally(e);
+		}
+	}
+
+	private void drain(ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while( buffer.hasRemaining() )
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	public void close() throws IOException {
+		try {
+			if( writerThread.isAlive() ) {
+				queue.put(CLOSE);
+				writerThread.join();
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			channel.close();
+			if( temporary )
+				Files.deleteIfExists(path);
+		}
+		synchronized(lock) {
+			if( failure != null )
+				throw failure;
+		}
+	}
+}
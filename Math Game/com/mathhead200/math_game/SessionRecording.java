@@ -0,0 +1,291 @@
+package com.mathhead200.math_game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Everything needed to replay a game exactly: the level, difficulty and
+ * {@link ProblemSet#getSeed() seed} it was played with, and each guess; plus
+ * the final score, so a replay can be checked against the original game.
+ *
+ * Replaying needs no GUI (or anything but the {@link ProblemSet}), so
+ * recordings of reported games can be replayed and checked thousands at a
+ * time, e.g. as a regression corpus for the scoring.
+ *
+ * Recordings are appended to a file one after another, each as:
+ *
+ * <pre>
+ * header (48 bytes):  int magic ("MGSR"), short version, byte level, byte difficulty,
+ *                     long seed, int points, int goal, int loss, int correct count,
+ *                     int incorrect count, int answer count, 8 bytes reserved
+ * answers:            int guess, for each answer; then
+ *                     byte correct, for each answer
+ * </pre>
+ *
+ * All values are little-endian, and a guess which was not a number is
+ * recorded as {@link BinarySessionLog#NO_GUESS}.
+ */
+public class SessionRecording {
+
+	public static final int MAGIC = 0x5253474D; // "MGSR" in little-endian
+	public static final short VERSION = 1;
+	public static final int HEADER_SIZE = 48;
+
+	private final Level level;
+	private final Difficulty difficulty;
+	private final long seed;
+	private int[] guesses;
+	private boolean[] correct;
+	private int size = 0;
+	// the final score of the original game
+	private int points;
+	private int goal;
+	private int loss;
+	private int correctCount;
+	private int incorrectCount;
+
+	/**
+	 * Starts recording a game of <code>problemSet</code>, which must not have
+	 * given any problems yet.
+	 */
+	public SessionRecording(Level level, Difficulty difficulty, ProblemSet problemSet) {
+		this(level, difficulty, problemSet.getSeed(), 64);
+		if( problemSet.getCurrentProblemNumber() != 0 )
+			throw new IllegalStateException("the problem set has already been started");
+		finish(problemSet);
+	}
+
+	private SessionRecording(Level level, Difficulty difficulty, long seed, int capacity) {
+		this.level = level;
+		this.difficulty = difficulty;
+		this.seed = seed;
+		this.guesses = new int[capacity];
+		this.correct = new boolean[capacity];
+	}
+
+	/**
+	 * Records the answer to the current problem, and (with
+	 * <code>problemSet</code> already scored) the score after it.
+	 *
+	 * @param guess The guess, or {@link BinarySessionLog#NO_GUESS}.
+	 */
+	public void answered(int guess, boolean correct, ProblemSet problemSet) {
+		if( size == guesses.length ) {
+			guesses = Arrays.copyOf(guesses, size * 2);
+			this.correct = Arrays.copyOf(this.correct, size * 2);
+		}
+		guesses[size] = guess;
+		this.correct[size++] = correct;
+		finish(problemSet);
+	}
+
+	private void finish(ProblemSet problemSet) {
+		points = problemSet.getPoints();
+		goal = problemSet.getGoal();
+		loss = problemSet.getLoss();
+		correctCount = problemSet.getCorrectCount();
+		incorrectCount = problemSet.getIncorrectCount();
+	}
+
+	public Level getLevel() {
+		return level;
+	}
+
+	public Difficulty getDifficulty() {
+		return difficulty;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return The number of answers recorded.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Replays the game on a new problem set, scoring each recorded guess as it
+	 * was scored originally, and checking that every problem was answered as
+	 * recorded (i.e. the same problems were generated) and that the final
+	 * points, goal, loss and counts are the same as the original game's.
+	 *
+	 * @return <code>null</code> if the replay matches the recording, or else a
+	 *         description of the first difference.
+	 */
+	public String replay() {
+		ProblemSet problemSet = level.newProblemSet(difficulty, seed);
+		for( int i = 0; i < size; i++ ) {
+			if( !problemSet.hasNext() )
+				return "the problem set was completed after " + i + " of " + size + " answers";
+			MathProblem problem = problemSet.next();
+			// guesses are parsed canonically, so this is the Chalkboard's own rule
+			if( (guesses[i] == problem.result) != correct[i] )
+				return "answer " + (i + 1) + " (" + (guesses[i] == BinarySessionLog.NO_GUESS ? "?" : Integer.toString(guesses[i]))
+						+ ") was recorded as " + (correct[i] ? "correct" : "incorrect") + " for " + problem;
+			if( correct[i] )
+				problemSet.correct();
+			else
+				problemSet.incorrect();
+		}
+		if( problemSet.getPoints() != points )
+			return "points: expected " + points + ", replayed " + problemSet.getPoints();
+		if( problemSet.getGoal() != goal )
+			return "goal: expected " + goal + ", replayed " + problemSet.getGoal();
+		if( problemSet.getLoss() != loss )
+			return "loss: expected " + loss + ", replayed " + problemSet.getLoss();
+		if( problemSet.getCorrectCount() != correctCount || problemSet.getIncorrectCount() != incorrectCount )
+			return "counts: expected " + correctCount + "\u2713 " + incorrectCount + "\u2717, replayed "
+					+ problemSet.getCorrectCount() + "\u2713 " + problemSet.getIncorrectCount() + "\u2717";
+		return null;
+	}
+
+	/**
+	 * Replays all of the recordings, in parallel.
+	 *
+	 * @return The result of each recording's {@link #replay()}, in order.
+	 */
+	public static String[] replayAll(List<SessionRecording> recordings) {
+		String[] results = new String[ recordings.size() ];
+		IntStream.range(0, results.length).parallel().forEach( i -> results[i] = recordings.get(i).replay() );
+		return results;
+	}
+
+	/**
+	 * @return The size of this recording in a file, in bytes.
+	 */
+	public int getEncodedSize() {
+		return HEADER_SIZE + size * 5;
+	}
+
+	public void write(ByteBuffer buffer) {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putShort(VERSION).put((byte) level.ordinal()).put((byte) difficulty.ordinal())
+		      .putLong(seed).putInt(points).putInt(goal).putInt(loss).putInt(correctCount).putInt(incorrectCount)
+		      .putInt(size).putLong(0);
+		for( int i = 0; i < size; i++ )
+			buffer.putInt(guesses[i]);
+		for( int i = 0; i < size; i++ )
+			buffer.put( (byte) (correct[i] ? 1 : 0) );
+	}
+
+	/**
+	 * Appends this recording to a file of recordings (creating it if need be.)
+	 */
+	public void appendTo(Path path) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate( getEncodedSize() );
+		write(buffer);
+		buffer.flip();
+		try( FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND) ) {
+			while( buffer.hasRemaining() )
+				channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Reads the next recording from <code>buffer</code>.
+	 */
+	public static SessionRecording read(ByteBuffer buffer) throws IOException {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if( buffer.remaining() < HEADER_SIZE )
+			throw new IOException("truncated session recording");
+		if( buffer.getInt() != MAGIC )
+			throw new IOException("not a session recording (bad magic number)");
+		short version = buffer.getShort();
+		if( version != VERSION )
+			throw new IOException("unsupported session recording version: " + version);
+		int level = buffer.get();
+		int difficulty = buffer.get();
+		if( level < 0 || level >= Level.values().length || difficulty < 0 || difficulty >= Difficulty.values().length )
+			throw new IOException("unrecognized level or difficulty: " + level + ", " + difficulty);
+		long seed = buffer.getLong();
+		int points = buffer.getInt();
+		int goal = buffer.getInt();
+		int loss = buffer.getInt();
+		int correctCount = buffer.getInt();
+		int incorrectCount = buffer.getInt();
+		int size = buffer.getInt();
+		buffer.getLong(); // reserved
+		if( size < 0 || buffer.remaining() < size * 5L )
+			throw new IOException("truncated session recording");
+
+		SessionRecording recording = new SessionRecording( Level.values()[level], Difficulty.values()[difficulty], seed, Math.max(size, 1) );
+		for( int i = 0; i < size; i++ )
+			recording.guesses[i] = buffer.getInt();
+		for( int i = 0; i < size; i++ )
+			recording.correct[i] = buffer.get() != 0;
+		recording.size = size;
+		recording.points = points;
+		recording.goal = goal;
+		recording.loss = loss;
+		recording.correctCount = correctCount;
+		recording.incorrectCount = incorrectCount;
+		return recording;
+	}
+
+	/**
+	 * Reads every recording in a file of recordings.
+	 */
+	public static List<SessionRecording> readAll(Path path) throws IOException {
+		try( FileChannel channel = FileChannel.open(path, StandardOpenOption.READ) ) {
+			if( channel.size() > Integer.MAX_VALUE )
+				throw new IOException("session recordings file is too large to map: " + path);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			List<SessionRecording> recordings = new ArrayList<>();
+			while( buffer.hasRemaining() )
+				recordings.add( read(buffer) );
+			return recordings;
+		}
+	}
+
+	public String toString() {
+		return String.format("%s %d\u2713 %d\u2717 %d/%d points (seed %d)",
+				level.getTitle(difficulty), correctCount, incorrectCount, points, goal, seed);
+	}
+
+	/**
+	 * Replays every recording in the given files, and reports any which do not
+	 * match; exits with status 1 if any do not.
+	 *
+	 * Usage: <code>java com.mathhead200.math_game.SessionRecording &lt;recordings&gt;...</code>
+	 */
+	public static void main(String[] args) throws IOException {
+		if( args.length == 0 ) {
+			System.err.println("usage: java " + SessionRecording.class.getName() + " <recordings>...");
+			System.exit(1);
+		}
+		List<SessionRecording> recordings = new ArrayList<>();
+		for( String arg : args )
+			recordings.addAll( readAll(Paths.get(arg)) );
+
+		long start = System.nanoTime();
+		String[] results = replayAll(recordings);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		int failures = 0;
+		for( int i = 0; i < results.length; i++ ) {
+			if( results[i] != null ) {
+				System.out.println("FAILED " + recordings.get(i) + ": " + results[i]);
+				failures++;
+			}
+		}
+		long answers = 0;
+		for( SessionRecording recording : recordings )
+			answers += recording.size();
+		System.out.printf("%,d sessions (%,d answers) replayed in %.3f s: %,.0f sessions/s, %d failed%n",
+				recordings.size(), answers, seconds, recordings.size() / seconds, failures);
+		if( failures > 0 )
+			System.exit(1);
+	}
+}
@@ -0,0 +1,381 @@
+package com.mathhead200.math_game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Exports printable worksheets of problems from a {@link Level}, and a
+ * matching answer key, in bulk.
+ *
+ * Every line of a worksheet (and of the answer key) for a given level and
+ * difficulty is the same number of bytes, so where each worksheet goes in
+ * each file is known up front. That lets the worksheets be generated in
+ * parallel, by a fork/join task per range of worksheets, each streaming its
+ * own worksheets straight to their place in the files (through positional
+ * {@link FileChannel} writes) from a fixed size buffer; nothing holds more
+ * than one buffer's worth of the output in memory.
+ *
+ * Each task generates its problems from its own {@link ProblemSet#split()}
+ * of the exporter's problem set, so the tasks never contend for a generator,
+ * and the same seed always exports the same worksheets, however the tasks
+ * happen to be scheduled.
+ *
+ * Usage: <code>java com.mathhead200.math_game.WorksheetExporter &lt;level&gt;
+ * &lt;difficulty&gt; &lt;worksheets&gt; &lt;problems per worksheet&gt;
+ * &lt;worksheets file&gt; &lt;answer key file&gt; [&lt;seed&gt;]</code>, where the level and
+ * difficulty are named as in {@link Level} and {@link Difficulty}, e.g.
+ * <code>LEVEL_2 VERY_HARD</code>.
+ */
+public class WorksheetExporter implements Closeable {
+
+	public static final int BUFFER_SIZE = 1024 * 1024;
+	private static final int WORKSHEETS_PER_TASK = 64;
+	private static final int BATCH_SIZE = 1024; // problems generated at a time
+
+	private static final ThreadLocal<ByteBuffer[]> BUFFERS = ThreadLocal.withInitial( () -> new ByteBuffer[] {
+		ByteBuffer.allocateDirect(BUFFER_SIZE), ByteBuffer.allocateDirect(BUFFER_SIZE)
+	});
+
+	private final ProblemSet problemSet;
+	private final int problemsPerWorksheet;
+	private final FileChannel worksheetChannel;
+	private final FileChannel answerKeyChannel;
+
+	// widths, in chars, of each field of a line
+	private final int numberWidth;
+	private final int operand1Width;
+	private final int operand2Width;
+	private final int resultWidth;
+	private final int worksheetNumberWidth;
+	private final int worksheetCount;
+
+	// the constant parts of each line, and the size of each line and worksheet, in bytes
+	private final byte[] title;
+	private final byte[] worksheetLabel;
+	private final byte[] answerKeyLabel;
+	private final byte[] nameBlank;
+	private final byte[] answerBlank;
+	private final byte[][] operatorBytes = new byte[4][]; // by MathProblem.operatorIndex(...)
+	private final int[] operatorPadding = new int[4]; // trailing spaces, so every line is the same size
+	private final int worksheetHeaderSize;
+	private final int answerKeyHeaderSize;
+	private final int worksheetLineSize;
+	private final int answerKeyLineSize;
+	private final long worksheetSize;
+	private final long answerKeySize;
+
+	public WorksheetExporter(Level level, Difficulty difficulty, int worksheetCount, int problemsPerWorksheet,
+			Path worksheets, Path answerKey) throws IOException
+	{
+		this( level, difficulty, level.newProblemSet(difficulty), worksheetCount, problemsPerWorksheet, worksheets, answerKey );
+	}
+
+	/**
+	 * An exporter which always exports the same worksheets for the same
+	 * <code>seed</code>.
+	 */
+	public WorksheetExporter(Level level, Difficulty difficulty, int worksheetCount, int problemsPerWorksheet,
+			Path worksheets, Path answerKey, long seed) throws IOException
+	{
+		this( level, difficulty, level.newProblemSet(difficulty, seed), worksheetCount, problemsPerWorksheet, worksheets, answerKey );
+	}
+
+	private WorksheetExporter(Level level, Difficulty difficulty, ProblemSet problemSet, int worksheetCount, int problemsPerWorksheet,
+			Path worksheets, Path answerKey) throws IOException
+	{
+		if( worksheetCount <= 0 || problemsPerWorksheet <= 0 )
+			throw new IllegalArgumentException("there must be at least one worksheet and problem: " + worksheetCount + ", " + problemsPerWorksheet);
+		this.problemSet = problemSet;
+		this.worksheetCount = worksheetCount;
+		this.problemsPerWorksheet = problemsPerWorksheet;
+
+		long max1 = level.getMax1(difficulty);
+		long max2 = level.getMax2(difficulty);
+		long maxOperand1 = 0, maxOperand2 = 0, maxResult = 0;
+		for( char op : operators(level) ) {
+			op = MathProblem.canonicalOperator(op);
+			if( op == MathProblem.PLUS ) {
+				maxOperand1 = Math.max(maxOperand1, max1);
+				maxOperand2 = Math.max(maxOperand2, max2);
+				maxResult = Math.max(maxResult, max1 + max2);
+			} else if( op == MathProblem.MINUS ) {
+				maxOperand1 = Math.max(maxOperand1, max1 + max2);
+				maxOperand2 = Math.max(maxOperand2, max1);
+				maxResult = Math.max(maxResult, max2);
+			} else if( op == MathProblem.TIMES ) {
+				maxOperand1 = Math.max(maxOperand1, max1);
+				maxOperand2 = Math.max(maxOperand2, max2);
+				maxResult = Math.max(maxResult, max1 * max2);
+			} else /* if( op == MathProblem.DIVIDE ) */ {
+				maxOperand1 = Math.max(maxOperand1, max1 * max2);
+				maxOperand2 = Math.max(maxOperand2, max1);
+				maxResult = Math.max(maxResult, max2);
+			}
+		}
+		numberWidth = digits(problemsPerWorksheet);
+		operand1Width = digits(maxOperand1);
+		operand2Width = digits(maxOperand2);
+		resultWidth = digits(maxResult);
+		worksheetNumberWidth = digits(worksheetCount);
+
+		title = bytes( level.getTitle(difficulty) );
+		worksheetLabel = bytes("  Worksheet ");
+		answerKeyLabel = bytes("  Answer Key ");
+		nameBlank = bytes("    Name: ______________________________\n\n");
+		StringBuilder blank = new StringBuilder(" = ");
+		for( int i = 0; i < resultWidth; i++ )
+			blank.append('_');
+		answerBlank = bytes( blank.toString() );
+
+		// "title  Worksheet 0001    Name: ____\n\n" ... "\f"
+		worksheetHeaderSize = title.length + worksheetLabel.length + worksheetNumberWidth + nameBlank.length;
+		answerKeyHeaderSize = title.length + answerKeyLabel.length + worksheetNumberWidth + 2;
+		// "  1.  1234 \u00D7 56 = ____\n"; '+' and '-' are 1 byte and '\u00D7' and '\u00F7' 2, but
+		// each is one column, so the former are padded after the blank, where it does not show
+		char[] canonicalOperators = {MathProblem.PLUS, MathProblem.MINUS, MathProblem.TIMES, MathProblem.DIVIDE};
+		int operatorSize = 0;
+		for( char op : operators(level) )
+			operatorSize = Math.max( operatorSize, bytes(Character.toString(MathProblem.canonicalOperator(op))).length );
+		for( char op : canonicalOperators ) {
+			int index = MathProblem.operatorIndex(op);
+			operatorBytes[index] = bytes( Character.toString(op) );
+			operatorPadding[index] = Math.max( 0, operatorSize - operatorBytes[index].length );
+		}
+		worksheetLineSize = numberWidth + 3 + operand1Width + 1 + operatorSize + 1 + operand2Width + answerBlank.length + 1;
+		// "  1.  5678\n"
+		answerKeyLineSize = numberWidth + 3 + resultWidth + 1;
+		worksheetSize = worksheetHeaderSize + (long) problemsPerWorksheet * worksheetLineSize + 1;
+		answerKeySize = answerKeyHeaderSize + (long) problemsPerWorksheet * answerKeyLineSize + 1;
+		if( worksheetLineSize > BUFFER_SIZE || worksheetHeaderSize > BUFFER_SIZE )
+			throw new IllegalArgumentException("worksheet lines are too long for the buffer");
+
+		worksheetChannel = FileChannel.open( worksheets, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+		try {
+			answerKeyChannel = FileChannel.open( answerKey, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+		} catch(IOException | RuntimeException e) {
+			worksheetChannel.close();
+			throw e;
+		}
+	}
+
+	private static char[] operators(Level level) {
+		char[] operators = new char[ level.getWeights().size() + 1 ];
+		int i = 0;
+		for( char op : level.getWeights().keySet() )
+			operators[i++] = op;
+		operators[i] = level.getDefaultOp();
+		return operators;
+	}
+
+	private static int digits(long value) {
+		return Long.toString(value).length();
+	}
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return The seed of the problems this exporter exports.
+	 */
+	public long getSeed() {
+		return problemSet.getSeed();
+	}
+
+	/**
+	 * @return The total size of the worksheets file, in bytes.
+	 */
+	public long getWorksheetsSize() {
+		return worksheetSize * worksheetCount;
+	}
+
+	/**
+	 * @return The total size of the answer key file, in bytes.
+	 */
+	public long getAnswerKeySize() {
+		return answerKeySize * worksheetCount;
+	}
+
+	/**
+	 * Generates and writes every worksheet, in the common fork/join pool.
+	 */
+	public void export() throws IOException {
+		export( ForkJoinPool.commonPool() );
+	}
+
+	public void export(ForkJoinPool pool) throws IOException {
+		try {
+			pool.invoke( new ExportTask(0, worksheetCount, problemSet) );
+		} catch(UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private class ExportTask extends RecursiveAction {
+		private final int first;
+		private final int count;
+		private final ProblemSet problemSet;
+
+		ExportTask(int first, int count, ProblemSet problemSet) {
+			this.first = first;
+			this.count = count;
+			this.problemSet = problemSet;
+		}
+
+		protected void compute() {
+			if( count > WORKSHEETS_PER_TASK ) {
+				int half = count / 2;
+				// split before forking, so each half's problems depend only on the seed
+				ProblemSet other = problemSet.split();
+				invokeAll( new ExportTask(first, half, problemSet), new ExportTask(first + half, count - half, other) );
+				return;
+			}
+			try {
+				exportRange(first, count, problemSet);
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * A buffer streaming to a position in a file.
+	 */
+	private static class Output {
+		final FileChannel channel;
+		final ByteBuffer buffer;
+		long position; // in the file, of the start of the buffer
+
+		Output(FileChannel channel, ByteBuffer buffer, long position) {
+			this.channel = channel;
+			this.buffer = buffer;
+			this.position = position;
+			buffer.clear();
+		}
+
+		/**
+		 * Makes sure there is room for <code>size</code> more bytes.
+		 */
+		void reserve(int size) throws IOException {
+			if( buffer.remaining() < size )
+				flush();
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			while( buffer.hasRemaining() )
+				position += channel.write(buffer, position);
+			buffer.clear();
+		}
+
+		void putNumber(long value, int width) {
+			// right aligned in width (space padded), without creating a String
+			int start = buffer.position();
+			int end = start + width;
+			int i = end;
+			boolean negative = value < 0;
+			do {
+				buffer.put( --i, (byte) ('0' + Math.abs(value % 10)) );
+				value /= 10;
+			} while( value != 0 && i > start );
+			if( negative && i > start )
+				buffer.put(--i, (byte) '-');
+			while( i > start )
+				buffer.put(--i, (byte) ' ');
+			buffer.position(end);
+		}
+	}
+
+	private void exportRange(int first, int count, ProblemSet problemSet) throws IOException {
+		ByteBuffer[] buffers = BUFFERS.get();
+		Output sheets = new Output( worksheetChannel, buffers[0], first * worksheetSize );
+		Output key = new Output( answerKeyChannel, buffers[1], first * answerKeySize );
+		int batch = Math.min(BATCH_SIZE, problemsPerWorksheet);
+		int[] operand1 = new int[batch];
+		char[] operator = new char[batch];
+		int[] operand2 = new int[batch];
+		int[] result = new int[batch];
+		int[] points = new int[batch];
+
+		for( int w = first; w < first + count; w++ ) {
+			sheets.reserve(worksheetHeaderSize);
+			sheets.buffer.put(title).put(worksheetLabel);
+			sheets.putNumber(w + 1, worksheetNumberWidth);
+			sheets.buffer.put(nameBlank);
+			key.reserve(answerKeyHeaderSize);
+			key.buffer.put(title).put(answerKeyLabel);
+			key.putNumber(w + 1, worksheetNumberWidth);
+			key.buffer.put((byte) '\n').put((byte) '\n');
+
+			for( int n = 0; n < problemsPerWorksheet; n += batch ) {
+				int size = Math.min(batch, problemsPerWorksheet - n);
+				problemSet.generate(operand1, operator, operand2, result, points, 0, size);
+				for( int i = 0; i < size; i++ ) {
+					int index = MathProblem.operatorIndex(operator[i]);
+					sheets.reserve(worksheetLineSize);
+					sheets.putNumber(n + i + 1, numberWidth);
+					sheets.buffer.put((byte) '.').put((byte) ' ').put((byte) ' ');
+					sheets.putNumber(operand1[i], operand1Width);
+					sheets.buffer.put((byte) ' ').put(operatorBytes[index]).put((byte) ' ');
+					sheets.putNumber(operand2[i], operand2Width);
+					sheets.buffer.put(answerBlank);
+					for( int pad = operatorPadding[index]; pad > 0; pad-- )
+						sheets.buffer.put((byte) ' ');
+					sheets.buffer.put((byte) '\n');
+					key.reserve(answerKeyLineSize);
+					key.putNumber(n + i + 1, numberWidth);
+					key.buffer.put((byte) '.').put((byte) ' ').put((byte) ' ');
+					key.putNumber(result[i], resultWidth);
+					key.buffer.put((byte) '\n');
+				}
+			}
+			sheets.reserve(1);
+			sheets.buffer.put((byte) '\f'); // page break
+			key.reserve(1);
+			key.buffer.put((byte) '\f');
+		}
+		sheets.flush();
+		key.flush();
+	}
+
+	public void close() throws IOException {
+		try {
+			worksheetChannel.close();
+		} finally {
+			answerKeyChannel.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if( args.length != 6 && args.length != 7 ) {
+			System.err.println("usage: java " + WorksheetExporter.class.getName()
+					+ " <level> <difficulty> <worksheets> <problems per worksheet> <worksheets file> <answer key file> [<seed>]");
+			System.exit(1);
+		}
+		Level level = Level.valueOf( args[0].toUpperCase() );
+		Difficulty difficulty = Difficulty.valueOf( args[1].toUpperCase() );
+		int worksheets = Integer.parseInt(args[2]);
+		int problems = Integer.parseInt(args[3]);
+		long start = System.nanoTime();
+		try( WorksheetExporter exporter = args.length == 7
+				? new WorksheetExporter(level, difficulty, worksheets, problems, Paths.get(args[4]), Paths.get(args[5]), Long.parseLong(args[6]))
+				: new WorksheetExporter(level, difficulty, worksheets, problems, Paths.get(args[4]), Paths.get(args[5])) )
+		{
+			exporter.export();
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.printf("%,d problems (%,d + %,d bytes) in %.2f s: %,.0f problems/s (seed %d)%n",
+					(long) worksheets * problems, exporter.getWorksheetsSize(), exporter.getAnswerKeySize(),
+					seconds, worksheets * (double) problems / seconds, exporter.getSeed());
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.mathhead200.math_game;
+
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Typing into the chalkboard, and painting it (headless, into an offscreen
+ * image.)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ChalkboardBenchmark {
+
+	private Chalkboard chalkboard;
+	private KeyEvent enter;
+	private KeyEvent digit;
+	private KeyEvent backSpace;
+	private BufferedImage image;
+	private Graphics2D graphics;
+
+	@Setup
+	public void setUp() {
+		chalkboard = new Chalkboard(8, 5, 16) {
+			public void correct() {
+			}
+
+			public void incorrect() {
+			}
+		};
+		chalkboard.setTopOperand("132");
+		chalkboard.setOperator(MathProblem.DIVIDE);
+		chalkboard.setBottomOperand("12");
+		chalkboard.setGuess("11");
+		chalkboard.setResult(11);
+		enter = new KeyEvent(chalkboard, KeyEvent.KEY_PRESSED, 0, 0, KeyEvent.VK_ENTER, '\n');
+		digit = new KeyEvent(chalkboard, KeyEvent.KEY_TYPED, 0, 0, KeyEvent.VK_UNDEFINED, '7');
+		backSpace = new KeyEvent(chalkboard, KeyEvent.KEY_PRESSED, 0, 0, KeyEvent.VK_BACK_SPACE, '\b');
+		image = new BufferedImage( chalkboard.getWidth(), chalkboard.getHeight(), BufferedImage.TYPE_INT_RGB );
+		graphics = image.createGraphics();
+	}
+
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public int keyPressedEnter() {
+		chalkboard.keyPressed(enter);
+		return chalkboard.getCaretPosition();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(2)
+	public int keyTypedAndBackSpace() {
+		chalkboard.keyTyped(digit);
+		chalkboard.keyPressed(backSpace);
+		return chalkboard.getCaretPosition();
+	}
+
+	@Benchmark
+	public int paintComponent() {
+		chalkboard.paintComponent(graphics);
+		return image.getRGB(0, 0);
+	}
+}
@@ -0,0 +1,54 @@
+package com.mathhead200.math_game;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Painting the progress bar (headless, into an offscreen image) as its value
+ * changes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GameProgressBarBenchmark {
+
+	private final GameProgressBar progressBar = new GameProgressBar(1000);
+	private BufferedImage image;
+	private Graphics2D graphics;
+	private int value = 0;
+
+	@Setup
+	public void setUp() {
+		progressBar.setSize(64, 250);
+		image = new BufferedImage( progressBar.getWidth(), progressBar.getHeight(), BufferedImage.TYPE_INT_RGB );
+		graphics = image.createGraphics();
+	}
+
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public int paintComponent() {
+		progressBar.setValue( value++ % 1000 );
+		progressBar.paintComponent(graphics);
+		return image.getRGB(0, 0);
+	}
+}
@@ -0,0 +1,39 @@
+package com.mathhead200.math_game;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+/**
+ * Runs the benchmarks like JMH's own launcher, but always with the GC
+ * profiler (<code>-prof gc</code>), so the bytes allocated per operation and
+ * the GC counts are reported next to each throughput.
+ *
+ * Usage: <code>java -jar target/benchmarks.jar [JMH options] [benchmark regexps]</code>
+ */
+public class MathGameBenchmarks {
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+		CommandLineOptions options = new CommandLineOptions(args);
+		if( options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+				|| options.shouldListProfilers() || options.shouldListResultFormats() ) {
+			Main.main(args);
+			return;
+		}
+		OptionsBuilder builder = new OptionsBuilder();
+		builder.parent(options);
+		boolean profiled = false;
+		for( ProfilerConfig profiler : options.getProfilers() )
+			profiled |= profiler.getKlass().equals( GCProfiler.class.getName() ) || profiler.getKlass().equals("gc");
+		if( !profiled )
+			builder.addProfiler(GCProfiler.class);
+		new Runner( builder.build() ).run();
+	}
+}
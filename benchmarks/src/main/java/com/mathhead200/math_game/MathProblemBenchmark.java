@@ -0,0 +1,41 @@
+package com.mathhead200.math_game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Answer checking (i.e. constructing a problem, which computes its result) and
+ * formatting a line of the game log.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+public class MathProblemBenchmark {
+
+	private final MathProblem problem = new MathProblem(132, MathProblem.DIVIDE, 12);
+	private int counter = 0;
+
+	@Benchmark
+	public MathProblem newMathProblem() {
+		int n = (counter++ & 0xFF) + 1;
+		return new MathProblem(n * 7, MathProblem.DIVIDE, 7);
+	}
+
+	@Benchmark
+	public String formatLogLine() {
+		int n = counter++;
+		return MathGameGUI.formatLogLine(n & 0xFF, problem, "11", (n & 1) == 0);
+	}
+}
@@ -0,0 +1,53 @@
+package com.mathhead200.math_game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Problem generation, one at a time and in batches into primitive arrays.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(2)
+public class ProblemSetBenchmark {
+
+	static final int BATCH_SIZE = 1024;
+
+	private ProblemSet problemSet;
+	private final int[] operand1 = new int[BATCH_SIZE];
+	private final char[] operator = new char[BATCH_SIZE];
+	private final int[] operand2 = new int[BATCH_SIZE];
+	private final int[] result = new int[BATCH_SIZE];
+	private final int[] points = new int[BATCH_SIZE];
+
+	@Setup
+	public void setUp() {
+		problemSet = Level.LEVEL_2.newProblemSet(Difficulty.MEDIUM, 42);
+	}
+
+	@Benchmark
+	public MathProblem next() {
+		return problemSet.next();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public int[] generate() {
+		problemSet.generate(operand1, operator, operand2, result, points, 0, BATCH_SIZE);
+		return result;
+	}
+}
@@ -0,0 +1,141 @@
+package com.mathhead200.math_game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.LongUnaryOperator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link AnswerHistory}'s columns and aggregates, checked row by row against
+ * the answers appended, across the boundary between chunks.
+ */
+public class AnswerHistoryTest {
+
+	private static final int ROWS = 2 * AnswerHistory.CHUNK_SIZE + 100;
+
+	private final long[] keys = new long[ROWS];
+	private final int[] guesses = new int[ROWS];
+	private final boolean[] correct = new boolean[ROWS];
+	private final long[] nanos = new long[ROWS];
+	private AnswerHistory history;
+
+	@Before
+	public void appendAnswers() {
+		SplittableRandom random = new SplittableRandom(16384);
+		history = new AnswerHistory();
+		for( int row = 0; row < ROWS; row++ ) {
+			char operator = MathProblem.operator( random.nextInt(4) );
+			keys[row] = MathProblem.key( random.nextInt(-5, 25), operator, random.nextInt(-5, 25) );
+			guesses[row] = random.nextInt(10) == 0 ? BinarySessionLog.NO_GUESS : random.nextInt(-100, 100);
+			correct[row] = random.nextInt(4) != 0;
+			nanos[row] = random.nextLong(1, 60_000_000_000L);
+			history.append( keys[row], guesses[row], correct[row], nanos[row] );
+		}
+	}
+
+	@Test
+	public void columns() {
+		assertEquals(ROWS, history.size());
+		for( int row = 0; row < ROWS; row++ ) {
+			assertEquals(keys[row], history.getKey(row));
+			assertEquals(guesses[row], history.getGuess(row));
+			assertEquals(correct[row], history.isCorrect(row));
+			assertEquals(nanos[row], history.getNanos(row));
+		}
+	}
+
+	@Test
+	public void theRowsEitherSideOfTheBoundary() {
+		AnswerHistory history = new AnswerHistory();
+		for( int row = 0; row <= AnswerHistory.CHUNK_SIZE; row++ )
+			history.append( row, row, row != AnswerHistory.CHUNK_SIZE - 1, row );
+		assertFalse( history.isCorrect(AnswerHistory.CHUNK_SIZE - 1) );
+		assertTrue( history.isCorrect(AnswerHistory.CHUNK_SIZE) );
+		assertEquals( AnswerHistory.CHUNK_SIZE, history.getKey(AnswerHistory.CHUNK_SIZE) );
+		assertEquals( 1, history.aggregate(AnswerHistory.CHUNK_SIZE - 1, AnswerHistory.CHUNK_SIZE + 1).errors );
+		assertEquals( 0, history.aggregate(AnswerHistory.CHUNK_SIZE, AnswerHistory.CHUNK_SIZE + 1).errors );
+		assertEquals( 2L * AnswerHistory.CHUNK_SIZE - 1, history.aggregate(AnswerHistory.CHUNK_SIZE - 1, AnswerHistory.CHUNK_SIZE + 1).totalNanos );
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void pastTheEnd() {
+		history.getKey(ROWS);
+	}
+
+	@Test
+	public void aggregate() {
+		int[][] ranges = {
+			{0, ROWS},
+			{0, AnswerHistory.CHUNK_SIZE},
+			{AnswerHistory.CHUNK_SIZE - 1, AnswerHistory.CHUNK_SIZE + 1},
+			{AnswerHistory.CHUNK_SIZE, AnswerHistory.CHUNK_SIZE},
+			{100, 2 * AnswerHistory.CHUNK_SIZE + 50}
+		};
+		for( int[] range : ranges ) {
+			long errors = 0;
+			long totalNanos = 0;
+			for( int row = range[0]; row < range[1]; row++ ) {
+				errors += correct[row] ? 0 : 1;
+				totalNanos += nanos[row];
+			}
+			AnswerHistory.Aggregate aggregate = history.aggregate(range[0], range[1]);
+			assertEquals(range[1] - range[0], aggregate.count);
+			assertEquals(errors, aggregate.errors);
+			assertEquals(totalNanos, aggregate.totalNanos);
+		}
+	}
+
+	@Test
+	public void byOperator() {
+		assertGroups( history.byOperator(), 0, ROWS, key -> key >>> 62 );
+	}
+
+	@Test
+	public void byFact() {
+		assertGroups( history.byFact(), 0, ROWS, key -> key );
+	}
+
+	@Test
+	public void byOperandRange() {
+		assertGroups( history.byOperandRange(10), 0, ROWS, key -> MathProblem.key(
+				Math.floorDiv(MathProblem.keyOperand1(key), 10) * 10, MathProblem.keyOperator(key),
+				Math.floorDiv(MathProblem.keyOperand2(key), 10) * 10) );
+	}
+
+	@Test
+	public void groupByAcrossTheBoundary() {
+		LongUnaryOperator operand1 = key -> MathProblem.keyOperand1(key);
+		int from = AnswerHistory.CHUNK_SIZE - 1000;
+		int to = AnswerHistory.CHUNK_SIZE + 1000;
+		assertGroups( history.groupBy(from, to, operand1), from, to, operand1 );
+	}
+
+	/**
+	 * Checks <code>groups</code> against rows <code>[from, to)</code>
+	 * grouped by <code>group</code>, one row at a time.
+	 */
+	private void assertGroups(AnswerHistory.Groups groups, int from, int to, LongUnaryOperator group) {
+		Map<Long, long[]> expected = new HashMap<>();
+		for( int row = from; row < to; row++ ) {
+			long[] aggregate = expected.computeIfAbsent( group.applyAsLong(keys[row]), g -> new long[3] );
+			aggregate[0]++;
+			aggregate[1] += correct[row] ? 0 : 1;
+			aggregate[2] += nanos[row];
+		}
+		assertEquals(expected.size(), groups.size());
+		assertEquals(expected.size(), groups.groups().length);
+		for( Map.Entry<Long, long[]> entry : expected.entrySet() ) {
+			long g = entry.getKey();
+			assertEquals(entry.getValue()[0], groups.getCount(g));
+			assertEquals(entry.getValue()[1], groups.getErrors(g));
+			assertEquals(entry.getValue()[2], groups.getTotalNanos(g));
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.mathhead200.math_game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writing a {@link BinarySessionLog}, and reading it back (as records, and as
+ * the text log {@link LogAnalyzer} reads.)
+ */
+public class BinarySessionLogTest {
+
+	private static final long START = 1_700_000_000_000L;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Path writeGames() throws IOException {
+		Path path = folder.newFile("session.mgsl").toPath();
+		try( BinarySessionLog.Writer writer = new BinarySessionLog.Writer(path) ) {
+			writer.started(Level.LEVEL_1, Difficulty.HARD, 42, START);
+			writer.append(1, 12, MathProblem.PLUS, 30, 42, true, 1_500_000_000L);
+			writer.append(2, 7, MathProblem.TIMES, 8, BinarySessionLog.NO_GUESS, false, 9_000_000_000L);
+			writer.ended(true, 1, 1, 1, 65_000);
+			writer.started(Level.DIVISION, Difficulty.EASY, -7, START + 120_000);
+			writer.append(1, -20, MathProblem.DIVIDE, 4, -5, true, 3_000_000L);
+			writer.ended(false, 0.25, 1, 0, 3_000);
+		}
+		return path;
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		try( BinarySessionLog.Reader reader = new BinarySessionLog.Reader(writeGames()) ) {
+			assertEquals(7, reader.size());
+
+			assertEquals(BinarySessionLog.STARTED, reader.getKind(0));
+			assertEquals(Level.LEVEL_1, reader.getLevel(0));
+			assertEquals(Difficulty.HARD, reader.getDifficulty(0));
+			assertEquals(42, reader.getSeed(0));
+			assertEquals(START, reader.getMillis(0));
+
+			assertEquals(BinarySessionLog.ANSWER, reader.getKind(1));
+			assertEquals(1, reader.getProblemNumber(1));
+			assertEquals(12, reader.getOperand1(1));
+			assertEquals(MathProblem.PLUS, reader.getOperator(1));
+			assertEquals(30, reader.getOperand2(1));
+			assertEquals(42, reader.getGuess(1));
+			assertTrue(reader.isCorrect(1));
+			assertEquals(1_500_000_000L, reader.getNanos(1));
+
+			assertEquals(BinarySessionLog.NO_GUESS, reader.getGuess(2));
+			assertFalse(reader.isCorrect(2));
+
+			assertEquals(BinarySessionLog.ENDED, reader.getKind(3));
+			assertTrue(reader.isCompleted(3));
+			assertEquals(1, reader.getCorrectCount(3));
+			assertEquals(1, reader.getIncorrectCount(3));
+			assertEquals(65_000, reader.getMillis(3));
+
+			assertEquals(-7, reader.getSeed(4));
+			assertEquals(-20, reader.getOperand1(5));
+			assertEquals(MathProblem.DIVIDE, reader.getOperator(5));
+			assertEquals(-5, reader.getGuess(5));
+
+			assertFalse(reader.isCompleted(6));
+			assertEquals(0.25, reader.getProgress(6), 0);
+			assertEquals(3_000, reader.getMillis(6));
+		}
+	}
+
+	@Test
+	public void writeTextMatchesTheTextLog() throws IOException {
+		String expected = MathGameGUI.formatTitleLine(Level.LEVEL_1.getTitle(Difficulty.HARD), START)
+				+ MathGameGUI.formatLogLine(1, 12, MathProblem.PLUS, 30, "42", true)
+				+ MathGameGUI.formatLogLine(2, 7, MathProblem.TIMES, 8, "?", false)
+				+ MathGameGUI.formatCompletedLine(1, 1, 65_000)
+				+ MathGameGUI.formatTitleLine(Level.DIVISION.getTitle(Difficulty.EASY), START + 120_000)
+				+ MathGameGUI.formatLogLine(1, -20, MathProblem.DIVIDE, 4, "-5", true)
+				+ MathGameGUI.formatIncompleteLine(0.25, 1, 0, 3_000);
+		StringBuilder text = new StringBuilder();
+		try( BinarySessionLog.Reader reader = new BinarySessionLog.Reader(writeGames()) ) {
+			reader.writeText(text);
+		}
+		assertEquals(expected, text.toString());
+
+		// and the analyzer reads it as the text log
+		Path textPath = folder.newFile("session.txt").toPath();
+		Files.write( textPath, text.toString().getBytes("UTF-8") );
+		LogAnalyzer.Report report = new LogAnalyzer().analyze( Collections.singletonList(textPath) );
+		assertEquals(1, report.files);
+		assertEquals(2, sum(report.games));
+		assertEquals(1, sum(report.completed));
+		assertEquals(1, sum(report.incomplete));
+		assertEquals(3, report.answers);
+		assertEquals(1, report.errors);
+		assertEquals(0, report.skipped);
+	}
+
+	@Test
+	public void readsVersion1() throws IOException {
+		Path path = folder.newFile("session.mgsl").toPath();
+		try( BinarySessionLog.Writer writer = new BinarySessionLog.Writer(path) ) {
+			writer.append(1, 3, MathProblem.MINUS, 4, -1, true, 1_000);
+		}
+		// version 1 had no game records; its reserved bytes were 0, i.e. answers
+		try( FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE) ) {
+			ByteBuffer version = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN).putShort(0, (short) 1);
+			channel.write(version, 4);
+		}
+		StringBuilder text = new StringBuilder();
+		try( BinarySessionLog.Reader reader = new BinarySessionLog.Reader(path) ) {
+			assertEquals(1, reader.size());
+			assertEquals(BinarySessionLog.ANSWER, reader.getKind(0));
+			reader.writeText(text);
+		}
+		assertEquals(MathGameGUI.formatLogLine(1, 3, MathProblem.MINUS, 4, "-1", true), text.toString());
+	}
+
+	@Test
+	public void endedFlushes() throws IOException {
+		Path path = folder.newFile("session.mgsl").toPath();
+		try( BinarySessionLog.Writer writer = new BinarySessionLog.Writer(path) ) {
+			writer.started(Level.ADDITION, Difficulty.EASY, 1, START);
+			writer.append(1, 1, MathProblem.PLUS, 1, 2, true, 1_000);
+			writer.ended(true, 1, 1, 0, 1_000);
+			// without closing, as after a crash
+			try( BinarySessionLog.Reader reader = new BinarySessionLog.Reader(path) ) {
+				assertEquals(3, reader.size());
+			}
+		}
+	}
+
+	private static long sum(long[] counts) {
+		long sum = 0;
+		for( long count : counts )
+			sum += count;
+		return sum;
+	}
+}
@@ -0,0 +1,198 @@
+package com.mathhead200.math_game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writing and reading checkpoints, finding the ones left behind, and
+ * restoring a game (generator included) from one.
+ */
+public class CheckpointerTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private SessionJournal journal;
+
+	@Before
+	public void openJournal() throws IOException {
+		journal = new SessionJournal( folder.getRoot().toPath().resolve("journal.log"), false );
+	}
+
+	@After
+	public void closeJournal() throws IOException {
+		journal.close();
+	}
+
+	/**
+	 * Answers <code>count</code> problems, every third one incorrectly, and
+	 * leaves the last one unanswered if <code>current</code>.
+	 */
+	private static void play(ProblemSet problemSet, int count, boolean current) {
+		for( int i = 0; i < count; i++ ) {
+			problemSet.next();
+			if( current && i == count - 1 )
+				break;
+			if( i % 3 == 2 )
+				problemSet.incorrect();
+			else
+				problemSet.correct();
+		}
+	}
+
+	private static Checkpointer.Checkpoint roundTrip(Checkpointer.Checkpoint checkpoint) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate( checkpoint.getEncodedSize() );
+		checkpoint.write(buffer);
+		assertEquals(0, buffer.remaining());
+		buffer.flip();
+		return Checkpointer.Checkpoint.read(buffer);
+	}
+
+	@Test
+	public void checkpointRoundTrip() throws IOException {
+		ProblemSet problemSet = Level.LEVEL_2.newProblemSet(Difficulty.HARD, 99);
+		play(problemSet, 5, true);
+		journal.write("-- Level 2, Hard --\n");
+		Checkpointer.Checkpoint checkpoint = roundTrip(
+				new Checkpointer.Checkpoint(Level.LEVEL_2, Difficulty.HARD, problemSet, 12_345, journal, 7) );
+
+		assertEquals(Level.LEVEL_2, checkpoint.level);
+		assertEquals(Difficulty.HARD, checkpoint.difficulty);
+		assertEquals(99, checkpoint.seed);
+		assertEquals(problemSet.getGenerated(), checkpoint.generated);
+		assertEquals(problemSet.getPoints(), checkpoint.points);
+		assertEquals(3, checkpoint.correctCount);
+		assertEquals(1, checkpoint.incorrectCount);
+		assertEquals(5, checkpoint.problemNumber);
+		assertTrue(checkpoint.current);
+		assertEquals(12_345, checkpoint.elapsedMillis);
+		assertEquals(journal.getPath(), checkpoint.journalPath);
+		assertEquals(journal.getLength(), checkpoint.journalLength);
+		assertEquals(7, checkpoint.savedLength);
+	}
+
+	@Test
+	public void noGameRoundTrip() throws IOException {
+		journal.write("abc");
+		Checkpointer.Checkpoint checkpoint = roundTrip( new Checkpointer.Checkpoint(journal, 1) );
+		assertNull(checkpoint.level);
+		assertNull(checkpoint.restoreProblemSet());
+		assertEquals(3, checkpoint.journalLength);
+		assertEquals(1, checkpoint.savedLength);
+	}
+
+	@Test
+	public void restoreLogStopsAtTheCheckpoint() throws IOException {
+		journal.write("abc");
+		journal.write("d\u2713f");
+		Checkpointer.Checkpoint checkpoint = new Checkpointer.Checkpoint(journal, 0);
+		journal.write("ghi");
+		journal.flush();
+		assertEquals("abcd\u2713f", checkpoint.restoreLog());
+	}
+
+	@Test
+	public void restoreReproducesTheSameSequence() {
+		for( boolean current : new boolean[] {false, true} ) {
+			ProblemSet original = Level.LEVEL_1.newProblemSet(Difficulty.MEDIUM, 2024);
+			// more problems than restore regenerates in one batch
+			int[] operand1 = new int[2500];
+			original.generate(operand1, new char[2500], new int[2500], new int[2500], new int[2500], 0, 2500);
+			play(original, 4, current);
+
+			ProblemSet restored = new Checkpointer.Checkpoint(Level.LEVEL_1, Difficulty.MEDIUM, original, 0, journal, 0)
+					.restoreProblemSet();
+			assertEquals(original.getGenerated(), restored.getGenerated());
+			assertEquals(original.getPoints(), restored.getPoints());
+			assertEquals(original.getGoal(), restored.getGoal());
+			assertEquals(original.getCorrectCount(), restored.getCorrectCount());
+			assertEquals(original.getIncorrectCount(), restored.getIncorrectCount());
+			assertEquals(original.getCurrentProblemNumber(), restored.getCurrentProblemNumber());
+			if( current ) {
+				assertSameProblem( original.getCurrentProblem(), restored.getCurrentProblem() );
+				original.correct();
+				restored.correct();
+			} else {
+				assertNull( restored.getCurrentProblem() );
+			}
+
+			while( original.hasNext() ) {
+				assertTrue( restored.hasNext() );
+				assertSameProblem( original.next(), restored.next() );
+				assertEquals(original.getCurrentProblemNumber(), restored.getCurrentProblemNumber());
+				original.correct();
+				restored.correct();
+				assertEquals(original.getPoints(), restored.getPoints());
+			}
+			assertFalse( restored.hasNext() );
+		}
+	}
+
+	private static void assertSameProblem(MathProblem expected, MathProblem actual) {
+		assertEquals(expected.toString(), actual.toString());
+		assertEquals(expected.result, actual.result);
+	}
+
+	@Test
+	public void checkpointerWritesTheLatestAndDeletesOnClose() throws Exception {
+		Path path = folder.getRoot().toPath().resolve("game.checkpoint.test");
+		ProblemSet problemSet = Level.ADDITION.newProblemSet(Difficulty.EASY, 3);
+		play(problemSet, 2, false);
+		Checkpointer checkpointer = new Checkpointer(path, journal, 20);
+		try {
+			checkpointer.update( new Checkpointer.Checkpoint(Level.ADDITION, Difficulty.EASY, problemSet, 1_000, journal, 0) );
+			Checkpointer.Checkpoint checkpoint = null;
+			for( long deadline = System.currentTimeMillis() + 5_000; checkpoint == null && System.currentTimeMillis() < deadline; ) {
+				Thread.sleep(10);
+				checkpoint = Checkpointer.read(path);
+			}
+			assertNotNull(checkpoint);
+			assertEquals(Level.ADDITION, checkpoint.level);
+			assertEquals(problemSet.getPoints(), checkpoint.points);
+			// locked by this game, so not an orphan
+			assertNull( Checkpointer.findOrphan(folder.getRoot().toPath().resolve("game.checkpoint")) );
+		} finally {
+			checkpointer.close();
+		}
+		assertFalse( Files.exists(path) );
+		assertFalse( Files.exists(path.resolveSibling("game.checkpoint.test.lock")) );
+	}
+
+	@Test
+	public void findOrphanFindsAnUnlockedCheckpoint() throws IOException {
+		Path base = folder.getRoot().toPath().resolve("game.checkpoint");
+		Path path = base.resolveSibling("game.checkpoint.left");
+		ProblemSet problemSet = Level.DIVISION.newProblemSet(Difficulty.VERY_HARD, 8);
+		play(problemSet, 3, true);
+		Checkpointer.Checkpoint checkpoint = new Checkpointer.Checkpoint(Level.DIVISION, Difficulty.VERY_HARD, problemSet, 0, journal, 0);
+		ByteBuffer buffer = ByteBuffer.allocate( checkpoint.getEncodedSize() );
+		checkpoint.write(buffer);
+		Files.write( path, buffer.array() );
+
+		try( Checkpointer.Orphan orphan = Checkpointer.findOrphan(base) ) {
+			assertNotNull(orphan);
+			assertEquals(path, orphan.getPath());
+			assertEquals(Level.DIVISION, orphan.checkpoint.level);
+			assertEquals(problemSet.getPoints(), orphan.checkpoint.points);
+			// locked by the orphan now, so not offered again
+			assertNull( Checkpointer.findOrphan(base) );
+			orphan.delete();
+		}
+		assertFalse( Files.exists(path) );
+		assertNull( Checkpointer.findOrphan(base) );
+	}
+}
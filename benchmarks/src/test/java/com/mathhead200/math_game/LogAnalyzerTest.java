@@ -0,0 +1,99 @@
+package com.mathhead200.math_game;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * {@link LogAnalyzer.Parser} on exactly what {@link MathGameGUI} writes.
+ */
+public class LogAnalyzerTest {
+
+	private static final String[] TITLES = LogAnalyzer.Report.getTitles();
+
+	private static final String LOG =
+			MathGameGUI.formatTitleLine(Level.LEVEL_2.getTitle(Difficulty.MEDIUM), 0)
+			+ MathGameGUI.formatLogLine(1, 12, MathProblem.PLUS, 30, "42", true)
+			+ MathGameGUI.formatLogLine(2, 50, MathProblem.MINUS, 8, "41", false)
+			+ MathGameGUI.formatLogLine(3, 7, MathProblem.TIMES, 8, "?", false)
+			+ MathGameGUI.formatLogLine(4, 56, MathProblem.DIVIDE, 7, "8", true)
+			+ MathGameGUI.formatLogLine(5, 7, MathProblem.TIMES, 8, "56", true)
+			+ MathGameGUI.formatCompletedLine(3, 2, 95_000)
+			+ MathGameGUI.formatTitleLine(Level.SUBTRACTION.getTitle(Difficulty.ULTIMATE), 0)
+			+ MathGameGUI.formatLogLine(1, -1_000_000, MathProblem.MINUS, 2_000_000, "-3000000", true)
+			+ MathGameGUI.formatLogLine(123, 10, MathProblem.PLUS, -10, "1", false)
+			+ MathGameGUI.formatIncompleteLine(0.5, 1, 1, 10_000);
+
+	private static LogAnalyzer.Report parse(ByteBuffer buffer) {
+		LogAnalyzer.Report report = new LogAnalyzer.Report();
+		new LogAnalyzer.Parser(report).parse( buffer, true, buffer.remaining() );
+		return report;
+	}
+
+	private static int title(Level level, Difficulty difficulty) {
+		return Arrays.asList(TITLES).indexOf( level.getTitle(difficulty) );
+	}
+
+	private static void assertLog(LogAnalyzer.Report report) {
+		int level2 = title(Level.LEVEL_2, Difficulty.MEDIUM);
+		int subtraction = title(Level.SUBTRACTION, Difficulty.ULTIMATE);
+		assertEquals(0, report.skipped);
+		assertEquals(7, report.answers);
+		assertEquals(3, report.errors);
+		assertEquals(1, report.games[level2]);
+		assertEquals(1, report.completed[level2]);
+		assertEquals(5, report.titleAnswers[level2]);
+		assertEquals(2, report.titleErrors[level2]);
+		assertEquals(1, report.games[subtraction]);
+		assertEquals(1, report.incomplete[subtraction]);
+		assertEquals(2, report.titleAnswers[subtraction]);
+		assertEquals(1, report.titleErrors[subtraction]);
+		assertEquals(1, report.getCompletionSeconds( TITLES[level2] ).getTotalCount());
+		assertEquals(95, report.getCompletionSeconds( TITLES[level2] ).getValueAtPercentile(50));
+
+		long fact = MathProblem.key(7, MathProblem.TIMES, 8);
+		assertEquals(2, report.facts.getAttempts(fact));
+		assertEquals(1, report.facts.getErrors(fact));
+		assertEquals(1, report.facts.getAttempts( MathProblem.key(56, MathProblem.DIVIDE, 7) ));
+		assertEquals(1, report.facts.getErrors( MathProblem.key(50, MathProblem.MINUS, 8) ));
+		assertEquals(1, report.facts.getAttempts( MathProblem.key(-1_000_000, MathProblem.MINUS, 2_000_000) ));
+		assertEquals(1, report.facts.getErrors( MathProblem.key(10, MathProblem.PLUS, -10) ));
+		assertEquals(6, report.facts.size());
+	}
+
+	@Test
+	public void parsesTheTextLog() {
+		assertLog( parse(ByteBuffer.wrap( LOG.getBytes(StandardCharsets.UTF_8) )) );
+	}
+
+	@Test
+	public void parsesThroughTheWindow() {
+		// a direct buffer (e.g. a mapped file) is copied through the window
+		byte[] bytes = LOG.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		assertLog( parse(buffer) );
+	}
+
+	@Test
+	public void parsesWindowsLineEndings() {
+		assertLog( parse(ByteBuffer.wrap( LOG.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8) )) );
+	}
+
+	@Test
+	public void eachGameIsParsedByTheChunkItStartsIn() {
+		byte[] bytes = LOG.getBytes(StandardCharsets.UTF_8);
+		for( int split = 1; split < bytes.length; split++ ) {
+			LogAnalyzer.Report report = new LogAnalyzer.Report();
+			LogAnalyzer.Parser parser = new LogAnalyzer.Parser(report);
+			parser.parse( ByteBuffer.wrap(bytes), true, split );
+			// the next chunk's buffer starts with the byte before it
+			parser.parse( ByteBuffer.wrap(bytes, split - 1, bytes.length - split + 1).slice(), false, bytes.length - split + 1 );
+			assertLog(report);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.mathhead200.math_game;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Recording games, writing and reading the recordings, and replaying them.
+ */
+public class SessionRecordingTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Plays a whole game, answering about 80% of the problems correctly (and
+	 * some of the rest with no guess.)
+	 */
+	static SessionRecording play(Level level, Difficulty difficulty, long seed) {
+		ProblemSet problemSet = level.newProblemSet(difficulty, seed);
+		SessionRecording recording = new SessionRecording(level, difficulty, problemSet);
+		SplittableRandom random = new SplittableRandom(seed);
+		while( problemSet.hasNext() ) {
+			MathProblem problem = problemSet.next();
+			int r = random.nextInt(10);
+			int guess = r < 8 ? problem.result : r == 8 ? problem.result + 1 : BinarySessionLog.NO_GUESS;
+			if( guess == problem.result )
+				problemSet.correct();
+			else
+				problemSet.incorrect();
+			recording.answered(guess, guess == problem.result, problemSet);
+		}
+		return recording;
+	}
+
+	@Test
+	public void roundTrip() throws IOException {
+		SessionRecording recording = play(Level.LEVEL_2, Difficulty.MEDIUM, 12345);
+		ByteBuffer buffer = ByteBuffer.allocate( recording.getEncodedSize() );
+		recording.write(buffer);
+		assertEquals(0, buffer.remaining());
+		buffer.flip();
+
+		SessionRecording read = SessionRecording.read(buffer);
+		assertEquals(0, buffer.remaining());
+		assertEquals(Level.LEVEL_2, read.getLevel());
+		assertEquals(Difficulty.MEDIUM, read.getDifficulty());
+		assertEquals(12345, read.getSeed());
+		assertEquals(recording.size(), read.size());
+		assertEquals(recording.toString(), read.toString());
+		assertNull(read.replay());
+	}
+
+	@Test
+	public void appendAndReadAll() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("recordings.mgsr");
+		SessionRecording[] recordings = {
+			play(Level.ADDITION, Difficulty.EASY, 1),
+			play(Level.DIVISION, Difficulty.HARD, 2),
+			play(Level.LEVEL_1, Difficulty.ULTIMATE, 3)
+		};
+		for( SessionRecording recording : recordings )
+			recording.appendTo(path);
+
+		List<SessionRecording> read = SessionRecording.readAll(path);
+		assertEquals(recordings.length, read.size());
+		for( int i = 0; i < recordings.length; i++ ) {
+			assertEquals(recordings[i].toString(), read.get(i).toString());
+			assertEquals(recordings[i].size(), read.get(i).size());
+		}
+		for( String result : SessionRecording.replayAll(read) )
+			assertNull(result);
+	}
+
+	@Test
+	public void replayFindsADifferentGame() throws IOException {
+		SessionRecording recording = play(Level.MULTIPLICATION, Difficulty.MEDIUM, 7);
+		ByteBuffer buffer = ByteBuffer.allocate( recording.getEncodedSize() );
+		recording.write(buffer);
+		buffer.putLong(8, 8); // the seed
+		buffer.flip();
+		assertNotNull( SessionRecording.read(buffer).replay() );
+	}
+
+	@Test(expected = IOException.class)
+	public void truncated() throws IOException {
+		SessionRecording recording = play(Level.SUBTRACTION, Difficulty.EASY, 5);
+		ByteBuffer buffer = ByteBuffer.allocate( recording.getEncodedSize() );
+		recording.write(buffer);
+		buffer.flip();
+		buffer.limit( buffer.limit() - 1 );
+		SessionRecording.read(buffer);
+	}
+}